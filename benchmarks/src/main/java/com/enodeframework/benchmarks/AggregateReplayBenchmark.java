@@ -0,0 +1,67 @@
+package com.enodeframework.benchmarks;
+
+import com.enodeframework.benchmarks.domain.BenchmarkAggregate;
+import com.enodeframework.benchmarks.domain.BenchmarkChanged;
+import com.enodeframework.benchmarks.domain.BenchmarkCreated;
+import com.enodeframework.eventing.DomainEvent;
+import com.enodeframework.eventing.DomainEventStream;
+import com.enodeframework.eventing.IDomainEvent;
+import com.enodeframework.infrastructure.ITypeNameProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AggregateRoot.replayEvents从eventStreamCount个事件流重建聚合根的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class AggregateReplayBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int eventStreamCount;
+
+    private List<DomainEventStream> eventStreams;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String aggregateRootId = "benchmark";
+        String aggregateRootTypeName = BenchmarkContext.get().getBean(ITypeNameProvider.class).getTypeName(BenchmarkAggregate.class);
+        eventStreams = new ArrayList<>(eventStreamCount);
+        for (int version = 1; version <= eventStreamCount; version++) {
+            DomainEvent<String> evnt = version == 1 ? new BenchmarkCreated("title") : new BenchmarkChanged("title" + version);
+            evnt.setAggregateRootId(aggregateRootId);
+            evnt.setVersion(version);
+            evnt.setSequence(1);
+            List<IDomainEvent> events = Collections.singletonList(evnt);
+            eventStreams.add(new DomainEventStream("command-" + version, aggregateRootId, aggregateRootTypeName, version, new Date(), events, new HashMap<>()));
+        }
+    }
+
+    @Benchmark
+    public BenchmarkAggregate replayEvents() {
+        BenchmarkAggregate aggregate = new BenchmarkAggregate();
+        aggregate.replayEvents(eventStreams);
+        return aggregate;
+    }
+}
@@ -0,0 +1,92 @@
+package com.enodeframework.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * 将JMH的JSON结果（-rf json）与同一台机器上目标分支跑出的基线比较，任一基准测试退化超过阈值时以非0退出：
+ * java -cp benchmarks.jar com.enodeframework.benchmarks.BaselineComparator baseline.json result.json [thresholdPercent]
+ */
+public class BaselineComparator {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparator <baseline.json> <result.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double thresholdPercent = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        Map<String, Score> baseline = readScores(args[0]);
+        Map<String, Score> result = readScores(args[1]);
+        int regressionCount = 0;
+        for (Map.Entry<String, Score> entry : result.entrySet()) {
+            Score expected = baseline.get(entry.getKey());
+            Score actual = entry.getValue();
+            if (expected == null) {
+                System.out.println(String.format("NEW        %s: %.3f %s", entry.getKey(), actual.value, actual.unit));
+                continue;
+            }
+            double changePercent = (actual.value - expected.value) / expected.value * 100;
+            // 吞吐量越高越好，平均耗时越低越好
+            double regressionPercent = actual.higherIsBetter() ? -changePercent : changePercent;
+            boolean regressed = regressionPercent > thresholdPercent;
+            if (regressed) {
+                regressionCount++;
+            }
+            System.out.println(String.format("%-10s %s: %.3f -> %.3f %s (%+.1f%%)", regressed ? "REGRESSION" : "OK",
+                    entry.getKey(), expected.value, actual.value, actual.unit, changePercent));
+        }
+        baseline.keySet().stream().filter(key -> !result.containsKey(key)).forEach(key -> System.out.println(String.format("MISSING    %s", key)));
+        if (regressionCount > 0) {
+            System.out.println(String.format("%d benchmark(s) regressed more than %.1f%%.", regressionCount, thresholdPercent));
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> readScores(String path) throws IOException {
+        Map<String, Score> scores = new TreeMap<>();
+        try (Reader reader = new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8)) {
+            JsonArray results = new JsonParser().parse(reader).getAsJsonArray();
+            for (JsonElement element : results) {
+                JsonObject item = element.getAsJsonObject();
+                StringBuilder key = new StringBuilder(item.get("benchmark").getAsString());
+                if (item.has("params")) {
+                    new TreeMap<>(item.getAsJsonObject("params").entrySet().stream()
+                            .collect(Collectors.toMap(Map.Entry::getKey, x -> x.getValue().getAsString())))
+                            .forEach((name, value) -> key.append(':').append(name).append('=').append(value));
+                }
+                JsonObject primaryMetric = item.getAsJsonObject("primaryMetric");
+                scores.put(key.toString(), new Score(item.get("mode").getAsString(), primaryMetric.get("score").getAsDouble(), primaryMetric.get("scoreUnit").getAsString()));
+            }
+        }
+        return scores;
+    }
+
+    private static class Score {
+        private final String mode;
+        private final double value;
+        private final String unit;
+
+        private Score(String mode, double value, String unit) {
+            this.mode = mode;
+            this.value = value;
+            this.unit = unit;
+        }
+
+        private boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+}
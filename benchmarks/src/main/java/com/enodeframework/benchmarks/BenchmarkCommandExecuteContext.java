@@ -0,0 +1,66 @@
+package com.enodeframework.benchmarks;
+
+import com.enodeframework.commanding.CommandResult;
+import com.enodeframework.commanding.ICommandExecuteContext;
+import com.enodeframework.common.io.Task;
+import com.enodeframework.domain.IAggregateRoot;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 只统计已完成命令数的命令上下文，不发送命令结果
+ */
+public class BenchmarkCommandExecuteContext implements ICommandExecuteContext {
+
+    private final AtomicLong completedCount = new AtomicLong();
+
+    @Override
+    public CompletableFuture<Void> onCommandExecutedAsync(CommandResult commandResult) {
+        completedCount.incrementAndGet();
+        return Task.CompletedTask;
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    @Override
+    public void add(IAggregateRoot aggregateRoot) {
+    }
+
+    @Override
+    public CompletableFuture<Void> addAsync(IAggregateRoot aggregateRoot) {
+        return Task.CompletedTask;
+    }
+
+    @Override
+    public <T extends IAggregateRoot> CompletableFuture<T> getAsync(Object id, boolean firstFromCache, Class<T> clazz) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public <T extends IAggregateRoot> CompletableFuture<T> getAsync(Object id, Class<T> clazz) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public String getResult() {
+        return null;
+    }
+
+    @Override
+    public void setResult(String result) {
+    }
+
+    @Override
+    public List<IAggregateRoot> getTrackedAggregateRoots() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void clear() {
+    }
+}
@@ -0,0 +1,42 @@
+package com.enodeframework.benchmarks;
+
+import com.enodeframework.ENodeAutoConfiguration;
+import com.enodeframework.ENodeBootstrap;
+import com.enodeframework.benchmarks.domain.BenchmarkEventHandler;
+import com.enodeframework.eventing.DomainEventStreamMessage;
+import com.enodeframework.eventing.impl.DefaultEventService;
+import com.enodeframework.infrastructure.impl.DoNothingPublisher;
+import com.google.common.collect.Lists;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * 基准测试使用的最小ENode配置：内存事件存储、内存已发布版本存储，领域事件不发送到MQ
+ */
+@Configuration
+@Import(ENodeAutoConfiguration.class)
+public class BenchmarkConfiguration {
+
+    @Bean(initMethod = "init")
+    public ENodeBootstrap eNodeBootstrap() {
+        ENodeBootstrap bootstrap = new ENodeBootstrap();
+        bootstrap.setPackages(Lists.newArrayList("com.enodeframework.benchmarks.domain"));
+        return bootstrap;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public DefaultEventService defaultEventService() {
+        return new DefaultEventService();
+    }
+
+    @Bean
+    public DoNothingPublisher<DomainEventStreamMessage> domainEventPublisher() {
+        return new DoNothingPublisher<>();
+    }
+
+    @Bean
+    public BenchmarkEventHandler benchmarkEventHandler() {
+        return new BenchmarkEventHandler();
+    }
+}
@@ -0,0 +1,29 @@
+package com.enodeframework.benchmarks;
+
+import com.enodeframework.eventing.impl.InMemoryEventStore;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+public class BenchmarkContext {
+
+    private static volatile AnnotationConfigApplicationContext sharedContext;
+
+    /**
+     * 只读使用的共享容器，同一个JMH fork中的基准测试共用
+     */
+    public static AnnotationConfigApplicationContext get() {
+        if (sharedContext == null) {
+            synchronized (BenchmarkContext.class) {
+                if (sharedContext == null) {
+                    sharedContext = create(true);
+                }
+            }
+        }
+        return sharedContext;
+    }
+
+    public static AnnotationConfigApplicationContext create(boolean supportBatchAppendEvent) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext(BenchmarkConfiguration.class);
+        applicationContext.getBean(InMemoryEventStore.class).setSupportBatchAppendEvent(supportBatchAppendEvent);
+        return applicationContext;
+    }
+}
@@ -0,0 +1,69 @@
+package com.enodeframework.benchmarks;
+
+import com.enodeframework.benchmarks.domain.BenchmarkChanged;
+import com.enodeframework.benchmarks.domain.BenchmarkChanged2;
+import com.enodeframework.benchmarks.domain.BenchmarkChanged3;
+import com.enodeframework.eventing.IDomainEvent;
+import com.enodeframework.eventing.impl.DefaultEventSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DefaultEventSerializer的序列化和反序列化，envelopeFormat对比EventEnvelope格式和原来的双重JSON格式
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class EventSerializerBenchmark {
+
+    @Param({"false", "true"})
+    public boolean envelopeFormat;
+
+    private DefaultEventSerializer eventSerializer;
+    private List<IDomainEvent> events;
+    private String data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        eventSerializer = BenchmarkContext.get().getBean(DefaultEventSerializer.class);
+        eventSerializer.setEnvelopeFormat(envelopeFormat);
+        events = new ArrayList<>();
+        events.add(new BenchmarkChanged("title"));
+        events.add(new BenchmarkChanged2("title"));
+        events.add(new BenchmarkChanged3("title"));
+        for (int i = 0; i < events.size(); i++) {
+            IDomainEvent evnt = events.get(i);
+            evnt.setAggregateRootId("benchmark");
+            evnt.setVersion(1);
+            evnt.setSequence(i + 1);
+        }
+        data = eventSerializer.serializeToString(events);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return eventSerializer.serializeToString(events);
+    }
+
+    @Benchmark
+    public List<IDomainEvent> deserialize() {
+        return eventSerializer.deserializeFromString(data, IDomainEvent.class);
+    }
+}
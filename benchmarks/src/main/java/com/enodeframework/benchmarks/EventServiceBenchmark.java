@@ -0,0 +1,111 @@
+package com.enodeframework.benchmarks;
+
+import com.enodeframework.benchmarks.domain.BenchmarkAggregate;
+import com.enodeframework.commanding.Command;
+import com.enodeframework.commanding.ProcessingCommand;
+import com.enodeframework.commanding.ProcessingCommandMailbox;
+import com.enodeframework.eventing.DomainEventStream;
+import com.enodeframework.eventing.EventCommittingContext;
+import com.enodeframework.eventing.IEventService;
+import com.enodeframework.infrastructure.ITypeNameProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DefaultEventService.commitDomainEventAsync到命令完成的开销，事件存储为InMemoryEventStore；
+ * 每次调用为aggregateCount个聚合根各提交一个事件流，并等待全部命令完成。
+ * InMemoryEventStore会保存所有事件流，因此每轮迭代重新创建容器
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class EventServiceBenchmark {
+
+    private static final int AGGREGATE_COUNT = 1000;
+
+    @Param({"false", "true"})
+    public boolean batchAppend;
+
+    private AnnotationConfigApplicationContext applicationContext;
+    private IEventService eventService;
+    private String aggregateRootTypeName;
+    private BenchmarkAggregate[] aggregates;
+    private ProcessingCommandMailbox[] mailboxes;
+    private BenchmarkCommandExecuteContext context;
+    private long expectedCount;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        applicationContext = BenchmarkContext.create(batchAppend);
+        eventService = applicationContext.getBean(IEventService.class);
+        aggregateRootTypeName = applicationContext.getBean(ITypeNameProvider.class).getTypeName(BenchmarkAggregate.class);
+        context = new BenchmarkCommandExecuteContext();
+        expectedCount = 0;
+        aggregates = new BenchmarkAggregate[AGGREGATE_COUNT];
+        mailboxes = new ProcessingCommandMailbox[AGGREGATE_COUNT];
+        for (int i = 0; i < AGGREGATE_COUNT; i++) {
+            String aggregateRootId = "benchmark-" + i;
+            aggregates[i] = new BenchmarkAggregate(aggregateRootId, "title");
+            mailboxes[i] = new ProcessingCommandMailbox(aggregateRootId, null, Runnable::run);
+            commit(i);
+        }
+        awaitCompleted();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AGGREGATE_COUNT)
+    public long commitDomainEvent() {
+        for (int i = 0; i < AGGREGATE_COUNT; i++) {
+            aggregates[i].changeTitle("title");
+            commit(i);
+        }
+        return awaitCompleted();
+    }
+
+    /**
+     * 命令邮箱只用于接收完成通知，按顺序为每个命令分配序号，与DefaultCommandProcessor入队后的状态一致
+     */
+    private void commit(int index) {
+        BenchmarkAggregate aggregate = aggregates[index];
+        Command<String> command = new Command<>(aggregate.id());
+        ProcessingCommand processingCommand = new ProcessingCommand(command, context, null);
+        processingCommand.setMailbox(mailboxes[index]);
+        processingCommand.setSequence(aggregate.version());
+        DomainEventStream eventStream = new DomainEventStream(command.id(), aggregate.id(), aggregateRootTypeName,
+                aggregate.version() + 1, new Date(), aggregate.getChanges(), new HashMap<>());
+        eventService.commitDomainEventAsync(new EventCommittingContext(aggregate, eventStream, processingCommand));
+        expectedCount++;
+    }
+
+    private long awaitCompleted() {
+        while (context.getCompletedCount() < expectedCount) {
+            Thread.yield();
+        }
+        return expectedCount;
+    }
+}
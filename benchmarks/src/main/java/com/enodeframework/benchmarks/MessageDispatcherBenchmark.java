@@ -0,0 +1,65 @@
+package com.enodeframework.benchmarks;
+
+import com.enodeframework.benchmarks.domain.BenchmarkChanged;
+import com.enodeframework.benchmarks.domain.BenchmarkChanged2;
+import com.enodeframework.benchmarks.domain.BenchmarkChanged3;
+import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.eventing.IDomainEvent;
+import com.enodeframework.infrastructure.IMessageDispatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DefaultMessageDispatcher.dispatchMessagesAsync的分发开销：
+ * messageCount为1、2、3时分别命中一个、两个、三个事件的处理器（同时命中单事件处理器）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class MessageDispatcherBenchmark {
+
+    @Param({"1", "2", "3"})
+    public int messageCount;
+
+    private IMessageDispatcher dispatcher;
+    private List<IDomainEvent> messages;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dispatcher = BenchmarkContext.get().getBean(IMessageDispatcher.class);
+        List<IDomainEvent> events = new ArrayList<>();
+        events.add(new BenchmarkChanged("title"));
+        events.add(new BenchmarkChanged2("title"));
+        events.add(new BenchmarkChanged3("title"));
+        messages = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            IDomainEvent evnt = events.get(i);
+            evnt.setAggregateRootId("benchmark");
+            evnt.setVersion(1);
+            evnt.setSequence(i + 1);
+            messages.add(evnt);
+        }
+    }
+
+    @Benchmark
+    public AsyncTaskResult dispatchMessages() {
+        return dispatcher.dispatchMessagesAsync(messages).join();
+    }
+}
@@ -0,0 +1,84 @@
+package com.enodeframework.benchmarks;
+
+import com.enodeframework.commanding.Command;
+import com.enodeframework.commanding.CommandResult;
+import com.enodeframework.commanding.CommandStatus;
+import com.enodeframework.commanding.ProcessingCommand;
+import com.enodeframework.commanding.ProcessingCommandMailbox;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个聚合根命令邮箱的入队和完成开销，命令处理器直接完成命令；
+ * asyncExecutor为false时邮箱在调用线程上运行，只测邮箱本身，为true时包含线程切换
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ProcessingCommandMailboxBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"false", "true"})
+    public boolean asyncExecutor;
+
+    private ExecutorService executor;
+    private ProcessingCommandMailbox mailbox;
+    private BenchmarkCommandExecuteContext context;
+    private Command<String>[] commands;
+    private long expectedCount;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new BenchmarkCommandExecuteContext();
+        commands = new Command[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            commands[i] = new Command<>("benchmark");
+        }
+        executor = asyncExecutor ? Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MailboxBenchmark-%d").build()) : null;
+        mailbox = new ProcessingCommandMailbox("benchmark", processingCommand -> {
+            CommandResult commandResult = new CommandResult(CommandStatus.Success, processingCommand.getMessage().id(), "benchmark", null, null);
+            return processingCommand.getMailbox().completeMessage(processingCommand, commandResult);
+        }, asyncExecutor ? executor : Runnable::run);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long enqueueAndComplete() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mailbox.enqueueMessage(new ProcessingCommand(commands[i], context, null));
+        }
+        expectedCount += BATCH_SIZE;
+        while (context.getCompletedCount() < expectedCount) {
+            Thread.yield();
+        }
+        return expectedCount;
+    }
+}
@@ -0,0 +1,64 @@
+package com.enodeframework.benchmarks;
+
+import com.enodeframework.commanding.CommandReturnType;
+import com.enodeframework.common.remoting.protocol.RemotingCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命令结果回复使用的RemotingCommand编解码，decode的输入与NettyDecoder去掉长度字段后的帧一致
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RemotingCommandBenchmark {
+
+    @Param({"256", "4096"})
+    public int bodySize;
+
+    private byte[] body;
+    private byte[] frame;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'a');
+        ByteBuffer encoded = createCommand().encode();
+        encoded.getInt();
+        frame = new byte[encoded.remaining()];
+        encoded.get(frame);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        return createCommand().encode();
+    }
+
+    @Benchmark
+    public RemotingCommand decode() {
+        return RemotingCommand.decode(frame);
+    }
+
+    private RemotingCommand createCommand() {
+        RemotingCommand request = RemotingCommand.createRequestCommand(CommandReturnType.CommandExecuted.getValue(), null);
+        request.setBody(body);
+        return request;
+    }
+}
@@ -0,0 +1,40 @@
+package com.enodeframework.benchmarks.domain;
+
+import com.enodeframework.domain.AggregateRoot;
+
+public class BenchmarkAggregate extends AggregateRoot<String> {
+
+    private String title;
+
+    public BenchmarkAggregate() {
+    }
+
+    public BenchmarkAggregate(String id, String title) {
+        super(id);
+        applyEvent(new BenchmarkCreated(title));
+    }
+
+    public void changeTitle(String title) {
+        applyEvent(new BenchmarkChanged(title));
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    protected void handle(BenchmarkCreated evnt) {
+        title = evnt.getTitle();
+    }
+
+    protected void handle(BenchmarkChanged evnt) {
+        title = evnt.getTitle();
+    }
+
+    protected void handle(BenchmarkChanged2 evnt) {
+        title = evnt.getTitle();
+    }
+
+    protected void handle(BenchmarkChanged3 evnt) {
+        title = evnt.getTitle();
+    }
+}
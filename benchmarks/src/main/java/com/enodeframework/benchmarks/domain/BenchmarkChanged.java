@@ -0,0 +1,18 @@
+package com.enodeframework.benchmarks.domain;
+
+import com.enodeframework.eventing.DomainEvent;
+
+public class BenchmarkChanged extends DomainEvent<String> {
+    private String title;
+
+    public BenchmarkChanged() {
+    }
+
+    public BenchmarkChanged(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
@@ -0,0 +1,18 @@
+package com.enodeframework.benchmarks.domain;
+
+import com.enodeframework.eventing.DomainEvent;
+
+public class BenchmarkChanged2 extends DomainEvent<String> {
+    private String title;
+
+    public BenchmarkChanged2() {
+    }
+
+    public BenchmarkChanged2(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
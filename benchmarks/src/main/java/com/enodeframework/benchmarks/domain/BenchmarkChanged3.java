@@ -0,0 +1,18 @@
+package com.enodeframework.benchmarks.domain;
+
+import com.enodeframework.eventing.DomainEvent;
+
+public class BenchmarkChanged3 extends DomainEvent<String> {
+    private String title;
+
+    public BenchmarkChanged3() {
+    }
+
+    public BenchmarkChanged3(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
@@ -0,0 +1,18 @@
+package com.enodeframework.benchmarks.domain;
+
+import com.enodeframework.eventing.DomainEvent;
+
+public class BenchmarkCreated extends DomainEvent<String> {
+    private String title;
+
+    public BenchmarkCreated() {
+    }
+
+    public BenchmarkCreated(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
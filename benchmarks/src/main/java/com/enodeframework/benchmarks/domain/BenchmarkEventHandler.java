@@ -0,0 +1,27 @@
+package com.enodeframework.benchmarks.domain;
+
+import com.enodeframework.annotation.Event;
+import com.enodeframework.annotation.Subscribe;
+import com.enodeframework.common.io.AsyncTaskResult;
+
+/**
+ * 分别订阅一个、两个、三个事件的处理器，覆盖三种消息处理器的分发路径
+ */
+@Event
+public class BenchmarkEventHandler {
+
+    @Subscribe
+    public AsyncTaskResult handleAsync(BenchmarkChanged evnt) {
+        return AsyncTaskResult.Success;
+    }
+
+    @Subscribe
+    public AsyncTaskResult handleAsync(BenchmarkChanged evnt, BenchmarkChanged2 evnt2) {
+        return AsyncTaskResult.Success;
+    }
+
+    @Subscribe
+    public AsyncTaskResult handleAsync(BenchmarkChanged evnt, BenchmarkChanged2 evnt2, BenchmarkChanged3 evnt3) {
+        return AsyncTaskResult.Success;
+    }
+}
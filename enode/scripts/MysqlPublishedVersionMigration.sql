@@ -0,0 +1,15 @@
+-- PublishedVersion表的唯一索引由(ProcessorName, AggregateRootId, Version)改为(ProcessorName, AggregateRootId)，
+-- 旧索引下批量更新的INSERT ... ON DUPLICATE KEY UPDATE不会冲突，每次发布都会插入新行。
+-- 升级前停止所有事件消费者再执行；分表部署时对每张表（PublishedVersion_0、PublishedVersion_1...）分别执行。
+
+-- 每个(ProcessorName, AggregateRootId)只保留版本最大的一行
+DELETE p
+FROM `PublishedVersion` p
+         JOIN `PublishedVersion` q
+              ON p.`ProcessorName` = q.`ProcessorName`
+                  AND p.`AggregateRootId` = q.`AggregateRootId`
+                  AND (p.`Version` < q.`Version` OR (p.`Version` = q.`Version` AND p.`Sequence` < q.`Sequence`));
+
+ALTER TABLE `PublishedVersion`
+    DROP INDEX `IX_PublishedVersion_AggId_Version`,
+    ADD UNIQUE KEY `IX_PublishedVersion_ProcName_AggId` (`ProcessorName`, `AggregateRootId`);
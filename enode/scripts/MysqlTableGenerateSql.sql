@@ -22,6 +22,17 @@ CREATE TABLE `PublishedVersion`
     `Version`               INT                   NOT NULL,
     `CreatedOn`             DATETIME              NOT NULL,
     PRIMARY KEY (`Sequence`),
-    UNIQUE KEY `IX_PublishedVersion_AggId_Version` (`ProcessorName`, `AggregateRootId`, `Version`)
+    UNIQUE KEY `IX_PublishedVersion_ProcName_AggId` (`ProcessorName`, `AggregateRootId`)
 ) ENGINE = InnoDB
-  DEFAULT CHARSET = utf8mb4;
\ No newline at end of file
+  DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE `Snapshot`
+(
+    `AggregateRootId`       VARCHAR(36)           NOT NULL,
+    `AggregateRootTypeName` VARCHAR(256)          NOT NULL,
+    `Version`               INT                   NOT NULL,
+    `Payload`               MEDIUMTEXT            NOT NULL,
+    `CreatedOn`             DATETIME              NOT NULL,
+    PRIMARY KEY (`AggregateRootId`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4;
@@ -1,5 +1,6 @@
 package com.enodeframework;
 
+import com.enodeframework.commanding.CommandFlowController;
 import com.enodeframework.commanding.impl.CommandAsyncHandlerProxy;
 import com.enodeframework.commanding.impl.CommandHandlerProxy;
 import com.enodeframework.commanding.impl.DefaultCommandAsyncHandlerProvider;
@@ -7,8 +8,12 @@ import com.enodeframework.commanding.impl.DefaultCommandHandlerProvider;
 import com.enodeframework.commanding.impl.DefaultCommandRoutingKeyProvider;
 import com.enodeframework.common.container.SpringObjectContainer;
 import com.enodeframework.common.io.IOHelper;
+import com.enodeframework.common.scheduling.IMailboxScheduler;
 import com.enodeframework.common.scheduling.ScheduleService;
+import com.enodeframework.common.scheduling.ShardedMailboxScheduler;
+import com.enodeframework.common.scheduling.TimingWheel;
 import com.enodeframework.common.thirdparty.gson.GsonJsonSerializer;
+import com.enodeframework.domain.IMemoryCache;
 import com.enodeframework.domain.impl.DefaultAggregateRepositoryProvider;
 import com.enodeframework.domain.impl.DefaultAggregateRootFactory;
 import com.enodeframework.domain.impl.DefaultAggregateRootInternalHandlerProvider;
@@ -30,11 +35,16 @@ import com.enodeframework.infrastructure.impl.DefaultPublishableExceptionProcess
 import com.enodeframework.infrastructure.impl.DefaultThreeMessageHandlerProvider;
 import com.enodeframework.infrastructure.impl.DefaultTwoMessageHandlerProvider;
 import com.enodeframework.infrastructure.impl.DefaultTypeNameProvider;
+import com.enodeframework.infrastructure.impl.HandlerExecutionRegistry;
 import com.enodeframework.infrastructure.impl.InMemoryPublishedVersionStore;
 import com.enodeframework.infrastructure.impl.MessageHandlerProxy1;
 import com.enodeframework.infrastructure.impl.MessageHandlerProxy2;
 import com.enodeframework.infrastructure.impl.MessageHandlerProxy3;
 import com.enodeframework.queue.SendReplyService;
+import com.enodeframework.snapshoting.ISnapshotPolicy;
+import com.enodeframework.snapshoting.ISnapshotter;
+import com.enodeframework.snapshoting.impl.DefaultSnapshotPolicy;
+import com.enodeframework.snapshoting.impl.DefaultSnapshotter;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
@@ -54,6 +64,17 @@ public class ENodeAutoConfiguration {
         return new ScheduleService();
     }
 
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public TimingWheel timingWheel() {
+        return new TimingWheel();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(IMailboxScheduler.class)
+    public ShardedMailboxScheduler mailboxScheduler() {
+        return new ShardedMailboxScheduler();
+    }
+
     @Bean
     public IOHelper ioHelper() {
         return new IOHelper();
@@ -110,6 +131,12 @@ public class ENodeAutoConfiguration {
         return new CommandAsyncHandlerProxy();
     }
 
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(HandlerExecutionRegistry.class)
+    public HandlerExecutionRegistry handlerExecutionRegistry() {
+        return new HandlerExecutionRegistry();
+    }
+
     @Bean
     @Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
     public MessageHandlerProxy1 messageHandlerProxy1() {
@@ -155,10 +182,17 @@ public class ENodeAutoConfiguration {
     }
 
     @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnMissingBean(IMemoryCache.class)
     public DefaultMemoryCache defaultMemoryCache() {
         return new DefaultMemoryCache();
     }
 
+    @Bean
+    @ConditionalOnMissingBean(CommandFlowController.class)
+    public CommandFlowController commandFlowController() {
+        return new CommandFlowController();
+    }
+
     @Bean
     public DefaultCommandRoutingKeyProvider commandRoutingKeyProvider() {
         return new DefaultCommandRoutingKeyProvider();
@@ -204,6 +238,18 @@ public class ENodeAutoConfiguration {
         return new DefaultAggregateSnapshotter();
     }
 
+    @Bean
+    @ConditionalOnMissingBean(ISnapshotter.class)
+    public DefaultSnapshotter snapshotter() {
+        return new DefaultSnapshotter();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(ISnapshotPolicy.class)
+    public DefaultSnapshotPolicy snapshotPolicy() {
+        return new DefaultSnapshotPolicy();
+    }
+
     @Bean
     public EventSourcingAggregateStorage eventSourcingAggregateStorage() {
         return new EventSourcingAggregateStorage();
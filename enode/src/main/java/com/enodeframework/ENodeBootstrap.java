@@ -4,14 +4,19 @@ import com.enodeframework.commanding.impl.DefaultCommandAsyncHandlerProvider;
 import com.enodeframework.commanding.impl.DefaultCommandHandlerProvider;
 import com.enodeframework.common.extensions.ClassNameComparator;
 import com.enodeframework.common.extensions.ClassPathScanHandler;
+import com.enodeframework.common.extensions.ComponentIndex;
 import com.enodeframework.domain.impl.DefaultAggregateRepositoryProvider;
 import com.enodeframework.domain.impl.DefaultAggregateRootInternalHandlerProvider;
 import com.enodeframework.infrastructure.WrappedRuntimeException;
 import com.enodeframework.infrastructure.impl.DefaultMessageHandlerProvider;
 import com.enodeframework.infrastructure.impl.DefaultThreeMessageHandlerProvider;
 import com.enodeframework.infrastructure.impl.DefaultTwoMessageHandlerProvider;
+import com.enodeframework.infrastructure.impl.DefaultTypeNameProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -22,8 +27,16 @@ import java.util.TreeSet;
  */
 public class ENodeBootstrap {
 
+    private static final Logger logger = LoggerFactory.getLogger(ENodeBootstrap.class);
+
     private List<String> packages;
 
+    /**
+     * 配置的包所在的每个类路径根（目录或jar）都带有enode-indexer生成的组件索引时，从索引加载组件，不再扫描；
+     * 只要有一个类路径根没有索引，就忽略索引扫描全部包
+     */
+    private boolean componentIndexEnabled = true;
+
     private ClassPathScanHandler handler;
 
     @Autowired
@@ -47,6 +60,9 @@ public class ENodeBootstrap {
     @Autowired
     private DefaultAggregateRootInternalHandlerProvider aggregateRootInternalHandlerProvider;
 
+    @Autowired
+    private DefaultTypeNameProvider typeNameProvider;
+
     public void init() {
         Set<Class<?>> classSet = scanConfiguredPackages();
         registerBeans(classSet);
@@ -56,6 +72,7 @@ public class ENodeBootstrap {
      * @param classSet
      */
     private void registerBeans(Set<Class<?>> classSet) {
+        typeNameProvider.initialize(classSet);
         commandAsyncHandlerProvider.initialize(classSet);
         commandHandlerProvider.initialize(classSet);
         messageHandlerProvider.initialize(classSet);
@@ -72,15 +89,42 @@ public class ENodeBootstrap {
         if (packages == null) {
             throw new WrappedRuntimeException("Command packages is not specified");
         }
-        String[] pkgs = new String[packages.size()];
-        handler = new ClassPathScanHandler(packages.toArray(pkgs));
         Set<Class<?>> classSet = new TreeSet<>(new ClassNameComparator());
-        for (String pakName : packages) {
+        List<String> scanPackages = loadComponentIndex(classSet);
+        if (scanPackages.isEmpty()) {
+            return classSet;
+        }
+        String[] pkgs = new String[scanPackages.size()];
+        handler = new ClassPathScanHandler(scanPackages.toArray(pkgs));
+        for (String pakName : scanPackages) {
             classSet.addAll(handler.getPackageAllClasses(pakName, true));
         }
         return classSet;
     }
 
+    /**
+     * 配置的包所在的类路径根都带有编译时生成的组件索引时，从索引加载全部类型并返回空列表；
+     * 否则不使用索引，返回全部包进行扫描，避免部分类路径根没有索引时漏掉组件
+     */
+    private List<String> loadComponentIndex(Set<Class<?>> classSet) {
+        if (!componentIndexEnabled) {
+            return packages;
+        }
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ComponentIndex componentIndex = ComponentIndex.load(classLoader);
+        if (componentIndex == null) {
+            return packages;
+        }
+        if (!componentIndex.isComplete(packages, classLoader)) {
+            logger.info("Component index {} does not cover all classpath roots of packages {}, fall back to scanning packages.", ComponentIndex.COMPONENTS_RESOURCE_LOCATION, packages);
+            return packages;
+        }
+        Set<Class<?>> componentTypes = componentIndex.getComponentTypes(packages, classLoader);
+        logger.info("Load {} component types of packages {} from {}.", componentTypes.size(), packages, ComponentIndex.COMPONENTS_RESOURCE_LOCATION);
+        classSet.addAll(componentTypes);
+        return Collections.emptyList();
+    }
+
     public List<String> getPackages() {
         return this.packages;
     }
@@ -88,4 +132,12 @@ public class ENodeBootstrap {
     public void setPackages(List<String> packages) {
         this.packages = packages;
     }
+
+    public boolean isComponentIndexEnabled() {
+        return componentIndexEnabled;
+    }
+
+    public void setComponentIndexEnabled(boolean componentIndexEnabled) {
+        this.componentIndexEnabled = componentIndexEnabled;
+    }
 }
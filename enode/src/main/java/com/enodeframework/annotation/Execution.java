@@ -0,0 +1,23 @@
+package com.enodeframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 指定消息处理器的执行方式，可以标注在处理方法或处理器类上，方法上的优先
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Execution {
+
+    ExecutionMode value() default ExecutionMode.DEFAULT;
+
+    /**
+     * EXECUTOR方式使用的线程池名称，需要先在HandlerExecutionRegistry中注册
+     */
+    String executor() default "";
+}
@@ -0,0 +1,23 @@
+package com.enodeframework.annotation;
+
+/**
+ * 消息处理器的执行方式
+ */
+public enum ExecutionMode {
+    /**
+     * 使用HandlerExecutionRegistry配置的默认执行方式
+     */
+    DEFAULT,
+    /**
+     * 在分发消息的线程（即消息所在mailbox的线程）上直接执行，适用于不阻塞的处理器
+     */
+    INLINE,
+    /**
+     * 提交到指定名称的线程池执行，适用于会阻塞的处理器；名称为空时使用默认线程池
+     */
+    EXECUTOR,
+    /**
+     * 处理器方法自己返回CompletableFuture，在分发线程上调用后直接使用其结果
+     */
+    ASYNC
+}
@@ -0,0 +1,21 @@
+package com.enodeframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 为命令、事件等消息类型指定稳定的短编码（如数字"1001"或别名"NoteCreated"），
+ * DefaultTypeNameProvider开启类型编码后，消息和事件存储中使用该编码代替完整类名。
+ * 聚合根类型名称参与事件表的分片路由，始终使用完整类名，标注在聚合根上的编码只用于解析。
+ * 类型需要在ENodeBootstrap扫描的包中，编码一旦写入存储就不能再修改，只能由字母、数字、下划线、中划线和冒号组成
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface TypeCode {
+
+    String value();
+}
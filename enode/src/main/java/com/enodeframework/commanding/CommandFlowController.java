@@ -0,0 +1,144 @@
+package com.enodeframework.commanding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 命令处理的背压控制：
+ * 全局处理中的命令数达到上限，或任一聚合根邮箱中的命令数达到上限时进入暂停状态，通知MQ消费者停止拉取；
+ * 全局命令数回落到恢复水位且没有超限的邮箱时退出暂停状态，通知MQ消费者继续拉取。
+ */
+public class CommandFlowController {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandFlowController.class);
+
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    private final AtomicInteger overloadedMailboxCount = new AtomicInteger();
+    private final LongAdder pausedCount = new LongAdder();
+    private final List<IFlowControlListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object lockObj = new Object();
+    private volatile boolean paused;
+    private int maxInFlightCount = 10000;
+    private int resumeInFlightCount = 5000;
+    private int mailboxMaxInFlightCount = 1000;
+    private int mailboxResumeInFlightCount = 500;
+
+    public void addListener(IFlowControlListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(IFlowControlListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void onCommandEnqueued() {
+        int count = inFlightCount.incrementAndGet();
+        if (!paused && count >= maxInFlightCount) {
+            updateState();
+        }
+    }
+
+    public void onCommandCompleted() {
+        int count = inFlightCount.decrementAndGet();
+        if (paused && count <= resumeInFlightCount) {
+            updateState();
+        }
+    }
+
+    public void onMailboxOverloaded(String aggregateRootId, int mailboxInFlightCount) {
+        logger.warn("Command mailbox is overloaded, aggregateRootId: {}, inFlightCount: {}", aggregateRootId, mailboxInFlightCount);
+        overloadedMailboxCount.incrementAndGet();
+        updateState();
+    }
+
+    public void onMailboxRecovered(String aggregateRootId) {
+        overloadedMailboxCount.decrementAndGet();
+        updateState();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public int getInFlightCount() {
+        return inFlightCount.get();
+    }
+
+    public int getOverloadedMailboxCount() {
+        return overloadedMailboxCount.get();
+    }
+
+    public long getPausedCount() {
+        return pausedCount.sum();
+    }
+
+    public int getMaxInFlightCount() {
+        return maxInFlightCount;
+    }
+
+    public void setMaxInFlightCount(int maxInFlightCount) {
+        this.maxInFlightCount = maxInFlightCount;
+    }
+
+    public int getResumeInFlightCount() {
+        return resumeInFlightCount;
+    }
+
+    public void setResumeInFlightCount(int resumeInFlightCount) {
+        this.resumeInFlightCount = resumeInFlightCount;
+    }
+
+    public int getMailboxMaxInFlightCount() {
+        return mailboxMaxInFlightCount;
+    }
+
+    public void setMailboxMaxInFlightCount(int mailboxMaxInFlightCount) {
+        this.mailboxMaxInFlightCount = mailboxMaxInFlightCount;
+    }
+
+    public int getMailboxResumeInFlightCount() {
+        return mailboxResumeInFlightCount;
+    }
+
+    public void setMailboxResumeInFlightCount(int mailboxResumeInFlightCount) {
+        this.mailboxResumeInFlightCount = mailboxResumeInFlightCount;
+    }
+
+    private void updateState() {
+        synchronized (lockObj) {
+            int count = inFlightCount.get();
+            int overloaded = overloadedMailboxCount.get();
+            if (!paused && (count >= maxInFlightCount || overloaded > 0)) {
+                paused = true;
+                pausedCount.increment();
+                logger.warn("Command consuming paused, inFlightCount: {}, overloadedMailboxCount: {}", count, overloaded);
+                listeners.forEach(this::notifyPause);
+            } else if (paused && count <= resumeInFlightCount && overloaded == 0) {
+                paused = false;
+                logger.info("Command consuming resumed, inFlightCount: {}", count);
+                listeners.forEach(this::notifyResume);
+            }
+        }
+    }
+
+    private void notifyPause(IFlowControlListener listener) {
+        try {
+            listener.onPause();
+        } catch (Exception ex) {
+            logger.error("Notify flow control listener to pause has unknown exception.", ex);
+        }
+    }
+
+    private void notifyResume(IFlowControlListener listener) {
+        try {
+            listener.onResume();
+        } catch (Exception ex) {
+            logger.error("Notify flow control listener to resume has unknown exception.", ex);
+        }
+    }
+}
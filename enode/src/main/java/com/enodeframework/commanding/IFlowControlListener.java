@@ -0,0 +1,11 @@
+package com.enodeframework.commanding;
+
+/**
+ * 流控状态变化时的回调，用于暂停或恢复MQ消费，回调在触发状态变化的线程上执行，不能阻塞
+ */
+public interface IFlowControlListener {
+
+    void onPause();
+
+    void onResume();
+}
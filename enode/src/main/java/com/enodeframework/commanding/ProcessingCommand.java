@@ -10,6 +10,10 @@ public class ProcessingCommand {
     private final Map<String, String> items;
     private ProcessingCommandMailbox mailbox;
     private long sequence;
+    /**
+     * 乱序完成时暂存的命令结果，等前面的命令都完成后由邮箱按序返回
+     */
+    private CommandResult pendingResult;
 
     public ProcessingCommand(ICommand command, ICommandExecuteContext commandExecuteContext, Map<String, String> items) {
         this.message = command;
@@ -37,6 +41,14 @@ public class ProcessingCommand {
         this.sequence = sequence;
     }
 
+    CommandResult getPendingResult() {
+        return pendingResult;
+    }
+
+    void setPendingResult(CommandResult pendingResult) {
+        this.pendingResult = pendingResult;
+    }
+
     public ICommand getMessage() {
         return message;
     }
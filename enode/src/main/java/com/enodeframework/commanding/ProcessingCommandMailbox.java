@@ -1,53 +1,75 @@
 package com.enodeframework.commanding;
 
+import com.enodeframework.common.function.DelayedTask;
 import com.enodeframework.common.io.Task;
 import com.enodeframework.common.threading.ManualResetEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import static com.enodeframework.common.io.Task.await;
-
+/**
+ * 聚合根维度的命令邮箱，保证同一聚合根的命令按顺序处理；
+ * 处理循环不会阻塞线程，上一个命令的future完成后再在executor上调度下一个命令。
+ * 命令按序号存放在可扩容的环形数组中，序号通过原子自增分配，乱序完成的命令记录在位图中，
+ * 除命令本身外入队和完成不产生额外分配；只有扩容时才会等待其他写入方退出。
+ */
 public class ProcessingCommandMailbox {
     private static final Logger logger = LoggerFactory.getLogger(ProcessingCommandMailbox.class);
 
-    private final Object lockObj = new Object();
-    // TODO async lock
-    private final Object lockObj2 = new Object();
-    private final ConcurrentMap<Long, ProcessingCommand> messageDict;
-    private final Map<Long, CommandResult> requestToCompleteCommandDict;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Object resizeLock = new Object();
+    private final AtomicLong nextSequence;
+    private final AtomicInteger activeWriters;
+    private final AtomicBoolean draining;
     private final IProcessingCommandHandler messageHandler;
+    private final CommandFlowController flowController;
+    private final AtomicBoolean overloaded;
+    private final Executor executor;
     private final ManualResetEvent pauseWaitHandle;
     private final ManualResetEvent processingWaitHandle;
     private final int batchSize;
     private final String aggregateRootId;
     private final int commandMailBoxPersistenceMaxBatchSize = 1000;
-    private long nextSequence;
-    private long consumingSequence;
-    private long consumedSequence;
+    private volatile Ring ring;
+    private volatile boolean resizing;
+    private volatile long consumingSequence;
+    private volatile long consumedSequence;
     private AtomicBoolean isRunning;
     private volatile boolean isProcessingCommand;
     private volatile boolean isPaused;
-    private Date lastActiveTime;
+    private volatile long lastActiveNanos;
+
+    public ProcessingCommandMailbox(String aggregateRootId, IProcessingCommandHandler messageHandler, Executor executor) {
+        this(aggregateRootId, messageHandler, executor, null);
+    }
 
-    public ProcessingCommandMailbox(String aggregateRootId, IProcessingCommandHandler messageHandler) {
-        this.messageDict = new ConcurrentHashMap<>();
-        this.requestToCompleteCommandDict = new HashMap<>();
+    public ProcessingCommandMailbox(String aggregateRootId, IProcessingCommandHandler messageHandler, Executor executor, CommandFlowController flowController) {
+        this.ring = new Ring(INITIAL_CAPACITY);
+        this.nextSequence = new AtomicLong();
+        this.activeWriters = new AtomicInteger();
+        this.draining = new AtomicBoolean(false);
         this.pauseWaitHandle = new ManualResetEvent(false);
         this.processingWaitHandle = new ManualResetEvent(false);
         this.batchSize = commandMailBoxPersistenceMaxBatchSize;
         this.aggregateRootId = aggregateRootId;
         this.messageHandler = messageHandler;
+        this.executor = executor;
+        this.flowController = flowController;
+        this.overloaded = new AtomicBoolean(false);
         this.consumedSequence = -1;
         this.isRunning = new AtomicBoolean(false);
-        this.lastActiveTime = new Date();
+        this.lastActiveNanos = System.nanoTime();
     }
 
     public String getAggregateRootId() {
@@ -55,129 +77,315 @@ public class ProcessingCommandMailbox {
     }
 
     public void enqueueMessage(ProcessingCommand message) {
-        //TODO synchronized
-        synchronized (lockObj) {
-            message.setSequence(nextSequence);
-            message.setMailbox(this);
-            // If the specified key is not already associated with a value (or is mapped to null) associates it with the given value and returns null, else returns the current value.
-            ProcessingCommand processingCommand = messageDict.putIfAbsent(message.getSequence(), message);
-            if (processingCommand == null) {
-                nextSequence++;
-            }
+        long sequence = nextSequence.getAndIncrement();
+        message.setSequence(sequence);
+        message.setMailbox(this);
+        while (!tryPublish(sequence, message)) {
+            grow(sequence);
         }
-        lastActiveTime = new Date();
+        onMessageAdded();
+        lastActiveNanos = System.nanoTime();
         tryRun();
     }
 
     public void pause() {
-        this.lastActiveTime = new Date();
+        this.lastActiveNanos = System.nanoTime();
         this.pauseWaitHandle.reset();
+        // 先设置暂停标记，处理循环会在当前命令完成后停止，再等待处理循环退出
+        this.isPaused = true;
         while (isProcessingCommand) {
             logger.info("Request to pause the command mailbox, but the mailbox is currently processing command, so we should wait for a while, aggregateRootId: {}", aggregateRootId);
             this.processingWaitHandle.waitOne(1000);
         }
-        this.isPaused = true;
     }
 
     public void resume() {
-        this.lastActiveTime = new Date();
+        this.lastActiveNanos = System.nanoTime();
         this.isPaused = false;
         this.pauseWaitHandle.set();
         tryRun();
     }
 
+    /**
+     * 丢弃已记录但还未按序完成的命令结果，这些命令会从consumingSequence开始重新处理
+     */
     public void resetConsumingSequence(long consumingSequence) {
-        this.lastActiveTime = new Date();
+        this.lastActiveNanos = System.nanoTime();
         this.consumingSequence = consumingSequence;
-        this.requestToCompleteCommandDict.clear();
+        Ring current = acquireRing();
+        try {
+            long end = nextSequence.get();
+            for (long sequence = consumedSequence + 1; sequence < end; sequence++) {
+                current.clearCompleted(sequence);
+            }
+        } finally {
+            releaseRing();
+        }
     }
 
     public CompletableFuture<Void> completeMessage(ProcessingCommand processingCommand, CommandResult commandResult) {
-        synchronized (lockObj2) {
+        try {
+            lastActiveNanos = System.nanoTime();
+            long sequence = processingCommand.getSequence();
+            if (sequence <= consumedSequence) {
+                // 重置消费序号后重复处理的命令，已经从邮箱移除，直接返回结果
+                return completeCommand(processingCommand, commandResult);
+            }
+            processingCommand.setPendingResult(commandResult);
+            Ring current = acquireRing();
             try {
-                lastActiveTime = new Date();
-                if (processingCommand.getSequence() == consumedSequence + 1) {
-                    messageDict.remove(processingCommand.getSequence());
-                    return completeCommand(processingCommand, commandResult).thenAccept(r ->
-                            consumedSequence = processNextCompletedCommands(processingCommand.getSequence())
-                    );
-                } else if (processingCommand.getSequence() > consumedSequence + 1) {
-                    requestToCompleteCommandDict.put(processingCommand.getSequence(), commandResult);
-                } else if (processingCommand.getSequence() < consumedSequence + 1) {
-                    messageDict.remove(processingCommand.getSequence());
-                    return completeCommand(processingCommand, commandResult).thenAccept(r ->
-                            requestToCompleteCommandDict.remove(processingCommand.getSequence())
-                    );
-                }
-            } catch (Exception ex) {
-                logger.error(String.format("Command mailbox complete command failed, commandId: %s, aggregateRootId: %s", processingCommand.getMessage().id(), processingCommand.getMessage().getAggregateRootId()), ex);
+                current.setCompleted(sequence);
+            } finally {
+                releaseRing();
+            }
+            CompletableFuture<Void> future = drainCompletedCommands(sequence);
+            if (future != null) {
+                return future;
             }
+        } catch (Exception ex) {
+            logger.error(String.format("Command mailbox complete command failed, commandId: %s, aggregateRootId: %s", processingCommand.getMessage().id(), processingCommand.getMessage().getAggregateRootId()), ex);
         }
         return Task.CompletedTask;
     }
 
     public void run() {
-        lastActiveTime = new Date();
-        while (isPaused) {
+        lastActiveNanos = System.nanoTime();
+        processingWaitHandle.reset();
+        isProcessingCommand = true;
+        if (isPaused) {
             logger.info("Command mailbox is pausing and we should wait for a while, aggregateRootId: {}", aggregateRootId);
-            pauseWaitHandle.waitOne(1000);
+            completeRun();
+            return;
         }
+        processMessages(0);
+    }
+
+    /**
+     * 依次处理命令，已完成的future直接在当前线程继续，未完成的future在其完成后由executor继续处理，避免占用线程等待IO
+     */
+    private void processMessages(int count) {
         ProcessingCommand processingCommand = null;
         try {
-            processingWaitHandle.reset();
-            isProcessingCommand = true;
-            int count = 0;
-            while (consumingSequence < nextSequence && count < batchSize) {
-                processingCommand = getProcessingCommand(consumingSequence);
-                if (processingCommand != null) {
-                    // await 阻塞操作
-                    await(messageHandler.handle(processingCommand));
+            while (!isPaused && count < batchSize) {
+                // 已经完成的命令不再处理
+                long sequence = Math.max(consumingSequence, consumedSequence + 1);
+                processingCommand = getProcessingCommand(sequence);
+                if (processingCommand == null) {
+                    // 序号已分配但命令还未放入环形数组，入队方放入后会再次触发处理
+                    break;
+                }
+                consumingSequence = sequence;
+                CompletableFuture<Void> future = messageHandler.handle(processingCommand);
+                if (!future.isDone()) {
+                    int handledCount = count;
+                    ProcessingCommand currentCommand = processingCommand;
+                    future.whenCompleteAsync((r, ex) -> onMessageHandled(currentCommand, handledCount, ex), executor);
+                    return;
                 }
+                // 同步完成时通过join获取可能的异常
+                future.join();
                 consumingSequence++;
                 count++;
             }
+            completeRun();
         } catch (Throwable ex) {
-            logger.error(String.format("Command mailbox run has unknown exception, aggregateRootId: %s, commandId: %s", aggregateRootId, processingCommand != null ? processingCommand.getMessage().id() : ""), ex);
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException e) {
-                //ignore
-                logger.error("mailbox interrupted", e);
+            onRunFailed(processingCommand, ex);
+        }
+    }
+
+    private void onMessageHandled(ProcessingCommand processingCommand, int count, Throwable ex) {
+        if (ex != null) {
+            onRunFailed(processingCommand, ex);
+            return;
+        }
+        lastActiveNanos = System.nanoTime();
+        consumingSequence++;
+        processMessages(count + 1);
+    }
+
+    private void onRunFailed(ProcessingCommand processingCommand, Throwable ex) {
+        logger.error(String.format("Command mailbox run has unknown exception, aggregateRootId: %s, commandId: %s", aggregateRootId, processingCommand != null ? processingCommand.getMessage().id() : ""), ex);
+        isProcessingCommand = false;
+        processingWaitHandle.set();
+        exit();
+        DelayedTask.startDelayedTask(Duration.ofMillis(1), this::tryRun);
+    }
+
+    private void completeRun() {
+        isProcessingCommand = false;
+        processingWaitHandle.set();
+        exit();
+        if (!isPaused && getProcessingCommand(Math.max(consumingSequence, consumedSequence + 1)) != null) {
+            tryRun();
+        }
+    }
+
+    public boolean isInactive(int timeoutSeconds) {
+        return System.nanoTime() - lastActiveNanos >= TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    }
+
+    private ProcessingCommand getProcessingCommand(long sequence) {
+        if (sequence >= nextSequence.get()) {
+            return null;
+        }
+        return ring.get(sequence);
+    }
+
+    /**
+     * 环形数组中的空位足够时放入命令，否则返回false由调用方扩容后重试
+     */
+    private boolean tryPublish(long sequence, ProcessingCommand message) {
+        Ring current = acquireRing();
+        try {
+            if (sequence - consumedSequence > current.capacity) {
+                return false;
             }
+            // 槽位复用前清除可能残留的完成标记
+            current.clearCompleted(sequence);
+            current.set(sequence, message);
+            return true;
         } finally {
-            isProcessingCommand = false;
-            processingWaitHandle.set();
-            exit();
-            if (consumingSequence < nextSequence) {
-                tryRun();
+            releaseRing();
+        }
+    }
+
+    /**
+     * 按序完成已记录结果的命令，同一时间只有一个线程执行；
+     * 如果sequence对应的命令由当前线程完成，返回它的完成future
+     */
+    private CompletableFuture<Void> drainCompletedCommands(long sequence) {
+        CompletableFuture<Void> future = null;
+        while (draining.compareAndSet(false, true)) {
+            try {
+                ProcessingCommand processingCommand;
+                while ((processingCommand = pollCompletedCommand()) != null) {
+                    CommandResult commandResult = processingCommand.getPendingResult();
+                    processingCommand.setPendingResult(null);
+                    onMessageRemoved();
+                    CompletableFuture<Void> completeFuture = completeCommand(processingCommand, commandResult);
+                    if (processingCommand.getSequence() == sequence) {
+                        future = completeFuture;
+                    }
+                }
+            } finally {
+                draining.set(false);
+            }
+            // 释放标记后其他线程记录的结果可能还没有被处理，需要再检查一次
+            if (!isNextCompleted()) {
+                break;
+            }
+        }
+        return future;
+    }
+
+    private ProcessingCommand pollCompletedCommand() {
+        Ring current = acquireRing();
+        try {
+            long sequence = consumedSequence + 1;
+            if (!current.isCompleted(sequence)) {
+                return null;
+            }
+            ProcessingCommand processingCommand = current.get(sequence);
+            current.clearCompleted(sequence);
+            if (processingCommand == null || processingCommand.getPendingResult() == null) {
+                // 同一命令被重复完成时留下的过期标记
+                return null;
             }
+            // 先推进consumedSequence再清空槽位，处理循环看到空槽位时一定能看到新的consumedSequence
+            consumedSequence = sequence;
+            current.clear(sequence, processingCommand);
+            return processingCommand;
+        } finally {
+            releaseRing();
         }
     }
 
-    public boolean isInactive(int timeoutSeconds) {
-        return (System.currentTimeMillis() - lastActiveTime.getTime()) >= timeoutSeconds * 1000L;
+    private boolean isNextCompleted() {
+        Ring current = acquireRing();
+        try {
+            return current.isCompleted(consumedSequence + 1);
+        } finally {
+            releaseRing();
+        }
     }
 
-    private ProcessingCommand getProcessingCommand(long sequence) {
-        return messageDict.get(sequence);
+    /**
+     * 读写环形数组前登记为写入方，扩容时等待所有写入方退出后再复制，保证复制期间没有并发修改
+     */
+    private Ring acquireRing() {
+        while (true) {
+            if (!resizing) {
+                activeWriters.incrementAndGet();
+                if (!resizing) {
+                    return ring;
+                }
+                activeWriters.decrementAndGet();
+            }
+            Thread.yield();
+        }
     }
 
-    private long processNextCompletedCommands(long baseSequence) {
-        long returnSequence = baseSequence;
-        long nextSequence = baseSequence + 1;
+    private void releaseRing() {
+        activeWriters.decrementAndGet();
+    }
 
-        while (requestToCompleteCommandDict.containsKey(nextSequence)) {
-            ProcessingCommand processingCommand = messageDict.remove(nextSequence);
-            if (processingCommand != null) {
-                CommandResult commandResult = requestToCompleteCommandDict.get(nextSequence);
-                completeCommand(processingCommand, commandResult);
+    private void grow(long sequence) {
+        synchronized (resizeLock) {
+            resizing = true;
+            try {
+                while (activeWriters.get() != 0) {
+                    Thread.yield();
+                }
+                Ring current = ring;
+                long start = consumedSequence + 1;
+                long end = Math.max(nextSequence.get(), sequence + 1);
+                if (end - start <= current.capacity) {
+                    return;
+                }
+                int capacity = current.capacity;
+                while (capacity < end - start) {
+                    capacity <<= 1;
+                }
+                Ring newRing = new Ring(capacity);
+                for (long i = start; i < end; i++) {
+                    ProcessingCommand processingCommand = current.get(i);
+                    if (processingCommand != null) {
+                        newRing.set(i, processingCommand);
+                    }
+                    if (current.isCompleted(i)) {
+                        newRing.setCompleted(i);
+                    }
+                }
+                ring = newRing;
+            } finally {
+                resizing = false;
             }
-            requestToCompleteCommandDict.remove(nextSequence);
-            returnSequence = nextSequence;
-            nextSequence++;
         }
+    }
+
+    private void onMessageAdded() {
+        if (flowController == null) {
+            return;
+        }
+        flowController.onCommandEnqueued();
+        int count = getInFlightCount();
+        if (count >= flowController.getMailboxMaxInFlightCount() && overloaded.compareAndSet(false, true)) {
+            flowController.onMailboxOverloaded(aggregateRootId, count);
+        }
+    }
+
+    private void onMessageRemoved() {
+        if (flowController == null) {
+            return;
+        }
+        flowController.onCommandCompleted();
+        if (getInFlightCount() <= flowController.getMailboxResumeInFlightCount() && overloaded.compareAndSet(true, false)) {
+            flowController.onMailboxRecovered(aggregateRootId);
+        }
+    }
 
-        return returnSequence;
+    public int getInFlightCount() {
+        return (int) Math.max(0, nextSequence.get() - consumedSequence - 1);
     }
 
     private CompletableFuture<Void> completeCommand(ProcessingCommand processingCommand, CommandResult commandResult) {
@@ -196,7 +404,7 @@ public class ProcessingCommandMailbox {
 
     private void tryRun() {
         if (tryEnter()) {
-            CompletableFuture.runAsync(this::run);
+            executor.execute(this::run);
         }
     }
 
@@ -209,10 +417,68 @@ public class ProcessingCommandMailbox {
     }
 
     public Date getLastActiveTime() {
-        return this.lastActiveTime;
+        return new Date(System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActiveNanos));
     }
 
     public boolean isRunning() {
         return isRunning.get();
     }
+
+    /**
+     * 按序号取模定位的命令槽位和完成位图，容量为2的幂
+     */
+    private static final class Ring {
+        private final int capacity;
+        private final int mask;
+        private final AtomicReferenceArray<ProcessingCommand> slots;
+        private final AtomicLongArray completedBits;
+
+        private Ring(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.completedBits = new AtomicLongArray(Math.max(1, capacity >>> 6));
+        }
+
+        private ProcessingCommand get(long sequence) {
+            ProcessingCommand processingCommand = slots.get((int) (sequence & mask));
+            return processingCommand != null && processingCommand.getSequence() == sequence ? processingCommand : null;
+        }
+
+        private void set(long sequence, ProcessingCommand processingCommand) {
+            slots.set((int) (sequence & mask), processingCommand);
+        }
+
+        /**
+         * 槽位可能已经被绕回的新命令占用，只清除指定的命令
+         */
+        private void clear(long sequence, ProcessingCommand processingCommand) {
+            slots.compareAndSet((int) (sequence & mask), processingCommand, null);
+        }
+
+        private boolean isCompleted(long sequence) {
+            int index = (int) (sequence & mask);
+            return (completedBits.get(index >>> 6) & (1L << index)) != 0;
+        }
+
+        private void setCompleted(long sequence) {
+            int index = (int) (sequence & mask);
+            long bit = 1L << index;
+            int word = index >>> 6;
+            long value;
+            do {
+                value = completedBits.get(word);
+            } while ((value & bit) == 0 && !completedBits.compareAndSet(word, value, value | bit));
+        }
+
+        private void clearCompleted(long sequence) {
+            int index = (int) (sequence & mask);
+            long bit = 1L << index;
+            int word = index >>> 6;
+            long value;
+            do {
+                value = completedBits.get(word);
+            } while ((value & bit) != 0 && !completedBits.compareAndSet(word, value, value & ~bit));
+        }
+    }
 }
@@ -3,12 +3,13 @@ package com.enodeframework.commanding.impl;
 import com.enodeframework.commanding.ICommand;
 import com.enodeframework.commanding.ICommandAsyncHandlerProxy;
 import com.enodeframework.common.container.IObjectContainer;
+import com.enodeframework.common.function.Func2;
 import com.enodeframework.common.io.AsyncTaskResult;
 import com.enodeframework.infrastructure.IApplicationMessage;
+import com.enodeframework.infrastructure.MethodInvokerFactory;
 import com.enodeframework.infrastructure.WrappedRuntimeException;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.concurrent.CompletableFuture;
 
@@ -21,7 +22,7 @@ public class CommandAsyncHandlerProxy implements ICommandAsyncHandlerProxy {
 
     private Object commandHandler;
 
-    private MethodHandle methodHandle;
+    private Func2<Object, ICommand, Object> invoker;
 
     private Method method;
 
@@ -29,8 +30,8 @@ public class CommandAsyncHandlerProxy implements ICommandAsyncHandlerProxy {
     public CompletableFuture<AsyncTaskResult<IApplicationMessage>> handleAsync(ICommand command) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                return (AsyncTaskResult<IApplicationMessage>) methodHandle.invoke(getInnerObject(), command);
-            } catch (Throwable e) {
+                return (AsyncTaskResult<IApplicationMessage>) invoker.apply(getInnerObject(), command);
+            } catch (Exception e) {
                 throw new WrappedRuntimeException(e);
             }
         });
@@ -50,11 +51,6 @@ public class CommandAsyncHandlerProxy implements ICommandAsyncHandlerProxy {
         this.handlerType = handlerType;
     }
 
-    @Override
-    public void setMethodHandle(MethodHandle methodHandle) {
-        this.methodHandle = methodHandle;
-    }
-
     @Override
     public Method getMethod() {
         return method;
@@ -63,5 +59,6 @@ public class CommandAsyncHandlerProxy implements ICommandAsyncHandlerProxy {
     @Override
     public void setMethod(Method method) {
         this.method = method;
+        this.invoker = MethodInvokerFactory.create(Func2.class, method);
     }
 }
@@ -4,12 +4,13 @@ import com.enodeframework.commanding.ICommand;
 import com.enodeframework.commanding.ICommandContext;
 import com.enodeframework.commanding.ICommandHandlerProxy;
 import com.enodeframework.common.container.IObjectContainer;
+import com.enodeframework.common.function.Action3;
 import com.enodeframework.common.io.AsyncTaskResult;
 import com.enodeframework.infrastructure.IApplicationMessage;
+import com.enodeframework.infrastructure.MethodInvokerFactory;
 import com.enodeframework.infrastructure.WrappedRuntimeException;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.concurrent.CompletableFuture;
 
@@ -22,7 +23,7 @@ public class CommandHandlerProxy implements ICommandHandlerProxy {
 
     private Object commandHandler;
 
-    private MethodHandle methodHandle;
+    private Action3<Object, ICommandContext, ICommand> invoker;
 
     private Method method;
 
@@ -30,9 +31,9 @@ public class CommandHandlerProxy implements ICommandHandlerProxy {
     public CompletableFuture<Void> handleAsync(ICommandContext context, ICommand command) {
         return CompletableFuture.runAsync(() -> {
             try {
-                methodHandle.invoke(getInnerObject(), context, command);
-            } catch (Throwable throwable) {
-                throw new WrappedRuntimeException(throwable);
+                invoker.apply(getInnerObject(), context, command);
+            } catch (Exception e) {
+                throw new WrappedRuntimeException(e);
             }
         });
     }
@@ -51,11 +52,6 @@ public class CommandHandlerProxy implements ICommandHandlerProxy {
         this.handlerType = handlerType;
     }
 
-    @Override
-    public void setMethodHandle(MethodHandle methodHandle) {
-        this.methodHandle = methodHandle;
-    }
-
     @Override
     public Method getMethod() {
         return method;
@@ -64,5 +60,6 @@ public class CommandHandlerProxy implements ICommandHandlerProxy {
     @Override
     public void setMethod(Method method) {
         this.method = method;
+        this.invoker = MethodInvokerFactory.create(Action3.class, method);
     }
 }
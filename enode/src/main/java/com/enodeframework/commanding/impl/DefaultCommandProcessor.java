@@ -1,27 +1,28 @@
 package com.enodeframework.commanding.impl;
 
+import com.enodeframework.commanding.CommandFlowController;
 import com.enodeframework.commanding.ICommandProcessor;
 import com.enodeframework.commanding.IProcessingCommandHandler;
 import com.enodeframework.commanding.ProcessingCommand;
 import com.enodeframework.commanding.ProcessingCommandMailbox;
-import com.enodeframework.common.scheduling.IScheduleService;
+import com.enodeframework.common.scheduling.IMailboxScheduler;
+import com.enodeframework.common.scheduling.TimingWheel;
+import com.enodeframework.metrics.IMetrics;
+import com.enodeframework.metrics.MetricNames;
+import com.enodeframework.metrics.impl.NoopMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.stream.Collectors;
 
 public class DefaultCommandProcessor implements ICommandProcessor {
     private static final Logger logger = LoggerFactory.getLogger(DefaultCommandProcessor.class);
 
     private final ConcurrentMap<String, ProcessingCommandMailbox> mailboxDict;
     private final int timeoutSeconds;
-    private final String taskName;
     private final int commandMailBoxPersistenceMaxBatchSize = 1000;
     private final int scanExpiredAggregateIntervalMilliseconds = 5000;
     private final int eventMailBoxPersistenceMaxBatchSize = 1000;
@@ -29,12 +30,17 @@ public class DefaultCommandProcessor implements ICommandProcessor {
     @Autowired
     private IProcessingCommandHandler handler;
     @Autowired
-    private IScheduleService scheduleService;
+    private TimingWheel timingWheel;
+    @Autowired
+    private IMailboxScheduler mailboxScheduler;
+    @Autowired(required = false)
+    private CommandFlowController flowController;
+    @Autowired(required = false)
+    private IMetrics metrics = NoopMetrics.INSTANCE;
 
     public DefaultCommandProcessor() {
         this.mailboxDict = new ConcurrentHashMap<>();
         this.timeoutSeconds = aggregateRootMaxInactiveSeconds;
-        this.taskName = "CleanInactiveAggregates" + System.nanoTime() + new Random().nextInt(10000);
     }
 
     @Override
@@ -44,31 +50,61 @@ public class DefaultCommandProcessor implements ICommandProcessor {
             throw new IllegalArgumentException("aggregateRootId of command cannot be null or empty, commandId:" + processingCommand.getMessage().id());
         }
 
-        ProcessingCommandMailbox mailbox = mailboxDict.computeIfAbsent(aggregateRootId, x -> new ProcessingCommandMailbox(x, handler));
+        ProcessingCommandMailbox mailbox = mailboxDict.computeIfAbsent(aggregateRootId, x -> {
+            ProcessingCommandMailbox newMailbox = new ProcessingCommandMailbox(x, handler, mailboxScheduler.getExecutor(x), flowController);
+            timingWheel.schedule(timeoutSeconds * 1000L, () -> expireMailbox(x, newMailbox));
+            return newMailbox;
+        });
         mailbox.enqueueMessage(processingCommand);
     }
 
     @Override
     public void start() {
-        scheduleService.startTask(taskName, this::cleanInactiveMailbox,
-                scanExpiredAggregateIntervalMilliseconds,
-                scanExpiredAggregateIntervalMilliseconds);
+        metrics.gauge(MetricNames.COMMAND_MAILBOX_COUNT, mailboxDict, Map::size);
+        metrics.gauge(MetricNames.COMMAND_MAILBOX_DEPTH, this, x -> x.getTotalInFlightCount());
+        metrics.gauge(MetricNames.COMMAND_MAILBOX_MAX_DEPTH, this, x -> x.getMaxInFlightCount());
     }
 
     @Override
     public void stop() {
-        scheduleService.stopTask(taskName);
     }
 
-    private void cleanInactiveMailbox() {
-        List<Map.Entry<String, ProcessingCommandMailbox>> inactiveList = mailboxDict.entrySet().stream().filter(entry ->
-                entry.getValue().isInactive(timeoutSeconds) && !entry.getValue().isRunning()
-        ).collect(Collectors.toList());
+    /**
+     * 所有邮箱中未完成的命令数，遍历邮箱计算，只在采集指标时调用
+     */
+    public long getTotalInFlightCount() {
+        long count = 0;
+        for (ProcessingCommandMailbox mailbox : mailboxDict.values()) {
+            count += mailbox.getInFlightCount();
+        }
+        return count;
+    }
 
-        inactiveList.forEach(entry -> {
-            if (mailboxDict.remove(entry.getKey()) != null) {
-                logger.info("Removed inactive command mailbox, aggregateRootId: {}", entry.getKey());
-            }
-        });
+    public int getMaxInFlightCount() {
+        int max = 0;
+        for (ProcessingCommandMailbox mailbox : mailboxDict.values()) {
+            max = Math.max(max, mailbox.getInFlightCount());
+        }
+        return max;
+    }
+
+    /**
+     * 时间轮到期时检查邮箱的真实活跃时间，未过期则返回剩余时间重新登记
+     */
+    private long expireMailbox(String aggregateRootId, ProcessingCommandMailbox mailbox) {
+        if (mailboxDict.get(aggregateRootId) != mailbox) {
+            return 0;
+        }
+        long remainingMillis = timeoutSeconds * 1000L - (System.currentTimeMillis() - mailbox.getLastActiveTime().getTime());
+        if (remainingMillis > 0) {
+            return remainingMillis;
+        }
+        if (mailbox.isRunning()) {
+            return scanExpiredAggregateIntervalMilliseconds;
+        }
+        if (mailboxDict.remove(aggregateRootId, mailbox)) {
+            logger.info("Removed inactive command mailbox, aggregateRootId: {}", aggregateRootId);
+        }
+        return 0;
     }
 }
@@ -19,9 +19,11 @@ import com.enodeframework.common.serializing.IJsonSerializer;
 import com.enodeframework.domain.IAggregateRoot;
 import com.enodeframework.eventing.DomainEventStream;
 import com.enodeframework.eventing.EventCommittingContext;
+import com.enodeframework.eventing.ICommandIdFilter;
 import com.enodeframework.eventing.IDomainEvent;
 import com.enodeframework.eventing.IEventService;
 import com.enodeframework.eventing.IEventStore;
+import com.enodeframework.eventing.impl.NoopCommandIdFilter;
 import com.enodeframework.infrastructure.IApplicationMessage;
 import com.enodeframework.infrastructure.IMessagePublisher;
 import com.enodeframework.infrastructure.IObjectProxy;
@@ -74,6 +76,9 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
     @Autowired
     private IOHelper ioHelper;
 
+    @Autowired(required = false)
+    private ICommandIdFilter commandIdFilter = NoopCommandIdFilter.INSTANCE;
+
     @Override
     public CompletableFuture<Void> handle(ProcessingCommand processingCommand) {
         ICommand command = processingCommand.getMessage();
@@ -189,6 +194,10 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
 
     private void processIfNoEventsOfCommand(ProcessingCommand processingCommand, int retryTimes) {
         ICommand command = processingCommand.getMessage();
+        if (!commandIdFilter.mightExist(command.getAggregateRootId(), command.id())) {
+            completeCommand(processingCommand, CommandStatus.NothingChanged, String.class.getName(), processingCommand.getCommandExecuteContext().getResult());
+            return;
+        }
 
         ioHelper.tryAsyncActionRecursively("ProcessIfNoEventsOfCommand",
                 () -> eventStore.findAsync(command.getAggregateRootId(), command.id()),
@@ -225,6 +234,10 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
 
     private void handleExceptionAsync(ProcessingCommand processingCommand, ICommandHandlerProxy commandHandler, Exception exception, int retryTimes) {
         ICommand command = processingCommand.getMessage();
+        if (!commandIdFilter.mightExist(command.getAggregateRootId(), command.id())) {
+            handleFirstExecutionException(processingCommand, commandHandler, exception);
+            return;
+        }
 
         ioHelper.tryAsyncActionRecursively("FindEventByCommandIdAsync",
                 () -> eventStore.findAsync(command.getAggregateRootId(), command.id()),
@@ -240,22 +253,7 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
                         logger.info("handle command exception,and the command has consumed before,we will publish domain event again and try execute next command mailbox message.", exception);
                         eventService.publishDomainEventAsync(processingCommand, existingEventStream);
                     } else {
-                        //到这里，说明当前command执行遇到异常，然后当前command之前也没执行过，是第一次被执行。
-                        //那就判断当前异常是否是需要被发布出去的异常，如果是，则发布该异常给所有消费者；否则，就记录错误日志；
-                        //然后，认为该command处理失败即可；
-
-                        Throwable exp = exception;
-                        if (exp instanceof WrappedRuntimeException) {
-                            exp = ((WrappedRuntimeException) exp).getException();
-                        }
-
-                        if (exp instanceof IPublishableException) {
-                            IPublishableException publishableException = (IPublishableException) exp;
-                            publishExceptionAsync(processingCommand, publishableException, 0);
-                        } else {
-                            logCommandExecuteException(processingCommand, commandHandler, exp);
-                            completeCommand(processingCommand, CommandStatus.Failed, exp.getClass().getName(), exp.getMessage());
-                        }
+                        handleFirstExecutionException(processingCommand, commandHandler, exception);
                     }
                 },
                 () -> String.format("[commandId:%s]", command.id()),
@@ -265,6 +263,25 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
 
     }
 
+    /**
+     * 当前command执行遇到异常，并且之前没有产生过事件，是第一次被执行；
+     * 如果是需要被发布出去的异常，则发布该异常给所有消费者，否则记录错误日志，然后认为该command处理失败
+     */
+    private void handleFirstExecutionException(ProcessingCommand processingCommand, ICommandHandlerProxy commandHandler, Exception exception) {
+        Throwable exp = exception;
+        if (exp instanceof WrappedRuntimeException) {
+            exp = ((WrappedRuntimeException) exp).getException();
+        }
+
+        if (exp instanceof IPublishableException) {
+            IPublishableException publishableException = (IPublishableException) exp;
+            publishExceptionAsync(processingCommand, publishableException, 0);
+        } else {
+            logCommandExecuteException(processingCommand, commandHandler, exp);
+            completeCommand(processingCommand, CommandStatus.Failed, exp.getClass().getName(), exp.getMessage());
+        }
+    }
+
     private void publishExceptionAsync(ProcessingCommand processingCommand, IPublishableException exception, int retryTimes) {
         ioHelper.tryAsyncActionRecursively("PublishExceptionAsync",
                 () -> exceptionPublisher.publishAsync(exception),
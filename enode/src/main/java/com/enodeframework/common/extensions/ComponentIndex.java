@@ -0,0 +1,129 @@
+package com.enodeframework.common.extensions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 读取enode-indexer注解处理器在编译时生成的META-INF/enode.components索引，
+ * 配置的包所在的类路径根都带有索引时ENodeBootstrap不再扫描包
+ */
+public class ComponentIndex {
+
+    public static final String COMPONENTS_RESOURCE_LOCATION = "META-INF/enode.components";
+
+    private static final Logger logger = LoggerFactory.getLogger(ComponentIndex.class);
+
+    private final Set<String> componentNames;
+
+    /**
+     * 带有索引文件的类路径根
+     */
+    private final Set<String> indexedRoots;
+
+    private ComponentIndex(Set<String> componentNames, Set<String> indexedRoots) {
+        this.componentNames = componentNames;
+        this.indexedRoots = indexedRoots;
+    }
+
+    /**
+     * 类路径上没有索引文件时返回null
+     */
+    public static ComponentIndex load(ClassLoader classLoader) {
+        Set<String> componentNames = new LinkedHashSet<>();
+        Set<String> indexedRoots = new LinkedHashSet<>();
+        try {
+            Enumeration<URL> urls = classLoader.getResources(COMPONENTS_RESOURCE_LOCATION);
+            if (!urls.hasMoreElements()) {
+                return null;
+            }
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                indexedRoots.add(getRoot(url, COMPONENTS_RESOURCE_LOCATION));
+                readComponentNames(url, componentNames);
+            }
+        } catch (IOException e) {
+            logger.warn("Load enode component index failed, fall back to scanning packages.", e);
+            return null;
+        }
+        return new ComponentIndex(componentNames, indexedRoots);
+    }
+
+    /**
+     * 包含给定包（含子包）类文件的每个类路径根都带有索引文件时返回true；
+     * 只要有一个类路径根没有索引（例如没有使用注解处理器编译的jar），索引就不完整，需要扫描包
+     */
+    public boolean isComplete(List<String> packages, ClassLoader classLoader) {
+        for (String pkg : packages) {
+            String packagePath = pkg.replace('.', '/');
+            try {
+                Enumeration<URL> urls = classLoader.getResources(packagePath);
+                while (urls.hasMoreElements()) {
+                    String root = getRoot(urls.nextElement(), packagePath);
+                    if (!indexedRoots.contains(root)) {
+                        logger.info("Classpath root {} of package {} has no component index.", root, pkg);
+                        return false;
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Resolve classpath roots of package {} failed.", pkg, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getRoot(URL url, String resourcePath) {
+        String path = url.toString();
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.endsWith(resourcePath) ? path.substring(0, path.length() - resourcePath.length()) : path;
+    }
+
+    private static void readComponentNames(URL url, Set<String> componentNames) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    componentNames.add(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * 加载属于给定包（含子包）的组件类型，已经不存在的类型记录警告后跳过
+     */
+    public Set<Class<?>> getComponentTypes(List<String> packages, ClassLoader classLoader) {
+        Set<Class<?>> componentTypes = new LinkedHashSet<>();
+        componentNames.stream().filter(name -> isInPackages(name, packages)).forEach(name -> {
+            try {
+                componentTypes.add(Class.forName(name, false, classLoader));
+            } catch (ClassNotFoundException | LinkageError e) {
+                logger.warn("Component type in index cannot be loaded, skip it, type: {}, errorMessage: {}", name, e.getMessage());
+            }
+        });
+        return componentTypes;
+    }
+
+    private boolean isInPackages(String name, List<String> packages) {
+        for (String pkg : packages) {
+            String prefix = pkg.endsWith(".") ? pkg : pkg + ".";
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,5 @@
+package com.enodeframework.common.function;
+
+public interface Func4<T1, T2, T3, T4, TResult> {
+    TResult apply(T1 obj1, T2 obj2, T3 obj3, T4 obj4) throws Exception;
+}
@@ -5,16 +5,30 @@ import com.enodeframework.common.function.Action1;
 import com.enodeframework.common.function.DelayedTask;
 import com.enodeframework.common.function.Func;
 import com.enodeframework.common.utilities.Ensure;
+import com.enodeframework.metrics.ICounter;
+import com.enodeframework.metrics.IMetrics;
+import com.enodeframework.metrics.ITimer;
+import com.enodeframework.metrics.MetricNames;
+import com.enodeframework.metrics.impl.NoopMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import java.time.Duration;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 public class IOHelper {
     private static final Logger logger = LoggerFactory.getLogger(IOHelper.class);
 
+    private final ConcurrentMap<String, ICounter> retryCounterDict = new ConcurrentHashMap<>();
+
+    @Autowired(required = false)
+    private IMetrics metrics = NoopMetrics.INSTANCE;
+
     public <TAsyncResult extends AsyncTaskResult> void tryAsyncActionRecursively(
             String asyncActionName,
             Func<CompletableFuture<TAsyncResult>> asyncAction,
@@ -24,7 +38,23 @@ public class IOHelper {
             Action1<String> failedAction,
             int retryTimes,
             boolean retryWhenFailed) {
-        tryAsyncActionRecursively(asyncActionName, asyncAction, mainAction, successAction, getContextInfoFunc, failedAction, retryTimes, retryWhenFailed, 3, 1000);
+        tryAsyncActionRecursively(asyncActionName, asyncAction, mainAction, successAction, getContextInfoFunc, failedAction, retryTimes, retryWhenFailed, null);
+    }
+
+    /**
+     * timer不为空时，在已有的完成回调中记录每次执行asyncAction的耗时（包括失败和重试），不额外挂接future阶段
+     */
+    public <TAsyncResult extends AsyncTaskResult> void tryAsyncActionRecursively(
+            String asyncActionName,
+            Func<CompletableFuture<TAsyncResult>> asyncAction,
+            Action1<Integer> mainAction,
+            Action1<TAsyncResult> successAction,
+            Func<String> getContextInfoFunc,
+            Action1<String> failedAction,
+            int retryTimes,
+            boolean retryWhenFailed,
+            ITimer timer) {
+        tryAsyncActionRecursively(asyncActionName, asyncAction, mainAction, successAction, getContextInfoFunc, failedAction, retryTimes, retryWhenFailed, 3, 1000, timer);
     }
 
     public <TAsyncResult extends AsyncTaskResult> void tryAsyncActionRecursively(
@@ -38,13 +68,39 @@ public class IOHelper {
             boolean retryWhenFailed,
             int maxRetryTimes,
             int retryInterval) {
+        tryAsyncActionRecursively(asyncActionName, asyncAction, mainAction, successAction, getContextInfoFunc, failedAction, retryTimes, retryWhenFailed, maxRetryTimes, retryInterval, null);
+    }
+
+    public <TAsyncResult extends AsyncTaskResult> void tryAsyncActionRecursively(
+            String asyncActionName,
+            Func<CompletableFuture<TAsyncResult>> asyncAction,
+            Action1<Integer> mainAction,
+            Action1<TAsyncResult> successAction,
+            Func<String> getContextInfoFunc,
+            Action1<String> failedAction,
+            int retryTimes,
+            boolean retryWhenFailed,
+            int maxRetryTimes,
+            int retryInterval,
+            ITimer timer) {
 
         AsyncTaskExecutionContext<TAsyncResult> asyncTaskExecutionContext = new AsyncTaskExecutionContext<>(asyncActionName, asyncAction, mainAction,
-                successAction, getContextInfoFunc, failedAction, retryTimes, retryWhenFailed, maxRetryTimes, retryInterval);
+                successAction, getContextInfoFunc, failedAction, retryTimes, retryWhenFailed, maxRetryTimes, retryInterval, getRetryCounter(asyncActionName), timer);
 
         asyncTaskExecutionContext.execute();
     }
 
+    /**
+     * actionName的取值是有限的常量，计数器按名称缓存，命中时不产生分配
+     */
+    private ICounter getRetryCounter(String actionName) {
+        ICounter counter = retryCounterDict.get(actionName);
+        if (counter == null) {
+            counter = retryCounterDict.computeIfAbsent(actionName, x -> metrics.counter(MetricNames.IO_RETRY, MetricNames.TAG_ACTION, x));
+        }
+        return counter;
+    }
+
     public void tryIOAction(Action action, String actionName) {
         Ensure.notNull(action, "action");
         Ensure.notNull(actionName, "actionName");
@@ -80,8 +136,8 @@ public class IOHelper {
 
         SyncTaskExecutionContext(String actionName, Func<TAsyncResult> action, Action1<Integer> mainAction, Action1<TAsyncResult> successAction,
                                  Func<String> contextInfoFunc, Action1<String> failedAction, int retrtTimes,
-                                 boolean retryWhenFailed, int maxRetryTimes, int retryInterval) {
-            super(actionName, mainAction, successAction, contextInfoFunc, failedAction, retrtTimes, retryWhenFailed, maxRetryTimes, retryInterval);
+                                 boolean retryWhenFailed, int maxRetryTimes, int retryInterval, ICounter retryCounter) {
+            super(actionName, mainAction, successAction, contextInfoFunc, failedAction, retrtTimes, retryWhenFailed, maxRetryTimes, retryInterval, retryCounter);
             this.action = action;
         }
 
@@ -102,18 +158,21 @@ public class IOHelper {
 
     static class AsyncTaskExecutionContext<TAsyncResult extends AsyncTaskResult> extends AbstractTaskExecutionContext<TAsyncResult> {
         private Func<CompletableFuture<TAsyncResult>> asyncAction;
+        private ITimer timer;
 
         AsyncTaskExecutionContext(
                 String actionName, Func<CompletableFuture<TAsyncResult>> asyncAction, Action1<Integer> mainAction,
                 Action1<TAsyncResult> successAction, Func<String> contextInfoFunc, Action1<String> failedAction,
-                int retryTimes, boolean retryWhenFailed, int maxRetryTimes, int retryInterval) {
-            super(actionName, mainAction, successAction, contextInfoFunc, failedAction, retryTimes, retryWhenFailed, maxRetryTimes, retryInterval);
+                int retryTimes, boolean retryWhenFailed, int maxRetryTimes, int retryInterval, ICounter retryCounter, ITimer timer) {
+            super(actionName, mainAction, successAction, contextInfoFunc, failedAction, retryTimes, retryWhenFailed, maxRetryTimes, retryInterval, retryCounter);
             this.asyncAction = asyncAction;
+            this.timer = timer;
         }
 
         @Override
         public void execute() {
             CompletableFuture<TAsyncResult> asyncResult = new CompletableFuture<>();
+            long startTime = timer == null ? 0 : System.nanoTime();
             try {
                 asyncResult = asyncAction.apply();
             } catch (Exception ex) {
@@ -123,6 +182,9 @@ public class IOHelper {
                 taskContinueAction(null, ex);
                 return null;
             }).handleAsync((result, e) -> {
+                if (timer != null) {
+                    timer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                }
                 taskContinueAction(result, e);
                 return null;
             });
@@ -139,9 +201,10 @@ public class IOHelper {
         private boolean retryWhenFailed;
         private int maxRetryTimes;
         private int retryInterval;
+        private ICounter retryCounter;
 
         AbstractTaskExecutionContext(String actionName, Action1<Integer> mainAction, Action1<TAsyncResult> successAction, Func<String> contextInfoFunc,
-                                     Action1<String> failedAction, int retryTimes, boolean retryWhenFailed, int maxRetryTimes, int retryInterval) {
+                                     Action1<String> failedAction, int retryTimes, boolean retryWhenFailed, int maxRetryTimes, int retryInterval, ICounter retryCounter) {
             this.actionName = actionName;
             this.mainAction = mainAction;
             this.successAction = successAction;
@@ -151,6 +214,7 @@ public class IOHelper {
             this.retryWhenFailed = retryWhenFailed;
             this.maxRetryTimes = maxRetryTimes;
             this.retryInterval = retryInterval;
+            this.retryCounter = retryCounter;
         }
 
         public abstract void execute();
@@ -220,6 +284,7 @@ public class IOHelper {
 
         private void doRetry() {
             currentRetryTimes++;
+            retryCounter.increment();
             execute();
         }
 
@@ -0,0 +1,21 @@
+package com.enodeframework.common.scheduling;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 邮箱调度器，为命令邮箱、事件邮箱等按路由键（通常为聚合根ID）分配执行线程
+ */
+public interface IMailboxScheduler {
+    /**
+     * 获取路由键对应的执行器，同一个路由键总是返回同一个执行器
+     *
+     * @param routingKey
+     * @return
+     */
+    Executor getExecutor(String routingKey);
+
+    /**
+     * Stop all the executors.
+     */
+    void shutdown();
+}
@@ -0,0 +1,10 @@
+package com.enodeframework.common.scheduling;
+
+public interface ITimeoutTask {
+    /**
+     * 到期时在时间轮线程上执行，不能阻塞
+     *
+     * @return 距下一次执行的毫秒数，小于等于0表示不再执行
+     */
+    long run();
+}
@@ -0,0 +1,61 @@
+package com.enodeframework.common.scheduling;
+
+import com.enodeframework.common.utilities.Ensure;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分片的邮箱调度器，固定数量的单线程分片，路由键按hash固定到某个分片；
+ * 同一聚合根的命令邮箱和事件邮箱总在同一个线程上运行，线程数有上限且不与公共线程池竞争；
+ * 邮箱每次最多处理一批消息后重新排队，分片内的邮箱按先进先出轮流执行，不会被单个邮箱饿死。
+ */
+public class ShardedMailboxScheduler implements IMailboxScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedMailboxScheduler.class);
+
+    private final ExecutorService[] shards;
+
+    public ShardedMailboxScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedMailboxScheduler(int shardCount) {
+        Ensure.positive(shardCount, "shardCount");
+        shards = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new ThreadPoolExecutor(1, 1,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MailboxScheduler-" + i + "-%d").build());
+        }
+    }
+
+    @Override
+    public ExecutorService getExecutor(String routingKey) {
+        return shards[getShardIndex(routingKey)];
+    }
+
+    @Override
+    public void shutdown() {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        logger.info("Mailbox scheduler shutdown, shardCount: {}", shards.length);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    private int getShardIndex(String routingKey) {
+        int hash = routingKey.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % shards.length;
+    }
+}
@@ -0,0 +1,177 @@
+package com.enodeframework.common.scheduling;
+
+import com.enodeframework.common.utilities.Ensure;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 共享的哈希时间轮，用于淘汰长时间不活跃的邮箱和聚合根；
+ * 每个tick只处理当前槽位中的任务，开销与到期任务数成正比，而与登记的任务总数无关。
+ * 任务返回正数时复用同一个节点重新登记，调用方通常在任务中检查真实的最后活跃时间，
+ * 未过期则返回剩余时间，这样更新活跃时间时不需要操作时间轮。
+ */
+public class TimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private final long tickNanos;
+    private final int mask;
+    private final Timeout[] buckets;
+    private final AtomicReference<Timeout> pendingTimeouts = new AtomicReference<>();
+    private final ThreadFactory threadFactory;
+    private final long startTime;
+    private volatile boolean started;
+    private Thread workerThread;
+    private long currentTick;
+
+    public TimingWheel() {
+        this(1000, 512);
+    }
+
+    /**
+     * @param tickMilliseconds 每个槽位代表的时间，任务的实际执行时间最多晚一个tick
+     * @param wheelSize        槽位数，会向上取整为2的幂
+     */
+    public TimingWheel(long tickMilliseconds, int wheelSize) {
+        Ensure.positive(tickMilliseconds, "tickMilliseconds");
+        Ensure.positive(wheelSize, "wheelSize");
+        int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMilliseconds);
+        this.mask = Math.max(size, 1) - 1;
+        this.buckets = new Timeout[mask + 1];
+        this.threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("TimingWheel-%d").build();
+        this.startTime = System.nanoTime();
+    }
+
+    public void schedule(long delayMilliseconds, ITimeoutTask task) {
+        Ensure.notNull(task, "task");
+        Timeout timeout = new Timeout(task);
+        timeout.deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMilliseconds, 0));
+        addPending(timeout);
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        workerThread = threadFactory.newThread(this::loop);
+        workerThread.start();
+    }
+
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        workerThread.interrupt();
+    }
+
+    private void addPending(Timeout timeout) {
+        Timeout head;
+        do {
+            head = pendingTimeouts.get();
+            timeout.next = head;
+        } while (!pendingTimeouts.compareAndSet(head, timeout));
+    }
+
+    private void loop() {
+        while (started) {
+            long deadline = (currentTick + 1) * tickNanos;
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException ex) {
+                    if (!started) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            transferPendingTimeouts();
+            expireTimeouts(buckets[(int) (currentTick & mask)], deadline);
+            currentTick++;
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout = pendingTimeouts.getAndSet(null);
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            addToBucket(timeout);
+            timeout = next;
+        }
+    }
+
+    private void addToBucket(Timeout timeout) {
+        long ticks = timeout.deadline / tickNanos;
+        long calculated = Math.max(ticks, currentTick);
+        timeout.remainingRounds = (calculated - currentTick) / buckets.length;
+        int index = (int) (calculated & mask);
+        timeout.prev = null;
+        timeout.next = buckets[index];
+        if (buckets[index] != null) {
+            buckets[index].prev = timeout;
+        }
+        buckets[index] = timeout;
+    }
+
+    private void removeFromBucket(Timeout timeout, int index) {
+        if (timeout.prev == null) {
+            buckets[index] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    private void expireTimeouts(Timeout timeout, long deadline) {
+        int index = (int) (currentTick & mask);
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                removeFromBucket(timeout, index);
+                long delayMilliseconds = runTask(timeout);
+                if (delayMilliseconds > 0) {
+                    // 至少延迟到下一个tick，避免落回正在处理的槽位
+                    timeout.deadline = Math.max(deadline + TimeUnit.MILLISECONDS.toNanos(delayMilliseconds), deadline + tickNanos);
+                    addPending(timeout);
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    private long runTask(Timeout timeout) {
+        try {
+            return timeout.task.run();
+        } catch (Throwable ex) {
+            logger.error("Timing wheel task has unknown exception.", ex);
+            return 0;
+        }
+    }
+
+    private static final class Timeout {
+        private final ITimeoutTask task;
+        private long deadline;
+        private long remainingRounds;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(ITimeoutTask task) {
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.enodeframework.common.sharding;
+
+import com.enodeframework.common.utilities.Ensure;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按聚合根类型把聚合根限定在一段连续的分片上，可以把热点聚合根类型单独放到一组数据库中；
+ * 区间内再由rangeStrategy选择分片，没有配置区间的聚合根类型使用全部分片。
+ * 聚合根类型未知时返回-1，由调用方查询所有分片。
+ */
+public class AggregateTypeRangeShardingStrategy implements IShardingStrategy {
+
+    private final Map<String, int[]> rangeDict = new ConcurrentHashMap<>();
+
+    private final IShardingStrategy rangeStrategy;
+
+    public AggregateTypeRangeShardingStrategy() {
+        this(new ConsistentHashShardingStrategy());
+    }
+
+    public AggregateTypeRangeShardingStrategy(IShardingStrategy rangeStrategy) {
+        Ensure.notNull(rangeStrategy, "rangeStrategy");
+        this.rangeStrategy = rangeStrategy;
+    }
+
+    /**
+     * @param fromShardIndex 起始分片序号（包含）
+     * @param toShardIndex   结束分片序号（不包含）
+     */
+    public void addRange(String aggregateRootTypeName, int fromShardIndex, int toShardIndex) {
+        Ensure.notNullOrEmpty(aggregateRootTypeName, "aggregateRootTypeName");
+        Ensure.nonNegative(fromShardIndex, "fromShardIndex");
+        Ensure.positive(toShardIndex - fromShardIndex, "shardRangeSize");
+        rangeDict.put(aggregateRootTypeName, new int[]{fromShardIndex, toShardIndex});
+    }
+
+    @Override
+    public int getShardIndex(String aggregateRootTypeName, String aggregateRootId, int shardCount) {
+        if (shardCount <= 1) {
+            return 0;
+        }
+        if (aggregateRootTypeName == null) {
+            return -1;
+        }
+        int[] range = rangeDict.get(aggregateRootTypeName);
+        if (range == null) {
+            return rangeStrategy.getShardIndex(aggregateRootTypeName, aggregateRootId, shardCount);
+        }
+        if (range[1] > shardCount) {
+            throw new IllegalStateException(String.format("Shard range [%d, %d) of aggregate root type %s exceeds shard count %d.", range[0], range[1], aggregateRootTypeName, shardCount));
+        }
+        return range[0] + rangeStrategy.getShardIndex(aggregateRootTypeName, aggregateRootId, range[1] - range[0]);
+    }
+}
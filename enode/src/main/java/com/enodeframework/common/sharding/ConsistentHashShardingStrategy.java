@@ -0,0 +1,74 @@
+package com.enodeframework.common.sharding;
+
+import com.enodeframework.common.utilities.Ensure;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 一致性哈希，每个分片在哈希环上有多个虚拟节点，聚合根ID使用murmur3哈希后顺时针找到第一个虚拟节点；
+ * 分片从n个增加到n+1个时只有约1/(n+1)的聚合根需要迁移
+ */
+public class ConsistentHashShardingStrategy implements IShardingStrategy {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    private final int virtualNodeCount;
+
+    private final ConcurrentMap<Integer, HashRing> ringDict = new ConcurrentHashMap<>();
+
+    public ConsistentHashShardingStrategy() {
+        this(160);
+    }
+
+    public ConsistentHashShardingStrategy(int virtualNodeCount) {
+        Ensure.positive(virtualNodeCount, "virtualNodeCount");
+        this.virtualNodeCount = virtualNodeCount;
+    }
+
+    @Override
+    public int getShardIndex(String aggregateRootTypeName, String aggregateRootId, int shardCount) {
+        if (shardCount <= 1) {
+            return 0;
+        }
+        return ringDict.computeIfAbsent(shardCount, HashRing::new).locate(hash(aggregateRootId));
+    }
+
+    private static int hash(String key) {
+        return HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asInt();
+    }
+
+    private class HashRing {
+        private final int[] points;
+        private final int[] shards;
+
+        private HashRing(int shardCount) {
+            long[] nodes = new long[shardCount * virtualNodeCount];
+            for (int shard = 0; shard < shardCount; shard++) {
+                for (int i = 0; i < virtualNodeCount; i++) {
+                    //高32位为哈希值，低32位为分片序号，排序后哈希值相同的虚拟节点顺序也是确定的
+                    nodes[shard * virtualNodeCount + i] = ((long) hash("SHARD-" + shard + "-NODE-" + i) << 32) | shard;
+                }
+            }
+            Arrays.sort(nodes);
+            points = new int[nodes.length];
+            shards = new int[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                points[i] = (int) (nodes[i] >> 32);
+                shards[i] = (int) nodes[i];
+            }
+        }
+
+        private int locate(int hash) {
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return shards[index == points.length ? 0 : index];
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.enodeframework.common.sharding;
+
+/**
+ * 把聚合根路由到分片，分片序号从0开始，分片数量由存储决定（数据源个数 × 每个数据源的表个数）
+ */
+public interface IShardingStrategy {
+    /**
+     * @param aggregateRootTypeName 可能为空，如按版本或命令ID查找事件时调用方不知道聚合根类型
+     * @return 分片序号，范围为[0, shardCount)；无法确定时返回-1，调用方需要查询所有分片
+     */
+    int getShardIndex(String aggregateRootTypeName, String aggregateRootId, int shardCount);
+}
@@ -0,0 +1,17 @@
+package com.enodeframework.common.sharding;
+
+/**
+ * 聚合根ID的hashCode对分片数量取模，与未引入分片策略前的分表规则一致，已有数据无需迁移；
+ * 分片数量变化时几乎所有聚合根都会换到别的分片
+ */
+public class ModuloShardingStrategy implements IShardingStrategy {
+
+    @Override
+    public int getShardIndex(String aggregateRootTypeName, String aggregateRootId, int shardCount) {
+        if (shardCount <= 1) {
+            return 0;
+        }
+        //先取模再取绝对值，避免hashCode为Integer.MIN_VALUE时Math.abs仍为负数
+        return Math.abs(aggregateRootId.hashCode() % shardCount);
+    }
+}
@@ -29,10 +29,18 @@ public class DefaultDBConfigurationSetting {
      * 聚合根已发布事件表的默认名称；默认为：PublishedVersion
      */
     private String publishedVersionTableName;
+    /**
+     * 聚合根已发布事件表的默认个数；默认为：1，即不分表
+     */
+    private int publishedVersionTableCount;
     /**
      * LockKey表的默认名称；默认为：LockKey
      */
     private String lockKeyTableName;
+    /**
+     * 聚合根快照表的默认名称；默认为：Snapshot
+     */
+    private String snapshotTableName;
     /**
      * Command表的CommandId的唯一索引的默认名称；默认为：IX_Command_CommandId
      */
@@ -46,7 +54,7 @@ public class DefaultDBConfigurationSetting {
      */
     private String eventTableCommandIdUniqueIndexName;
     /**
-     * 聚合根已发布事件表的聚合根已发布版本唯一索引的默认名称；默认为：IX_PublishedVersion_AggId_Version
+     * 聚合根已发布事件表的聚合根已发布版本唯一索引的默认名称；默认为：IX_PublishedVersion_ProcName_AggId
      */
     private String publishedVersionUniqueIndexName;
     /**
@@ -61,11 +69,13 @@ public class DefaultDBConfigurationSetting {
         eventTableBulkCopyBatchSize = 1000;
         eventTableBulkCopyTimeout = 60;
         publishedVersionTableName = "PublishedVersion";
+        publishedVersionTableCount = 1;
         lockKeyTableName = "LockKey";
+        snapshotTableName = "Snapshot";
         commandTableCommandIdUniqueIndexName = "IX_Command_CommandId";
         eventTableVersionUniqueIndexName = "IX_EventStream_AggId_Version";
         eventTableCommandIdUniqueIndexName = "IX_EventStream_AggId_CommandId";
-        publishedVersionUniqueIndexName = "IX_PublishedVersion_AggId_Version";
+        publishedVersionUniqueIndexName = "IX_PublishedVersion_ProcName_AggId";
         lockKeyPrimaryKeyName = "PK_LockKey";
     }
 
@@ -125,6 +135,14 @@ public class DefaultDBConfigurationSetting {
         this.publishedVersionTableName = publishedVersionTableName;
     }
 
+    public int getPublishedVersionTableCount() {
+        return publishedVersionTableCount;
+    }
+
+    public void setPublishedVersionTableCount(int publishedVersionTableCount) {
+        this.publishedVersionTableCount = publishedVersionTableCount;
+    }
+
     public String getLockKeyTableName() {
         return lockKeyTableName;
     }
@@ -133,6 +151,14 @@ public class DefaultDBConfigurationSetting {
         this.lockKeyTableName = lockKeyTableName;
     }
 
+    public String getSnapshotTableName() {
+        return snapshotTableName;
+    }
+
+    public void setSnapshotTableName(String snapshotTableName) {
+        this.snapshotTableName = snapshotTableName;
+    }
+
     public String getCommandTableCommandIdUniqueIndexName() {
         return commandTableCommandIdUniqueIndexName;
     }
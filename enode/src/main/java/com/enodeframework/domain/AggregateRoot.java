@@ -26,8 +26,8 @@ public abstract class AggregateRoot<TAggregateRootId> implements IAggregateRoot
 
     protected TAggregateRootId id;
     protected int version;
-    private List<IDomainEvent> emptyEvents = new ArrayList<>();
-    private Queue<IDomainEvent> uncommittedEvents;
+    private transient List<IDomainEvent> emptyEvents = new ArrayList<>();
+    private transient Queue<IDomainEvent> uncommittedEvents;
 
     protected AggregateRoot() {
         uncommittedEvents = new ConcurrentLinkedDeque<IDomainEvent>() {
@@ -128,7 +128,7 @@ public abstract class AggregateRoot<TAggregateRootId> implements IAggregateRoot
     @Override
     public List<IDomainEvent> getChanges() {
         if (uncommittedEvents == null) {
-            return emptyEvents;
+            return emptyEvents != null ? emptyEvents : new ArrayList<>();
         }
 
         return Lists.newArrayList(uncommittedEvents);
@@ -140,7 +140,9 @@ public abstract class AggregateRoot<TAggregateRootId> implements IAggregateRoot
             throw new UnsupportedOperationException(String.format("Cannot accept invalid version: %d, expect version: %d, current aggregateRoot type: %s, id: %s", newVersion, version + 1, this.getClass().getName(), id));
         }
         this.version = newVersion;
-        uncommittedEvents.clear();
+        if (uncommittedEvents != null) {
+            uncommittedEvents.clear();
+        }
     }
 
     @Override
@@ -149,11 +151,14 @@ public abstract class AggregateRoot<TAggregateRootId> implements IAggregateRoot
             return;
         }
 
-        eventStreams.forEach(eventStream -> {
-            verifyEvent(eventStream);
-            eventStream.events().forEach(this::handleEvent);
+        eventStreams.forEach(this::replayEvents);
+    }
+
+    @Override
+    public void replayEvents(DomainEventStream eventStream) {
+        verifyEvent(eventStream);
+        eventStream.events().forEach(this::handleEvent);
 
-            this.version = eventStream.version();
-        });
+        this.version = eventStream.version();
     }
 }
@@ -3,6 +3,7 @@ package com.enodeframework.domain;
 import com.enodeframework.eventing.DomainEventStream;
 import com.enodeframework.eventing.IDomainEvent;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -18,4 +19,11 @@ public interface IAggregateRoot {
     void acceptChanges(int newVersion);
 
     void replayEvents(List<DomainEventStream> eventStreams);
+
+    /**
+     * 重放单个事件流，用于流式重建聚合根，调用方保证按版本顺序调用
+     */
+    default void replayEvents(DomainEventStream eventStream) {
+        replayEvents(Collections.singletonList(eventStream));
+    }
 }
@@ -0,0 +1,370 @@
+package com.enodeframework.domain.impl;
+
+import com.enodeframework.common.io.Task;
+import com.enodeframework.common.scheduling.IScheduleService;
+import com.enodeframework.common.utilities.Ensure;
+import com.enodeframework.domain.IAggregateRoot;
+import com.enodeframework.domain.IAggregateStorage;
+import com.enodeframework.domain.IMemoryCache;
+import com.enodeframework.infrastructure.ITypeNameProvider;
+import com.enodeframework.metrics.ICounter;
+import com.enodeframework.metrics.IMetrics;
+import com.enodeframework.metrics.MetricNames;
+import com.enodeframework.metrics.impl.NoopMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有容量上限的聚合根内存缓存，采用W-TinyLFU淘汰策略：
+ * 新聚合根先进入窗口LRU（1%），再进入主区的SLRU（probation/protected），
+ * 主区满时根据FrequencySketch估算的访问频率决定淘汰候选者还是受害者；
+ * 同时按写入顺序维护一个队列，过期清理只需从队头扫描，复杂度与过期数量成正比。
+ */
+public class BoundedMemoryCache implements IMemoryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedMemoryCache.class);
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final ConcurrentMap<String, Node> aggregateRootInfoDict;
+    private final long maximumSize;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final FrequencySketch sketch;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final NodeDeque windowDeque = new NodeDeque(false);
+    private final NodeDeque probationDeque = new NodeDeque(false);
+    private final NodeDeque protectedDeque = new NodeDeque(false);
+    private final NodeDeque writeOrderDeque = new NodeDeque(true);
+    private final int scanExpiredAggregateIntervalMilliseconds = 5000;
+    private final String taskName;
+    private int timeoutSeconds = 3600 * 24 * 3;
+    @Autowired
+    private IAggregateStorage aggregateStorage;
+    @Autowired
+    private ITypeNameProvider typeNameProvider;
+    @Autowired
+    private IScheduleService scheduleService;
+    @Autowired(required = false)
+    private IMetrics metrics = NoopMetrics.INSTANCE;
+    private ICounter hitCounter = NoopMetrics.INSTANCE.counter(MetricNames.MEMORY_CACHE_ACCESS);
+    private ICounter missCounter = NoopMetrics.INSTANCE.counter(MetricNames.MEMORY_CACHE_ACCESS);
+    private ICounter evictionCounter = NoopMetrics.INSTANCE.counter(MetricNames.MEMORY_CACHE_REMOVAL);
+    private ICounter expirationCounter = NoopMetrics.INSTANCE.counter(MetricNames.MEMORY_CACHE_REMOVAL);
+
+    public BoundedMemoryCache() {
+        this(1000000);
+    }
+
+    public BoundedMemoryCache(long maximumSize) {
+        Ensure.positive(maximumSize, "maximumSize");
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (maximumSize - windowMaximum) * 80 / 100;
+        this.sketch = new FrequencySketch(maximumSize);
+        this.aggregateRootInfoDict = new ConcurrentHashMap<>();
+        this.taskName = "CleanInactiveAggregates" + System.nanoTime() + new Random().nextInt(10000);
+    }
+
+    @Override
+    public CompletableFuture<IAggregateRoot> getAsync(Object aggregateRootId, Class aggregateRootType) {
+        if (aggregateRootId == null) {
+            throw new NullPointerException("aggregateRootId");
+        }
+        Node node = aggregateRootInfoDict.get(aggregateRootId.toString());
+        if (node == null) {
+            missCounter.increment();
+            return Task.CompletedTask;
+        }
+        hitCounter.increment();
+        afterRead(node);
+        IAggregateRoot aggregateRoot = node.aggregateRoot;
+        if (!aggregateRootType.isAssignableFrom(aggregateRoot.getClass())) {
+            throw new RuntimeException(String.format("Incorrect aggregate root type, aggregateRootId:%s, type:%s, expecting type:%s", aggregateRootId, aggregateRoot.getClass(), aggregateRootType));
+        }
+        if (aggregateRoot.getChanges().size() > 0) {
+            CompletableFuture<IAggregateRoot> lastestAggregateRootFuture = aggregateStorage.getAsync(aggregateRootType, aggregateRootId.toString());
+            return lastestAggregateRootFuture.thenApply(lastestAggregateRoot -> {
+                if (lastestAggregateRoot != null) {
+                    setInternal(lastestAggregateRoot);
+                }
+                return lastestAggregateRoot;
+            });
+        }
+        return CompletableFuture.completedFuture(aggregateRoot);
+    }
+
+    @Override
+    public CompletableFuture<IAggregateRoot> getAsync(Object aggregateRootId) {
+        return getAsync(aggregateRootId, IAggregateRoot.class);
+    }
+
+    @Override
+    public void set(IAggregateRoot aggregateRoot) {
+        setInternal(aggregateRoot);
+    }
+
+    @Override
+    public CompletableFuture<Void> refreshAggregateFromEventStoreAsync(String aggregateRootTypeName, String aggregateRootId) {
+        try {
+            Class aggregateRootType = typeNameProvider.getType(aggregateRootTypeName);
+            if (aggregateRootType == null) {
+                logger.error("Could not find aggregate root type by aggregate root type name [{}].", aggregateRootTypeName);
+                return Task.CompletedTask;
+            }
+            CompletableFuture<IAggregateRoot> future = aggregateStorage.getAsync(aggregateRootType, aggregateRootId);
+            return future.thenAccept(aggregateRoot -> {
+                if (aggregateRoot != null) {
+                    setInternal(aggregateRoot);
+                }
+            });
+        } catch (Exception ex) {
+            logger.error(String.format("Refresh aggregate from event store has unknown exception, aggregateRootTypeName:%s, aggregateRootId:%s", aggregateRootTypeName, aggregateRootId), ex);
+        }
+        return Task.CompletedTask;
+    }
+
+    @Override
+    public void start() {
+        hitCounter = metrics.counter(MetricNames.MEMORY_CACHE_ACCESS, MetricNames.TAG_RESULT, "hit");
+        missCounter = metrics.counter(MetricNames.MEMORY_CACHE_ACCESS, MetricNames.TAG_RESULT, "miss");
+        evictionCounter = metrics.counter(MetricNames.MEMORY_CACHE_REMOVAL, MetricNames.TAG_CAUSE, "size");
+        expirationCounter = metrics.counter(MetricNames.MEMORY_CACHE_REMOVAL, MetricNames.TAG_CAUSE, "expired");
+        metrics.gauge(MetricNames.MEMORY_CACHE_SIZE, aggregateRootInfoDict, Map::size);
+        scheduleService.startTask(taskName, this::cleanInactiveAggregateRoot, scanExpiredAggregateIntervalMilliseconds, scanExpiredAggregateIntervalMilliseconds);
+    }
+
+    @Override
+    public void stop() {
+        scheduleService.stopTask(taskName);
+    }
+
+    public void setTimeoutSeconds(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long size() {
+        return aggregateRootInfoDict.size();
+    }
+
+    private void setInternal(IAggregateRoot aggregateRoot) {
+        if (aggregateRoot == null) {
+            throw new NullPointerException("aggregateRoot");
+        }
+        String aggregateRootId = aggregateRoot.uniqueId();
+        evictionLock.lock();
+        try {
+            Node node = aggregateRootInfoDict.get(aggregateRootId);
+            if (node != null) {
+                node.aggregateRoot = aggregateRoot;
+                node.lastUpdateTimeMillis = System.currentTimeMillis();
+                writeOrderDeque.moveToLast(node);
+                onAccess(node);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("In memory aggregate updated, type: {}, id: {}, version: {}", aggregateRoot.getClass().getName(), aggregateRootId, aggregateRoot.version());
+                }
+                return;
+            }
+            node = new Node(aggregateRootId, aggregateRoot);
+            aggregateRootInfoDict.put(aggregateRootId, node);
+            writeOrderDeque.addLast(node);
+            windowDeque.addLast(node);
+            sketch.increment(aggregateRootId);
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 读操作不阻塞，锁被占用时放弃本次访问记录
+     */
+    private void afterRead(Node node) {
+        if (evictionLock.tryLock()) {
+            try {
+                if (node.alive) {
+                    onAccess(node);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void onAccess(Node node) {
+        sketch.increment(node.key);
+        if (node.queueType == WINDOW) {
+            windowDeque.moveToLast(node);
+        } else if (node.queueType == PROBATION) {
+            probationDeque.remove(node);
+            node.queueType = PROTECTED;
+            protectedDeque.addLast(node);
+            while (protectedDeque.size > protectedMaximum) {
+                Node demoted = protectedDeque.head;
+                protectedDeque.remove(demoted);
+                demoted.queueType = PROBATION;
+                probationDeque.addLast(demoted);
+            }
+        } else {
+            protectedDeque.moveToLast(node);
+        }
+    }
+
+    private void evict() {
+        while (windowDeque.size > windowMaximum) {
+            Node node = windowDeque.head;
+            windowDeque.remove(node);
+            node.queueType = PROBATION;
+            probationDeque.addLast(node);
+        }
+        while (windowDeque.size + probationDeque.size + protectedDeque.size > maximumSize) {
+            Node victim = probationDeque.head;
+            Node candidate = probationDeque.tail;
+            if (victim == null) {
+                victim = protectedDeque.head != null ? protectedDeque.head : windowDeque.head;
+            } else if (victim != candidate && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                victim = candidate;
+            }
+            removeNode(victim);
+            evictionCounter.increment();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Evicted aggregate root from memory cache, id: {}", victim.key);
+            }
+        }
+    }
+
+    private void removeNode(Node node) {
+        if (node.queueType == WINDOW) {
+            windowDeque.remove(node);
+        } else if (node.queueType == PROBATION) {
+            probationDeque.remove(node);
+        } else {
+            protectedDeque.remove(node);
+        }
+        writeOrderDeque.remove(node);
+        aggregateRootInfoDict.remove(node.key, node);
+        node.alive = false;
+    }
+
+    private void cleanInactiveAggregateRoot() {
+        long expireTimeMillis = System.currentTimeMillis() - timeoutSeconds * 1000L;
+        evictionLock.lock();
+        try {
+            Node node;
+            while ((node = writeOrderDeque.head) != null && node.lastUpdateTimeMillis <= expireTimeMillis) {
+                removeNode(node);
+                expirationCounter.increment();
+                logger.info("Removed inactive aggregate root, id: {}", node.key);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Node {
+        private final String key;
+        private volatile IAggregateRoot aggregateRoot;
+        private volatile long lastUpdateTimeMillis;
+        private int queueType = WINDOW;
+        private boolean alive = true;
+        private Node prev;
+        private Node next;
+        private Node writePrev;
+        private Node writeNext;
+
+        private Node(String key, IAggregateRoot aggregateRoot) {
+            this.key = key;
+            this.aggregateRoot = aggregateRoot;
+            this.lastUpdateTimeMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 侵入式双向链表，O(1)移动和删除；writeOrder为true时使用写入顺序的链接字段
+     */
+    private static final class NodeDeque {
+        private final boolean writeOrder;
+        private Node head;
+        private Node tail;
+        private long size;
+
+        private NodeDeque(boolean writeOrder) {
+            this.writeOrder = writeOrder;
+        }
+
+        private void addLast(Node node) {
+            setPrev(node, tail);
+            setNext(node, null);
+            if (tail == null) {
+                head = node;
+            } else {
+                setNext(tail, node);
+            }
+            tail = node;
+            size++;
+        }
+
+        private void remove(Node node) {
+            Node prev = getPrev(node);
+            Node next = getNext(node);
+            if (prev == null) {
+                head = next;
+            } else {
+                setNext(prev, next);
+            }
+            if (next == null) {
+                tail = prev;
+            } else {
+                setPrev(next, prev);
+            }
+            setPrev(node, null);
+            setNext(node, null);
+            size--;
+        }
+
+        private void moveToLast(Node node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private Node getPrev(Node node) {
+            return writeOrder ? node.writePrev : node.prev;
+        }
+
+        private Node getNext(Node node) {
+            return writeOrder ? node.writeNext : node.next;
+        }
+
+        private void setPrev(Node node, Node prev) {
+            if (writeOrder) {
+                node.writePrev = prev;
+            } else {
+                node.prev = prev;
+            }
+        }
+
+        private void setNext(Node node, Node next) {
+            if (writeOrder) {
+                node.writeNext = next;
+            } else {
+                node.next = next;
+            }
+        }
+    }
+}
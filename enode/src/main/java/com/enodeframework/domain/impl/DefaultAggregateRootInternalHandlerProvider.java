@@ -5,11 +5,9 @@ import com.enodeframework.domain.IAggregateRoot;
 import com.enodeframework.domain.IAggregateRootInternalHandlerProvider;
 import com.enodeframework.eventing.IDomainEvent;
 import com.enodeframework.infrastructure.IAssemblyInitializer;
+import com.enodeframework.infrastructure.MethodInvokerFactory;
 import com.enodeframework.infrastructure.TypeUtils;
-import com.enodeframework.infrastructure.WrappedRuntimeException;
 
-import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
@@ -66,19 +64,8 @@ public class DefaultAggregateRootInternalHandlerProvider implements IAggregateRo
 
     private void registerInternalHandler(Class aggregateRootType, Class eventType, Method method) {
         Map<Class, Action2<IAggregateRoot, IDomainEvent>> eventHandlerDic = mappings.computeIfAbsent(aggregateRootType, k -> new HashMap<>());
-        method.setAccessible(true);
-        try {
-            MethodHandle methodHandle = MethodHandles.lookup().unreflect(method);
-            eventHandlerDic.put(eventType, (aggregateRoot, domainEvent) -> {
-                try {
-                    methodHandle.invoke(aggregateRoot, domainEvent);
-                } catch (Throwable throwable) {
-                    throw new WrappedRuntimeException(throwable);
-                }
-            });
-        } catch (Exception e) {
-            throw new WrappedRuntimeException(e);
-        }
+        //生成直接调用handle方法的Action2实现类，事件重放时不再经过MethodHandle
+        eventHandlerDic.put(eventType, MethodInvokerFactory.create(Action2.class, method));
     }
 
     @Override
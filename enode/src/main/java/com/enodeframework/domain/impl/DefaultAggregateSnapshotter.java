@@ -1,10 +1,10 @@
 package com.enodeframework.domain.impl;
 
-import com.enodeframework.common.io.Task;
 import com.enodeframework.domain.IAggregateRepositoryProvider;
 import com.enodeframework.domain.IAggregateRepositoryProxy;
 import com.enodeframework.domain.IAggregateRoot;
 import com.enodeframework.domain.IAggregateSnapshotter;
+import com.enodeframework.snapshoting.ISnapshotter;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.concurrent.CompletableFuture;
@@ -14,12 +14,20 @@ public class DefaultAggregateSnapshotter implements IAggregateSnapshotter {
     @Autowired
     private IAggregateRepositoryProvider aggregateRepositoryProvider;
 
+    @Autowired
+    private ISnapshotter snapshotter;
+
     @Override
     public CompletableFuture<IAggregateRoot> restoreFromSnapshotAsync(Class aggregateRootType, String aggregateRootId) {
         IAggregateRepositoryProxy aggregateRepository = aggregateRepositoryProvider.getRepository(aggregateRootType);
         if (aggregateRepository == null) {
-            return Task.CompletedTask;
+            return snapshotter.restoreFromSnapshotAsync(aggregateRootType, aggregateRootId);
         }
-        return aggregateRepository.getAsync(aggregateRootId);
+        return aggregateRepository.getAsync(aggregateRootId).thenCompose(aggregateRoot -> {
+            if (aggregateRoot != null) {
+                return CompletableFuture.completedFuture(aggregateRoot);
+            }
+            return snapshotter.restoreFromSnapshotAsync(aggregateRootType, aggregateRootId);
+        });
     }
 }
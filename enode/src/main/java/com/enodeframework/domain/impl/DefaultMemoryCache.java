@@ -1,23 +1,39 @@
 package com.enodeframework.domain.impl;
 
 import com.enodeframework.common.io.Task;
-import com.enodeframework.common.scheduling.IScheduleService;
+import com.enodeframework.common.scheduling.TimingWheel;
+import com.enodeframework.common.utilities.Ensure;
 import com.enodeframework.domain.AggregateCacheInfo;
 import com.enodeframework.domain.IAggregateRoot;
 import com.enodeframework.domain.IAggregateStorage;
 import com.enodeframework.domain.IMemoryCache;
 import com.enodeframework.infrastructure.ITypeNameProvider;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DefaultMemoryCache implements IMemoryCache {
 
@@ -25,18 +41,24 @@ public class DefaultMemoryCache implements IMemoryCache {
 
     private final ConcurrentMap<String, AggregateCacheInfo> aggregateRootInfoDict;
     private final int timeoutSeconds = 5000;
-    private final int scanExpiredAggregateIntervalMilliseconds = 5000;
-    private final String taskName;
+    /**
+     * 预热文件路径，为空时不启用预热
+     */
+    private String warmUpFile;
+    private int warmUpMaxCount = 10000;
+    private int warmUpParallelism = 16;
+    private int warmUpSaveIntervalMilliseconds = 60000;
+    private volatile boolean started;
+    private ThreadPoolExecutor warmUpSaveExecutor;
     @Autowired
     private IAggregateStorage aggregateStorage;
     @Autowired
     private ITypeNameProvider typeNameProvider;
     @Autowired
-    private IScheduleService scheduleService;
+    private TimingWheel timingWheel;
 
     public DefaultMemoryCache() {
         aggregateRootInfoDict = new ConcurrentHashMap<>();
-        taskName = "CleanInactiveAggregates" + System.nanoTime() + new Random().nextInt(10000);
     }
 
     @Override
@@ -102,12 +124,184 @@ public class DefaultMemoryCache implements IMemoryCache {
 
     @Override
     public void start() {
-        scheduleService.startTask(taskName, this::cleanInactiveAggregateRoot, scanExpiredAggregateIntervalMilliseconds, scanExpiredAggregateIntervalMilliseconds);
+        started = true;
+        if (warmUpFile == null) {
+            return;
+        }
+        warmUp();
+        //单独的线程保存预热文件，上一次保存还没完成时丢弃本次保存
+        warmUpSaveExecutor = new ThreadPoolExecutor(1, 1,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("AggregateWarmUpSaver-%d").build(),
+                new ThreadPoolExecutor.DiscardPolicy());
+        timingWheel.schedule(warmUpSaveIntervalMilliseconds, () -> {
+            if (!started) {
+                return 0;
+            }
+            try {
+                warmUpSaveExecutor.execute(this::saveWarmUpFile);
+            } catch (RejectedExecutionException ex) {
+                return 0;
+            }
+            return warmUpSaveIntervalMilliseconds;
+        });
     }
 
     @Override
     public void stop() {
-        scheduleService.stopTask(taskName);
+        started = false;
+        if (warmUpFile != null) {
+            if (warmUpSaveExecutor != null) {
+                warmUpSaveExecutor.shutdown();
+            }
+            saveWarmUpFile();
+        }
+    }
+
+    public void setWarmUpFile(String warmUpFile) {
+        this.warmUpFile = warmUpFile;
+    }
+
+    public void setWarmUpMaxCount(int warmUpMaxCount) {
+        Ensure.positive(warmUpMaxCount, "warmUpMaxCount");
+        this.warmUpMaxCount = warmUpMaxCount;
+    }
+
+    public void setWarmUpParallelism(int warmUpParallelism) {
+        this.warmUpParallelism = warmUpParallelism;
+    }
+
+    public void setWarmUpSaveIntervalMilliseconds(int warmUpSaveIntervalMilliseconds) {
+        this.warmUpSaveIntervalMilliseconds = warmUpSaveIntervalMilliseconds;
+    }
+
+    /**
+     * 按最近更新时间倒序保存最活跃的聚合根，每行格式为：lastUpdateTimeMillis\taggregateRootTypeName\taggregateRootId；
+     * 先写临时文件再替换，避免进程退出时留下不完整的文件
+     */
+    private synchronized void saveWarmUpFile() {
+        List<WarmUpEntry> entries = selectWarmUpEntries();
+        Path path = Paths.get(warmUpFile);
+        Path tempPath = Paths.get(warmUpFile + ".tmp");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                for (WarmUpEntry entry : entries) {
+                    writer.write(String.valueOf(entry.lastUpdateTimeMillis));
+                    writer.write('\t');
+                    writer.write(typeNameProvider.getTypeName(entry.aggregateRootType));
+                    writer.write('\t');
+                    writer.write(entry.aggregateRootId);
+                    writer.newLine();
+                }
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Saved aggregate warm up file, file: {}, count: {}", warmUpFile, entries.size());
+            }
+        } catch (Exception ex) {
+            logger.error(String.format("Save aggregate warm up file has unknown exception, file: %s", warmUpFile), ex);
+        }
+    }
+
+    /**
+     * 用容量为warmUpMaxCount的最小堆选出最近更新的聚合根，只对选出的部分排序；
+     * 更新时间在遍历时取一次快照，避免堆中的元素在比较期间发生变化
+     */
+    private List<WarmUpEntry> selectWarmUpEntries() {
+        PriorityQueue<WarmUpEntry> heap = new PriorityQueue<>(Math.min(warmUpMaxCount, 1024), Comparator.comparingLong(x -> x.lastUpdateTimeMillis));
+        for (Map.Entry<String, AggregateCacheInfo> entry : aggregateRootInfoDict.entrySet()) {
+            long lastUpdateTimeMillis = entry.getValue().getLastUpdateTimeMillis();
+            if (heap.size() < warmUpMaxCount) {
+                heap.add(new WarmUpEntry(lastUpdateTimeMillis, entry.getValue().getAggregateRoot().getClass(), entry.getKey()));
+            } else if (lastUpdateTimeMillis > heap.peek().lastUpdateTimeMillis) {
+                heap.poll();
+                heap.add(new WarmUpEntry(lastUpdateTimeMillis, entry.getValue().getAggregateRoot().getClass(), entry.getKey()));
+            }
+        }
+        List<WarmUpEntry> entries = new ArrayList<>(heap);
+        entries.sort(Comparator.comparingLong((WarmUpEntry x) -> x.lastUpdateTimeMillis).reversed());
+        return entries;
+    }
+
+    /**
+     * 读取预热文件并在后台加载聚合根，同时最多加载warmUpParallelism个；不阻塞启动，加载期间到达的命令照常处理
+     */
+    private void warmUp() {
+        List<String[]> aggregates = loadWarmUpFile();
+        if (aggregates.isEmpty()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicInteger loadedCount = new AtomicInteger();
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0, count = Math.min(warmUpParallelism, aggregates.size()); i < count; i++) {
+            workers.add(warmUpNext(aggregates, nextIndex, loadedCount));
+        }
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).whenComplete((r, ex) ->
+                logger.info("Aggregate warm up finished, file: {}, total: {}, loaded: {}, cost: {}ms", warmUpFile, aggregates.size(), loadedCount.get(), System.currentTimeMillis() - startTime));
+    }
+
+    private CompletableFuture<Void> warmUpNext(List<String[]> aggregates, AtomicInteger nextIndex, AtomicInteger loadedCount) {
+        int index = nextIndex.getAndIncrement();
+        if (index >= aggregates.size() || !started) {
+            return Task.CompletedTask;
+        }
+        String aggregateRootTypeName = aggregates.get(index)[0];
+        String aggregateRootId = aggregates.get(index)[1];
+        CompletableFuture<IAggregateRoot> future;
+        try {
+            Class aggregateRootType = typeNameProvider.getType(aggregateRootTypeName);
+            future = aggregateRootInfoDict.containsKey(aggregateRootId) ? Task.CompletedTask : aggregateStorage.getAsync(aggregateRootType, aggregateRootId);
+        } catch (Exception ex) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+        }
+        return future.handle((aggregateRoot, ex) -> {
+            if (ex != null) {
+                logger.warn("Warm up aggregate failed, aggregateRootTypeName: {}, aggregateRootId: {}, errorMessage: {}", aggregateRootTypeName, aggregateRootId, ex.getMessage());
+            } else if (aggregateRoot != null && setIfAbsent(aggregateRoot)) {
+                loadedCount.incrementAndGet();
+            }
+            return null;
+        }).thenComposeAsync(x -> warmUpNext(aggregates, nextIndex, loadedCount));
+    }
+
+    private List<String[]> loadWarmUpFile() {
+        List<String[]> aggregates = new ArrayList<>();
+        Path path = Paths.get(warmUpFile);
+        if (!Files.exists(path)) {
+            return aggregates;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && aggregates.size() < warmUpMaxCount) {
+                String[] items = line.split("\t", 3);
+                if (items.length == 3) {
+                    aggregates.add(new String[]{items[1], items[2]});
+                }
+            }
+        } catch (IOException ex) {
+            logger.error(String.format("Load aggregate warm up file has io exception, file: %s", warmUpFile), ex);
+        }
+        return aggregates;
+    }
+
+    /**
+     * 预热加载的聚合根可能比命令处理期间放入的旧，只在缓存中不存在时放入
+     */
+    private boolean setIfAbsent(IAggregateRoot aggregateRoot) {
+        String aggregateRootId = aggregateRoot.uniqueId();
+        AggregateCacheInfo aggregateCacheInfo = new AggregateCacheInfo(aggregateRoot);
+        if (aggregateRootInfoDict.putIfAbsent(aggregateRootId, aggregateCacheInfo) != null) {
+            return false;
+        }
+        timingWheel.schedule(timeoutSeconds * 1000L, () -> expireAggregateRoot(aggregateRootId, aggregateCacheInfo));
+        return true;
     }
 
     private void setInternal(IAggregateRoot aggregateRoot) {
@@ -115,27 +309,47 @@ public class DefaultMemoryCache implements IMemoryCache {
             throw new NullPointerException("aggregateRoot");
         }
 
-        aggregateRootInfoDict.merge(aggregateRoot.uniqueId(), new AggregateCacheInfo(aggregateRoot), (oldValue, value) -> {
-            oldValue.setAggregateRoot(aggregateRoot);
-            oldValue.setLastUpdateTimeMillis(System.currentTimeMillis());
+        String aggregateRootId = aggregateRoot.uniqueId();
+        AggregateCacheInfo aggregateCacheInfo = new AggregateCacheInfo(aggregateRoot);
+        AggregateCacheInfo oldValue = aggregateRootInfoDict.putIfAbsent(aggregateRootId, aggregateCacheInfo);
+        if (oldValue == null) {
+            timingWheel.schedule(timeoutSeconds * 1000L, () -> expireAggregateRoot(aggregateRootId, aggregateCacheInfo));
+            return;
+        }
+        oldValue.setAggregateRoot(aggregateRoot);
+        oldValue.setLastUpdateTimeMillis(System.currentTimeMillis());
 
-            if (logger.isDebugEnabled()) {
-                logger.debug("In memory aggregate updated, type: {}, id: {}, version: {}", aggregateRoot.getClass().getName(), aggregateRoot.uniqueId(), aggregateRoot.version());
-            }
+        if (logger.isDebugEnabled()) {
+            logger.debug("In memory aggregate updated, type: {}, id: {}, version: {}", aggregateRoot.getClass().getName(), aggregateRootId, aggregateRoot.version());
+        }
+    }
 
-            return oldValue;
-        });
+    /**
+     * 时间轮到期时检查聚合根的最后更新时间，未过期则返回剩余时间重新登记
+     */
+    private long expireAggregateRoot(String aggregateRootId, AggregateCacheInfo aggregateCacheInfo) {
+        if (aggregateRootInfoDict.get(aggregateRootId) != aggregateCacheInfo) {
+            return 0;
+        }
+        long remainingMillis = timeoutSeconds * 1000L - (System.currentTimeMillis() - aggregateCacheInfo.getLastUpdateTimeMillis());
+        if (remainingMillis > 0) {
+            return remainingMillis;
+        }
+        if (aggregateRootInfoDict.remove(aggregateRootId, aggregateCacheInfo)) {
+            logger.info("Removed inactive aggregate root, id: {}", aggregateRootId);
+        }
+        return 0;
     }
 
-    private void cleanInactiveAggregateRoot() {
-        List<Map.Entry<String, AggregateCacheInfo>> inactiveList = aggregateRootInfoDict.entrySet().stream()
-                .filter(entry -> entry.getValue().isExpired(timeoutSeconds))
-                .collect(Collectors.toList());
+    private static final class WarmUpEntry {
+        private final long lastUpdateTimeMillis;
+        private final Class aggregateRootType;
+        private final String aggregateRootId;
 
-        inactiveList.forEach(entry -> {
-            if (aggregateRootInfoDict.remove(entry.getKey()) != null) {
-                logger.info("Removed inactive aggregate root, id: {}", entry.getKey());
-            }
-        });
+        private WarmUpEntry(long lastUpdateTimeMillis, Class aggregateRootType, String aggregateRootId) {
+            this.lastUpdateTimeMillis = lastUpdateTimeMillis;
+            this.aggregateRootType = aggregateRootType;
+            this.aggregateRootId = aggregateRootId;
+        }
     }
 }
@@ -1,21 +1,32 @@
 package com.enodeframework.domain.impl;
 
 import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.common.io.AsyncTaskStatus;
 import com.enodeframework.common.io.Task;
 import com.enodeframework.domain.IAggregateRoot;
 import com.enodeframework.domain.IAggregateRootFactory;
 import com.enodeframework.domain.IAggregateSnapshotter;
 import com.enodeframework.domain.IAggregateStorage;
-import com.enodeframework.eventing.DomainEventStream;
+import com.enodeframework.eventing.ICommandIdFilter;
 import com.enodeframework.eventing.IEventStore;
+import com.enodeframework.eventing.impl.NoopCommandIdFilter;
 import com.enodeframework.infrastructure.ITypeNameProvider;
+import com.enodeframework.metrics.IMetrics;
+import com.enodeframework.metrics.ITimer;
+import com.enodeframework.metrics.MetricNames;
+import com.enodeframework.metrics.impl.NoopMetrics;
+import com.enodeframework.snapshoting.ISnapshotter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class EventSourcingAggregateStorage implements IAggregateStorage {
 
+    private static final Logger logger = LoggerFactory.getLogger(EventSourcingAggregateStorage.class);
+
     private static final int MINVERSION = 1;
 
     private static final int MAXVERSION = Integer.MAX_VALUE;
@@ -29,9 +40,20 @@ public class EventSourcingAggregateStorage implements IAggregateStorage {
     @Autowired
     private IAggregateSnapshotter aggregateSnapshotter;
 
+    @Autowired
+    private ISnapshotter snapshotter;
+
     @Autowired
     private ITypeNameProvider typeNameProvider;
 
+    @Autowired(required = false)
+    private IMetrics metrics = NoopMetrics.INSTANCE;
+
+    @Autowired(required = false)
+    private ICommandIdFilter commandIdFilter = NoopCommandIdFilter.INSTANCE;
+
+    private volatile ITimer queryTimer;
+
     @Override
     public <T extends IAggregateRoot> CompletableFuture<T> getAsync(Class<T> aggregateRootType, String aggregateRootId) {
         if (aggregateRootType == null) {
@@ -45,13 +67,7 @@ public class EventSourcingAggregateStorage implements IAggregateStorage {
             if (aggregateRoot != null) {
                 return CompletableFuture.completedFuture(aggregateRoot);
             }
-            String aggregateRootTypeName = typeNameProvider.getTypeName(aggregateRootType);
-            CompletableFuture<AsyncTaskResult<List<DomainEventStream>>> eventStreamsFuture = eventStore.queryAggregateEventsAsync(aggregateRootId, aggregateRootTypeName, MINVERSION, MAXVERSION);
-            return eventStreamsFuture.thenApply(eventStreams -> {
-                List<DomainEventStream> domainEventStreams = eventStreams.getData();
-                T reAggregateRoot = rebuildAggregateRoot(aggregateRootType, domainEventStreams);
-                return reAggregateRoot;
-            });
+            return replayAggregateRoot(aggregateRootType, aggregateRootId, null);
         });
     }
 
@@ -68,23 +84,59 @@ public class EventSourcingAggregateStorage implements IAggregateStorage {
                         aggregateRootType,
                         aggregateRootId));
             }
-            String aggregateRootTypeName = typeNameProvider.getTypeName(aggregateRootType);
-            CompletableFuture<AsyncTaskResult<List<DomainEventStream>>> eventStreamsFuture = eventStore.queryAggregateEventsAsync(aggregateRootId, aggregateRootTypeName, aggregateRoot.version() + 1, MAXVERSION);
-            return eventStreamsFuture.thenApply(eventStreams -> {
-                List<DomainEventStream> eventStreamsAfterSnapshot = eventStreams.getData();
-                aggregateRoot.replayEvents(eventStreamsAfterSnapshot);
-                return aggregateRoot;
-            });
+            return replayAggregateRoot(aggregateRootType, aggregateRootId, aggregateRoot);
         });
         return ret;
     }
 
-    private <T extends IAggregateRoot> T rebuildAggregateRoot(Class<T> aggregateRootType, List<DomainEventStream> eventStreams) {
-        if (eventStreams == null || eventStreams.isEmpty()) {
-            return null;
+    /**
+     * 边读取边重放事件流，不持有完整的事件历史，重放过的命令id记录到命令id过滤器；
+     * snapshotAggregateRoot为空时从第一个版本开始重建，没有任何事件流时返回null；读取失败时丢弃重放了一部分的聚合根
+     */
+    private <T extends IAggregateRoot> CompletableFuture<T> replayAggregateRoot(Class<T> aggregateRootType, String aggregateRootId, T snapshotAggregateRoot) {
+        String aggregateRootTypeName = typeNameProvider.getTypeName(aggregateRootType);
+        int minVersion = snapshotAggregateRoot == null ? MINVERSION : snapshotAggregateRoot.version() + 1;
+        ReplayContext<T> context = new ReplayContext<>(snapshotAggregateRoot);
+        long startTime = System.currentTimeMillis();
+        long queryStartTime = System.nanoTime();
+        CompletableFuture<AsyncTaskResult<Integer>> replayFuture = eventStore.replayAggregateEventsAsync(aggregateRootId, aggregateRootTypeName, minVersion, MAXVERSION, eventStream -> {
+            if (context.aggregateRoot == null) {
+                context.aggregateRoot = aggregateRootFactory.createAggregateRoot(aggregateRootType);
+            }
+            context.aggregateRoot.replayEvents(eventStream);
+            commandIdFilter.add(aggregateRootId, eventStream.commandId(), eventStream.version());
+        });
+        return replayFuture.thenApply(result -> {
+            getQueryTimer().record(System.nanoTime() - queryStartTime, TimeUnit.NANOSECONDS);
+            if (result.getStatus() != AsyncTaskStatus.Success) {
+                logger.warn("Replay aggregate events failed, aggregateRootId: {}, aggregateRootType: {}, errorMessage: {}", aggregateRootId, aggregateRootTypeName, result.getErrorMessage());
+                return null;
+            }
+            Integer replayedCount = result.getData();
+            if (context.aggregateRoot != null && replayedCount != null && replayedCount > 0) {
+                snapshotter.onAggregateRebuilt(context.aggregateRoot, replayedCount, System.currentTimeMillis() - startTime);
+            }
+            return context.aggregateRoot;
+        });
+    }
+
+    /**
+     * 依赖注入完成后才能创建，重复创建时注册中心返回同一个timer
+     */
+    private ITimer getQueryTimer() {
+        ITimer timer = queryTimer;
+        if (timer == null) {
+            timer = metrics.timer(MetricNames.EVENT_STORE_QUERY);
+            queryTimer = timer;
+        }
+        return timer;
+    }
+
+    private static class ReplayContext<T extends IAggregateRoot> {
+        private T aggregateRoot;
+
+        private ReplayContext(T aggregateRoot) {
+            this.aggregateRoot = aggregateRoot;
         }
-        T aggregateRoot = aggregateRootFactory.createAggregateRoot(aggregateRootType);
-        aggregateRoot.replayEvents(eventStreams);
-        return aggregateRoot;
     }
 }
@@ -0,0 +1,54 @@
+package com.enodeframework.eventing;
+
+/**
+ * 事件包格式：第一个字符为格式版本，之后每个事件为 类型名 + 字段分隔符 + 事件JSON + 记录分隔符；
+ * JSON中的控制字符都会被转义，所以分隔符不会与事件内容冲突，事件内容只编码一次，不需要二次转义。
+ * 原有的JSON格式以'{'开头，据此区分两种格式，旧数据仍可正常解析。
+ */
+public final class EventEnvelope {
+
+    public static final char FORMAT_VERSION_1 = '\u0001';
+
+    public static final char FIELD_SEPARATOR = '\u001F';
+
+    public static final char RECORD_SEPARATOR = '\u001E';
+
+    private EventEnvelope() {
+    }
+
+    /**
+     * 判断数据是否为事件包格式，不支持的格式版本会抛出异常
+     */
+    public static boolean isEnvelope(String data) {
+        if (data == null || data.isEmpty() || data.charAt(0) >= ' ') {
+            return false;
+        }
+        if (data.charAt(0) != FORMAT_VERSION_1) {
+            throw new UnsupportedOperationException(String.format("Unsupported event envelope format version: %d", (int) data.charAt(0)));
+        }
+        return true;
+    }
+
+    /**
+     * 把消息头（JSON）和事件包组合成一个消息体
+     */
+    public static String wrap(String header, String events) {
+        return new StringBuilder(header.length() + events.length() + 2)
+                .append(FORMAT_VERSION_1)
+                .append(header)
+                .append(RECORD_SEPARATOR)
+                .append(events)
+                .toString();
+    }
+
+    /**
+     * 拆分wrap生成的消息体，返回[消息头, 事件包]
+     */
+    public static String[] unwrap(String data) {
+        int index = data.indexOf(RECORD_SEPARATOR);
+        if (index < 0) {
+            throw new IllegalArgumentException("Invalid event envelope, record separator not found.");
+        }
+        return new String[]{data.substring(1, index), data.substring(index + 1)};
+    }
+}
@@ -0,0 +1,18 @@
+package com.enodeframework.eventing;
+
+/**
+ * 命令id过滤器，放在按命令id查询事件库之前，确定命令没有产生过事件流时直接跳过查询；
+ * 只允许误判为存在，不允许误判为不存在
+ */
+public interface ICommandIdFilter {
+
+    /**
+     * @return false表示该命令一定没有持久化过事件流，true表示可能存在，需要查询事件库确认
+     */
+    boolean mightExist(String aggregateRootId, String commandId);
+
+    /**
+     * 记录一个已经持久化的事件流，事件流追加成功或从事件库重放聚合根时调用
+     */
+    void add(String aggregateRootId, String commandId, int version);
+}
@@ -7,4 +7,19 @@ public interface IEventSerializer {
     Map<String, String> serialize(List<IDomainEvent> evnts);
 
     <TEvent extends IDomainEvent> List<TEvent> deserialize(Map<String, String> data, Class<TEvent> domainEventType);
+
+    /**
+     * 序列化为字符串，用于事件存储和消息队列；开启事件包格式时为EventEnvelope格式，否则为原有的JSON格式
+     */
+    String serializeToString(List<IDomainEvent> evnts);
+
+    /**
+     * 反序列化字符串，同时兼容EventEnvelope格式和原有的JSON格式
+     */
+    <TEvent extends IDomainEvent> List<TEvent> deserializeFromString(String data, Class<TEvent> domainEventType);
+
+    /**
+     * 是否使用EventEnvelope格式
+     */
+    boolean isEnvelopeFormat();
 }
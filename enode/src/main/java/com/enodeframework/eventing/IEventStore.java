@@ -1,20 +1,87 @@
 package com.enodeframework.eventing;
 
 import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.common.io.AsyncTaskStatus;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public interface IEventStore {
     boolean isSupportBatchAppendEvent();
 
     CompletableFuture<AsyncTaskResult<EventAppendResult>> batchAppendAsync(List<DomainEventStream> eventStreams);
 
+    /**
+     * 一次性追加多个聚合根的事件流（group commit），返回每个聚合根各自的追加结果；
+     * 结果中不包含的聚合根表示追加状态未知，调用方需要单独重新追加。
+     * 默认实现按聚合根逐个调用batchAppendAsync。
+     */
+    default CompletableFuture<AsyncTaskResult<Map<String, EventAppendResult>>> groupAppendAsync(List<DomainEventStream> eventStreams) {
+        Map<String, List<DomainEventStream>> streamsByAggregate = eventStreams.stream()
+                .collect(Collectors.groupingBy(DomainEventStream::aggregateRootId, LinkedHashMap::new, Collectors.toList()));
+        Map<String, CompletableFuture<AsyncTaskResult<EventAppendResult>>> futures = new LinkedHashMap<>();
+        streamsByAggregate.forEach((aggregateRootId, streams) -> futures.put(aggregateRootId, batchAppendAsync(streams)));
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).handle((r, e) -> {
+            Map<String, EventAppendResult> appendResults = new HashMap<>();
+            futures.forEach((aggregateRootId, future) -> {
+                if (future.isCompletedExceptionally()) {
+                    return;
+                }
+                AsyncTaskResult<EventAppendResult> result = future.join();
+                if (result.getStatus() == AsyncTaskStatus.Success && result.getData() != null) {
+                    appendResults.put(aggregateRootId, result.getData());
+                }
+            });
+            return new AsyncTaskResult<>(AsyncTaskStatus.Success, appendResults);
+        });
+    }
+
     CompletableFuture<AsyncTaskResult<EventAppendResult>> appendAsync(DomainEventStream eventStream);
 
     CompletableFuture<AsyncTaskResult<DomainEventStream>> findAsync(String aggregateRootId, int version);
 
     CompletableFuture<AsyncTaskResult<DomainEventStream>> findAsync(String aggregateRootId, String commandId);
 
+    /**
+     * 依次回调事件库中每个事件流的聚合根id和命令id，用于重建命令id过滤器；
+     * 回调在同一个线程上依次执行，默认不支持，返回Failed。
+     *
+     * @return 回调的事件流数量
+     */
+    default CompletableFuture<AsyncTaskResult<Long>> scanCommandIdsAsync(BiConsumer<String, String> commandIdConsumer) {
+        return CompletableFuture.completedFuture(new AsyncTaskResult<Long>(AsyncTaskStatus.Failed, "Scan command ids is not supported by " + getClass().getName()));
+    }
+
     CompletableFuture<AsyncTaskResult<List<DomainEventStream>>> queryAggregateEventsAsync(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion);
+
+    /**
+     * 按版本顺序逐个回调聚合根的事件流，用于重建聚合根时边读取边重放，不必持有完整的事件历史；
+     * 回调在同一个线程上依次执行，回调抛出异常时停止读取并返回Failed。
+     * 默认实现先通过queryAggregateEventsAsync查出全部事件流再依次回调。
+     *
+     * @return 回调的事件流数量
+     */
+    default CompletableFuture<AsyncTaskResult<Integer>> replayAggregateEventsAsync(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion, Consumer<DomainEventStream> eventStreamConsumer) {
+        return queryAggregateEventsAsync(aggregateRootId, aggregateRootTypeName, minVersion, maxVersion).thenApply(result -> {
+            if (result.getStatus() != AsyncTaskStatus.Success) {
+                return new AsyncTaskResult<Integer>(result.getStatus(), result.getErrorMessage());
+            }
+            List<DomainEventStream> eventStreams = result.getData();
+            if (eventStreams == null) {
+                return new AsyncTaskResult<Integer>(AsyncTaskStatus.Success, 0);
+            }
+            try {
+                eventStreams.forEach(eventStreamConsumer);
+            } catch (Exception ex) {
+                return new AsyncTaskResult<Integer>(AsyncTaskStatus.Failed, ex.getMessage());
+            }
+            return new AsyncTaskResult<Integer>(AsyncTaskStatus.Success, eventStreams.size());
+        });
+    }
 }
@@ -0,0 +1,237 @@
+package com.enodeframework.eventing.impl;
+
+import com.enodeframework.common.io.AsyncTaskStatus;
+import com.enodeframework.common.utilities.Ensure;
+import com.enodeframework.eventing.ICommandIdFilter;
+import com.enodeframework.eventing.IEventStore;
+import com.enodeframework.metrics.ICounter;
+import com.enodeframework.metrics.IMetrics;
+import com.enodeframework.metrics.MetricNames;
+import com.enodeframework.metrics.impl.NoopMetrics;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 由两部分组成：每个聚合根最近的命令id索引，以及启动时从事件库重建的全局布隆过滤器；
+ * 聚合根从第一个版本起的事件流都被记录时，索引可以精确判断，否则由布隆过滤器判断，布隆过滤器未重建完成时一律认为可能存在。
+ * 只适用于事件库只由当前进程写入的部署（单个命令消费者或嵌入式事件库），其他进程追加的事件流不会被记录
+ */
+public class DefaultCommandIdFilter implements ICommandIdFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DefaultCommandIdFilter.class);
+
+    private static final Funnel<CommandKey> COMMAND_KEY_FUNNEL = (key, into) -> into
+            .putString(key.aggregateRootId, StandardCharsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(key.commandId, StandardCharsets.UTF_8);
+
+    @Autowired
+    private IEventStore eventStore;
+
+    @Autowired(required = false)
+    private IMetrics metrics = NoopMetrics.INSTANCE;
+
+    /**
+     * 布隆过滤器的初始容量，记录的命令id超过容量后按两倍容量重建
+     */
+    private long expectedInsertions = 1000000;
+
+    private double falsePositiveProbability = 0.01;
+
+    private int recentAggregateCount = 10000;
+
+    private int recentCommandCount = 64;
+
+    private Cache<String, RecentCommands> recentCommandsCache = buildRecentCommandsCache(recentAggregateCount);
+
+    private volatile BloomFilter<CommandKey> filter;
+
+    private volatile BloomFilter<CommandKey> rebuildingFilter;
+
+    private volatile long capacity;
+
+    private volatile boolean rebuilding;
+
+    private ICounter skipCounter = NoopMetrics.INSTANCE.counter(MetricNames.COMMAND_FILTER);
+
+    /**
+     * 最近命令id索引在创建时就可用，start只用于重建布隆过滤器
+     */
+    public void start() {
+        skipCounter = metrics.counter(MetricNames.COMMAND_FILTER, MetricNames.TAG_ACTION, "skip");
+        rebuild(expectedInsertions);
+    }
+
+    public void setExpectedInsertions(long expectedInsertions) {
+        Ensure.positive(expectedInsertions, "expectedInsertions");
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    public void setFalsePositiveProbability(double falsePositiveProbability) {
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException(String.format("falsePositiveProbability should be between 0 and 1, but was %s", falsePositiveProbability));
+        }
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    public void setRecentAggregateCount(int recentAggregateCount) {
+        Ensure.positive(recentAggregateCount, "recentAggregateCount");
+        this.recentAggregateCount = recentAggregateCount;
+        this.recentCommandsCache = buildRecentCommandsCache(recentAggregateCount);
+    }
+
+    public void setRecentCommandCount(int recentCommandCount) {
+        Ensure.positive(recentCommandCount, "recentCommandCount");
+        this.recentCommandCount = recentCommandCount;
+    }
+
+    @Override
+    public boolean mightExist(String aggregateRootId, String commandId) {
+        RecentCommands recentCommands = recentCommandsCache.getIfPresent(aggregateRootId);
+        if (recentCommands != null) {
+            int state = recentCommands.contains(commandId);
+            if (state != RecentCommands.UNKNOWN) {
+                return skipIfAbsent(state == RecentCommands.PRESENT);
+            }
+        }
+        BloomFilter<CommandKey> currentFilter = filter;
+        if (currentFilter == null) {
+            return true;
+        }
+        return skipIfAbsent(currentFilter.mightContain(new CommandKey(aggregateRootId, commandId)));
+    }
+
+    @Override
+    public void add(String aggregateRootId, String commandId, int version) {
+        if (commandId == null) {
+            return;
+        }
+        recentCommandsCache.asMap().computeIfAbsent(aggregateRootId, x -> new RecentCommands(recentCommandCount)).add(commandId, version);
+        CommandKey key = new CommandKey(aggregateRootId, commandId);
+        //先写入重建中的过滤器，再写入当前过滤器，重建完成切换过滤器时不会丢失记录
+        BloomFilter<CommandKey> newFilter = rebuildingFilter;
+        if (newFilter != null) {
+            newFilter.put(key);
+        }
+        BloomFilter<CommandKey> currentFilter = filter;
+        if (currentFilter != null) {
+            currentFilter.put(key);
+            if (!rebuilding && currentFilter.approximateElementCount() > capacity) {
+                rebuild(capacity * 2);
+            }
+        }
+    }
+
+    /**
+     * 从事件库重新扫描所有命令id，重建期间继续使用原来的过滤器
+     */
+    public void rebuild() {
+        rebuild(Math.max(capacity, expectedInsertions));
+    }
+
+    private synchronized void rebuild(long newCapacity) {
+        if (rebuilding) {
+            return;
+        }
+        rebuilding = true;
+        BloomFilter<CommandKey> newFilter = BloomFilter.create(COMMAND_KEY_FUNNEL, newCapacity, falsePositiveProbability);
+        rebuildingFilter = newFilter;
+        long startTime = System.currentTimeMillis();
+        eventStore.scanCommandIdsAsync((aggregateRootId, commandId) -> newFilter.put(new CommandKey(aggregateRootId, commandId))).whenComplete((result, ex) -> {
+            synchronized (this) {
+                if (ex == null && result.getStatus() == AsyncTaskStatus.Success) {
+                    capacity = newCapacity;
+                    filter = newFilter;
+                    logger.info("Rebuild command id filter success, commandCount: {}, capacity: {}, timeSpent: {}ms", result.getData(), newCapacity, System.currentTimeMillis() - startTime);
+                } else {
+                    String errorMessage = ex != null ? ex.getMessage() : result.getErrorMessage();
+                    logger.error("Rebuild command id filter failed, lookups fall back to the event store, errorMessage: {}", errorMessage);
+                }
+                rebuildingFilter = null;
+                rebuilding = false;
+                //事件库中的命令id已经超过容量时，按实际数量重新扩容
+                if (filter == newFilter && newFilter.approximateElementCount() > newCapacity) {
+                    rebuild(newFilter.approximateElementCount() * 2);
+                }
+            }
+        });
+    }
+
+    private static Cache<String, RecentCommands> buildRecentCommandsCache(int maximumSize) {
+        return CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    private boolean skipIfAbsent(boolean mightExist) {
+        if (!mightExist) {
+            skipCounter.increment();
+        }
+        return mightExist;
+    }
+
+    static class CommandKey {
+        private final String aggregateRootId;
+        private final String commandId;
+
+        CommandKey(String aggregateRootId, String commandId) {
+            this.aggregateRootId = aggregateRootId;
+            this.commandId = commandId;
+        }
+    }
+
+    /**
+     * 一个聚合根最近的命令id；从版本1开始连续记录且未超出数量上限时包含该聚合根的全部命令
+     */
+    static class RecentCommands {
+        static final int ABSENT = 0;
+        static final int PRESENT = 1;
+        static final int UNKNOWN = 2;
+
+        private final int maxCount;
+        private final Deque<String> commandIds = new ArrayDeque<>();
+        private final Set<String> commandIdSet = new HashSet<>();
+        private int lastVersion;
+        private boolean complete = true;
+
+        RecentCommands(int maxCount) {
+            this.maxCount = maxCount;
+        }
+
+        synchronized int contains(String commandId) {
+            if (commandIdSet.contains(commandId)) {
+                return PRESENT;
+            }
+            return complete ? ABSENT : UNKNOWN;
+        }
+
+        /**
+         * 重复或更早的版本只补充命令id，跳过了版本说明中间有事件流没有被记录
+         */
+        synchronized void add(String commandId, int version) {
+            if (version > lastVersion + 1) {
+                complete = false;
+            }
+            if (version > lastVersion) {
+                lastVersion = version;
+            }
+            if (!commandIdSet.add(commandId)) {
+                return;
+            }
+            commandIds.addLast(commandId);
+            if (commandIds.size() > maxCount) {
+                commandIdSet.remove(commandIds.pollFirst());
+                complete = false;
+            }
+        }
+    }
+}
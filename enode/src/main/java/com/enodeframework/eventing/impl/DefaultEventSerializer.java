@@ -1,6 +1,7 @@
 package com.enodeframework.eventing.impl;
 
 import com.enodeframework.common.serializing.IJsonSerializer;
+import com.enodeframework.eventing.EventEnvelope;
 import com.enodeframework.eventing.IDomainEvent;
 import com.enodeframework.eventing.IEventSerializer;
 import com.enodeframework.infrastructure.IMessage;
@@ -21,6 +22,11 @@ public class DefaultEventSerializer implements IEventSerializer {
     @Autowired
     private IJsonSerializer jsonSerializer;
 
+    /**
+     * 默认关闭，所有节点都升级到能解析EventEnvelope格式后再开启
+     */
+    private boolean envelopeFormat = false;
+
     @Override
     public Map<String, String> serialize(List<IDomainEvent> evnts) {
         Map<String, String> dict = new HashMap<String, String>();
@@ -45,4 +51,51 @@ public class DefaultEventSerializer implements IEventSerializer {
         evnts.sort(Comparator.comparingInt(IMessage::sequence));
         return evnts;
     }
+
+    @Override
+    public String serializeToString(List<IDomainEvent> evnts) {
+        if (!envelopeFormat) {
+            return jsonSerializer.serialize(serialize(evnts));
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(EventEnvelope.FORMAT_VERSION_1);
+        evnts.forEach(evnt -> builder
+                .append(typeNameProvider.getTypeName(evnt.getClass()))
+                .append(EventEnvelope.FIELD_SEPARATOR)
+                .append(jsonSerializer.serialize(evnt))
+                .append(EventEnvelope.RECORD_SEPARATOR));
+        return builder.toString();
+    }
+
+    @Override
+    public <TEvent extends IDomainEvent> List<TEvent> deserializeFromString(String data, Class<TEvent> domainEventType) {
+        if (!EventEnvelope.isEnvelope(data)) {
+            return deserialize(jsonSerializer.deserialize(data, Map.class), domainEventType);
+        }
+        List<TEvent> evnts = new ArrayList<>();
+        int start = 1;
+        int length = data.length();
+        while (start < length) {
+            int fieldEnd = data.indexOf(EventEnvelope.FIELD_SEPARATOR, start);
+            int recordEnd = data.indexOf(EventEnvelope.RECORD_SEPARATOR, fieldEnd + 1);
+            if (fieldEnd < 0 || recordEnd < 0) {
+                throw new IllegalArgumentException(String.format("Invalid event envelope at index %d.", start));
+            }
+            Class eventType = typeNameProvider.getType(data.substring(start, fieldEnd));
+            TEvent evnt = (TEvent) jsonSerializer.deserialize(data.substring(fieldEnd + 1, recordEnd), eventType);
+            evnts.add(evnt);
+            start = recordEnd + 1;
+        }
+        evnts.sort(Comparator.comparingInt(IMessage::sequence));
+        return evnts;
+    }
+
+    @Override
+    public boolean isEnvelopeFormat() {
+        return envelopeFormat;
+    }
+
+    public void setEnvelopeFormat(boolean envelopeFormat) {
+        this.envelopeFormat = envelopeFormat;
+    }
 }
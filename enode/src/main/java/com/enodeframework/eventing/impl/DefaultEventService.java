@@ -7,22 +7,28 @@ import com.enodeframework.commanding.ProcessingCommand;
 import com.enodeframework.commanding.ProcessingCommandMailbox;
 import com.enodeframework.common.io.IOHelper;
 import com.enodeframework.common.io.Task;
-import com.enodeframework.common.scheduling.IScheduleService;
+import com.enodeframework.common.scheduling.IMailboxScheduler;
+import com.enodeframework.common.scheduling.TimingWheel;
 import com.enodeframework.domain.IMemoryCache;
 import com.enodeframework.eventing.DomainEventStream;
 import com.enodeframework.eventing.DomainEventStreamMessage;
 import com.enodeframework.eventing.EventAppendResult;
 import com.enodeframework.eventing.EventCommittingContext;
+import com.enodeframework.eventing.ICommandIdFilter;
 import com.enodeframework.eventing.IEventService;
 import com.enodeframework.eventing.IEventStore;
 import com.enodeframework.infrastructure.IMessagePublisher;
+import com.enodeframework.metrics.IMetrics;
+import com.enodeframework.metrics.ITimer;
+import com.enodeframework.metrics.MetricNames;
+import com.enodeframework.metrics.impl.NoopMetrics;
+import com.enodeframework.snapshoting.ISnapshotter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -38,8 +44,6 @@ public class DefaultEventService implements IEventService {
 
     private final int timeoutSeconds;
 
-    private final String taskName;
-
     private final int commandMailBoxPersistenceMaxBatchSize = 1000;
 
     private final int scanExpiredAggregateIntervalMilliseconds = 5000;
@@ -48,8 +52,28 @@ public class DefaultEventService implements IEventService {
 
     private final int aggregateRootMaxInactiveSeconds = 3600 * 24 * 3;
 
+    /**
+     * 是否开启跨聚合根的事件合并提交，需要eventStore支持批量追加
+     */
+    private boolean enableGroupCommit = false;
+
+    private int groupCommitIntervalMilliseconds = 2;
+
+    private int groupCommitMaxBatchSize = 1000;
+
+    private EventGroupCommitter groupCommitter;
+
+    private ITimer appendTimer = NoopMetrics.INSTANCE.timer(MetricNames.EVENT_STORE_APPEND);
+
+    private ITimer batchAppendTimer = NoopMetrics.INSTANCE.timer(MetricNames.EVENT_STORE_APPEND);
+
+    private ITimer groupAppendTimer = NoopMetrics.INSTANCE.timer(MetricNames.EVENT_STORE_APPEND);
+
+    @Autowired
+    private TimingWheel timingWheel;
+
     @Autowired
-    private IScheduleService scheduleService;
+    private IMailboxScheduler mailboxScheduler;
 
     @Autowired
     private IMemoryCache memoryCache;
@@ -63,28 +87,40 @@ public class DefaultEventService implements IEventService {
     @Autowired
     private IOHelper ioHelper;
 
+    @Autowired
+    private ISnapshotter snapshotter;
+
+    @Autowired(required = false)
+    private IMetrics metrics = NoopMetrics.INSTANCE;
+
+    @Autowired(required = false)
+    private ICommandIdFilter commandIdFilter = NoopCommandIdFilter.INSTANCE;
+
     public DefaultEventService() {
         this.mailboxDict = new ConcurrentHashMap<>();
         this.batchSize = eventMailBoxPersistenceMaxBatchSize;
         this.timeoutSeconds = aggregateRootMaxInactiveSeconds;
-        this.taskName = "CleanInactiveAggregates" + System.nanoTime() + new Random().nextInt(10000);
     }
 
     @Override
     public void commitDomainEventAsync(EventCommittingContext context) {
-        EventMailBox eventMailbox = mailboxDict.computeIfAbsent(context.getAggregateRoot().uniqueId(), x ->
-                new EventMailBox(x, batchSize, committingContexts ->
-                {
-                    if (committingContexts == null || committingContexts.size() == 0) {
-                        return;
-                    }
-                    if (eventStore.isSupportBatchAppendEvent()) {
-                        batchPersistEventAsync(committingContexts, 0);
-                    } else {
-                        persistEventOneByOne(committingContexts);
-                    }
-                })
-        );
+        EventMailBox eventMailbox = mailboxDict.computeIfAbsent(context.getAggregateRoot().uniqueId(), x -> {
+            EventMailBox newMailbox = new EventMailBox(x, batchSize, mailboxScheduler.getExecutor(x), committingContexts ->
+            {
+                if (committingContexts == null || committingContexts.size() == 0) {
+                    return;
+                }
+                if (groupCommitter != null) {
+                    groupCommitter.commit(committingContexts);
+                } else if (eventStore.isSupportBatchAppendEvent()) {
+                    batchPersistEventAsync(committingContexts, 0);
+                } else {
+                    persistEventOneByOne(committingContexts);
+                }
+            });
+            timingWheel.schedule(timeoutSeconds * 1000L, () -> expireMailbox(x, newMailbox));
+            return newMailbox;
+        });
 
         eventMailbox.enqueueMessage(context);
         refreshAggregateMemoryCache(context);
@@ -103,48 +139,109 @@ public class DefaultEventService implements IEventService {
 
     @Override
     public void start() {
-        scheduleService.startTask(taskName, this::cleanInactiveMailbox, scanExpiredAggregateIntervalMilliseconds, scanExpiredAggregateIntervalMilliseconds);
+        appendTimer = metrics.timer(MetricNames.EVENT_STORE_APPEND, MetricNames.TAG_MODE, "single");
+        batchAppendTimer = metrics.timer(MetricNames.EVENT_STORE_APPEND, MetricNames.TAG_MODE, "batch");
+        groupAppendTimer = metrics.timer(MetricNames.EVENT_STORE_APPEND, MetricNames.TAG_MODE, "group");
+        metrics.gauge(MetricNames.EVENT_MAILBOX_COUNT, mailboxDict, Map::size);
+        metrics.gauge(MetricNames.EVENT_MAILBOX_BACKLOG, this, x -> x.getBacklog());
+        if (enableGroupCommit && eventStore.isSupportBatchAppendEvent()) {
+            groupCommitter = new EventGroupCommitter(groupCommitIntervalMilliseconds, groupCommitMaxBatchSize, groups -> groupPersistEventAsync(groups, 0), this::rejectContextGroups);
+        }
     }
 
+    /**
+     * 需要在MQ消费者停止之后调用，之后提交的事件不再持久化
+     */
     @Override
     public void stop() {
-        scheduleService.stopTask(taskName);
+        if (groupCommitter != null) {
+            groupCommitter.shutdown();
+        }
     }
 
-    private void batchPersistEventAsync(List<EventCommittingContext> committingContexts, int retryTimes) {
-        ioHelper.tryAsyncActionRecursively("BatchPersistEventAsync",
-                () -> eventStore.batchAppendAsync(committingContexts.stream().map(x -> x.getEventStream()).collect(Collectors.toList())),
-                currentRetryTimes -> batchPersistEventAsync(committingContexts, currentRetryTimes),
-                result ->
-                {
-                    EventMailBox eventMailBox = committingContexts.get(0).getEventMailBox();
-                    EventAppendResult appendResult = result.getData();
-                    if (appendResult == EventAppendResult.Success) {
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("Batch persist event success, aggregateRootId: {}, eventStreamCount: {}", eventMailBox.getAggregateRootId(), committingContexts.size());
-                        }
+    public void setEnableGroupCommit(boolean enableGroupCommit) {
+        this.enableGroupCommit = enableGroupCommit;
+    }
 
-                        CompletableFuture.runAsync(() ->
-                                committingContexts.forEach(context -> publishDomainEventAsync(context.getProcessingCommand(), context.getEventStream()))
-                        );
+    public void setGroupCommitIntervalMilliseconds(int groupCommitIntervalMilliseconds) {
+        this.groupCommitIntervalMilliseconds = groupCommitIntervalMilliseconds;
+    }
 
-                        eventMailBox.tryRun(true);
-                    } else if (appendResult == EventAppendResult.DuplicateEvent) {
-                        EventCommittingContext context = committingContexts.get(0);
-                        if (context.getEventStream().version() == 1) {
-                            handleFirstEventDuplicationAsync(context, 0);
+    public void setGroupCommitMaxBatchSize(int groupCommitMaxBatchSize) {
+        this.groupCommitMaxBatchSize = groupCommitMaxBatchSize;
+    }
+
+    /**
+     * 所有事件邮箱中等待持久化的事件流数量，只在采集指标时调用
+     */
+    public long getBacklog() {
+        long backlog = 0;
+        for (EventMailBox mailbox : mailboxDict.values()) {
+            backlog += mailbox.getBacklog();
+        }
+        return backlog;
+    }
+
+    private void groupPersistEventAsync(List<List<EventCommittingContext>> contextGroups, int retryTimes) {
+        ioHelper.tryAsyncActionRecursively("GroupPersistEventAsync",
+                () -> eventStore.groupAppendAsync(contextGroups.stream().flatMap(x -> x.stream()).map(x -> x.getEventStream()).collect(Collectors.toList())),
+                currentRetryTimes -> groupPersistEventAsync(contextGroups, currentRetryTimes),
+                result ->
+                {
+                    Map<String, EventAppendResult> appendResults = result.getData();
+                    contextGroups.forEach(committingContexts -> {
+                        String aggregateRootId = committingContexts.get(0).getEventStream().aggregateRootId();
+                        EventAppendResult appendResult = appendResults == null ? null : appendResults.get(aggregateRootId);
+                        if (appendResult == null) {
+                            //追加状态未知，单独对该聚合根重新进行批量持久化
+                            batchPersistEventAsync(committingContexts, 0);
                         } else {
-                            logger.warn("Batch persist event has concurrent version conflict, first eventStream: {}, batchSize: {}", context.getEventStream(), committingContexts.size());
-                            resetCommandMailBoxConsumingSequence(context, context.getProcessingCommand().getSequence());
+                            handleBatchAppendResult(committingContexts, appendResult);
                         }
-                    } else if (appendResult == EventAppendResult.DuplicateCommand) {
-                        persistEventOneByOne(committingContexts);
-                    }
+                    });
                 },
+                () -> String.format("[contextGroupCount:%d]", contextGroups.size()),
+                errorMessage ->
+                        logger.error(String.format("Group persist event has unknown exception, the code should not be run to here, errorMessage: %s", errorMessage)),
+                retryTimes, true, groupAppendTimer);
+    }
+
+    private void batchPersistEventAsync(List<EventCommittingContext> committingContexts, int retryTimes) {
+        ioHelper.tryAsyncActionRecursively("BatchPersistEventAsync",
+                () -> eventStore.batchAppendAsync(committingContexts.stream().map(x -> x.getEventStream()).collect(Collectors.toList())),
+                currentRetryTimes -> batchPersistEventAsync(committingContexts, currentRetryTimes),
+                result -> handleBatchAppendResult(committingContexts, result.getData()),
                 () -> String.format("[contextListCount:%d]", committingContexts.size()),
                 errorMessage ->
                         logger.error(String.format("Batch persist event has unknown exception, the code should not be run to here, errorMessage: {}", errorMessage)),
-                retryTimes, true);
+                retryTimes, true, batchAppendTimer);
+    }
+
+    private void handleBatchAppendResult(List<EventCommittingContext> committingContexts, EventAppendResult appendResult) {
+        EventMailBox eventMailBox = committingContexts.get(0).getEventMailBox();
+        if (appendResult == EventAppendResult.Success) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Batch persist event success, aggregateRootId: {}, eventStreamCount: {}", eventMailBox.getAggregateRootId(), committingContexts.size());
+            }
+
+            committingContexts.forEach(context -> addToCommandIdFilter(context.getEventStream()));
+            CompletableFuture.runAsync(() ->
+                    committingContexts.forEach(context -> publishDomainEventAsync(context.getProcessingCommand(), context.getEventStream()))
+            );
+            committingContexts.forEach(context -> snapshotter.onEventStreamPersisted(context.getEventStream()));
+
+            eventMailBox.tryRun(true);
+        } else if (appendResult == EventAppendResult.DuplicateEvent) {
+            EventCommittingContext context = committingContexts.get(0);
+            if (context.getEventStream().version() == 1) {
+                handleFirstEventDuplicationAsync(context, 0);
+            } else {
+                logger.warn("Batch persist event has concurrent version conflict, first eventStream: {}, batchSize: {}", context.getEventStream(), committingContexts.size());
+                resetCommandMailBoxConsumingSequence(context, context.getProcessingCommand().getSequence());
+            }
+        } else if (appendResult == EventAppendResult.DuplicateCommand) {
+            persistEventOneByOne(committingContexts);
+        }
     }
 
     private void persistEventOneByOne(List<EventCommittingContext> contextList) {
@@ -162,7 +259,9 @@ public class DefaultEventService implements IEventService {
                         if (logger.isDebugEnabled()) {
                             logger.debug("Persist events success, {}", context.getEventStream());
                         }
+                        addToCommandIdFilter(context.getEventStream());
                         publishDomainEventAsync(context.getProcessingCommand(), context.getEventStream());
+                        snapshotter.onEventStreamPersisted(context.getEventStream());
 
                         if (context.getNext() != null) {
                             persistEvent(context.getNext(), 0);
@@ -187,7 +286,7 @@ public class DefaultEventService implements IEventService {
                 },
                 () -> String.format("[eventStream:%s]", context.getEventStream()),
                 errorMessage -> logger.error(String.format("Persist event has unknown exception, the code should not be run to here, errorMessage: %s", errorMessage)),
-                retryTimes, true);
+                retryTimes, true, appendTimer);
     }
 
     private CompletableFuture<Void> resetCommandMailBoxConsumingSequence(EventCommittingContext context, long consumingSequence) {
@@ -226,6 +325,7 @@ public class DefaultEventService implements IEventService {
                 {
                     DomainEventStream existingEventStream = result.getData();
                     if (existingEventStream != null) {
+                        addToCommandIdFilter(existingEventStream);
                         //这里，我们需要再重新做一遍发布事件这个操作；
                         //之所以要这样做是因为虽然该command产生的事件已经持久化成功，但并不表示事件已经发布出去了；
                         //因为有可能事件持久化成功了，但那时正好机器断电了，则发布事件都没有做；
@@ -262,6 +362,7 @@ public class DefaultEventService implements IEventService {
                 {
                     DomainEventStream firstEventStream = result.getData();
                     if (firstEventStream != null) {
+                        addToCommandIdFilter(firstEventStream);
                         //判断是否是同一个command，如果是，则再重新做一遍发布事件；
                         //之所以要这样做，是因为虽然该command产生的事件已经持久化成功，但并不表示事件也已经发布出去了；
                         //有可能事件持久化成功了，但那时正好机器断电了，则发布事件都没有做；
@@ -299,6 +400,10 @@ public class DefaultEventService implements IEventService {
                 retryTimes, true);
     }
 
+    private void addToCommandIdFilter(DomainEventStream eventStream) {
+        commandIdFilter.add(eventStream.aggregateRootId(), eventStream.commandId(), eventStream.version());
+    }
+
     private void refreshAggregateMemoryCache(EventCommittingContext context) {
         try {
             context.getAggregateRoot().acceptChanges(context.getEventStream().version());
@@ -344,19 +449,46 @@ public class DefaultEventService implements IEventService {
         }
     }
 
+    /**
+     * 事件服务已经停止，事件没有持久化：不完成对应的命令，MQ消息不会被确认，重启后重新投递；
+     * 聚合根已经在内存中应用了这些事件，需要从事件库重新加载，命令邮箱回退到第一个未持久化的命令并保持暂停，不再基于未持久化的状态处理后续命令
+     */
+    private void rejectContextGroups(List<List<EventCommittingContext>> contextGroups) {
+        contextGroups.forEach(committingContexts -> CompletableFuture.runAsync(() -> {
+            EventCommittingContext context = committingContexts.get(0);
+            ProcessingCommand processingCommand = context.getProcessingCommand();
+            ProcessingCommandMailbox commandMailBox = processingCommand.getMailbox();
+            EventMailBox eventMailBox = context.getEventMailBox();
+            commandMailBox.pause();
+            commandMailBox.resetConsumingSequence(processingCommand.getSequence());
+            eventMailBox.clear();
+            refreshAggregateMemoryCacheToLatestVersion(context.getEventStream().aggregateRootTypeName(), context.getEventStream().aggregateRootId());
+            logger.warn("Event service is stopped, events are not persisted and the commands are left for redelivery, aggregateRootId: {}, firstCommandId: {}, eventStreamCount: {}",
+                    eventMailBox.getAggregateRootId(), processingCommand.getMessage().id(), committingContexts.size());
+        }));
+    }
+
     private void completeCommand(ProcessingCommand processingCommand, CommandResult commandResult) {
         processingCommand.getMailbox().completeMessage(processingCommand, commandResult);
     }
 
-    private void cleanInactiveMailbox() {
-        List<Map.Entry<String, EventMailBox>> inactiveList = mailboxDict.entrySet().stream().filter(entry ->
-                entry.getValue().isInactive(timeoutSeconds) && entry.getValue().isRunning()
-        ).collect(Collectors.toList());
-
-        inactiveList.forEach(entry -> {
-            if (mailboxDict.remove(entry.getKey()) != null) {
-                logger.info("Removed inactive event mailbox, aggregateRootId: {}", entry.getKey());
-            }
-        });
+    /**
+     * 时间轮到期时检查邮箱的真实活跃时间，未过期则返回剩余时间重新登记
+     */
+    private long expireMailbox(String aggregateRootId, EventMailBox mailbox) {
+        if (mailboxDict.get(aggregateRootId) != mailbox) {
+            return 0;
+        }
+        long remainingMillis = timeoutSeconds * 1000L - (System.currentTimeMillis() - mailbox.getLastActiveTime().getTime());
+        if (remainingMillis > 0) {
+            return remainingMillis;
+        }
+        if (mailbox.isRunning()) {
+            return scanExpiredAggregateIntervalMilliseconds;
+        }
+        if (mailboxDict.remove(aggregateRootId, mailbox)) {
+            logger.info("Removed inactive event mailbox, aggregateRootId: {}", aggregateRootId);
+        }
+        return 0;
     }
 }
@@ -0,0 +1,123 @@
+package com.enodeframework.eventing.impl;
+
+import com.enodeframework.eventing.EventCommittingContext;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 跨聚合根的事件持久化合并提交（group commit）：
+ * 收集多个EventMailBox提交的事件，在一个很短的时间窗口内或达到数量上限时一次性提交给持久化动作。
+ * 每个EventMailBox在持久化完成前不会再次提交，因此同一批次中每个聚合根最多只出现一次。
+ * shutdown之后提交的事件不再持久化，交给rejectAction处理，调用方应先停止MQ消费者再shutdown。
+ */
+public class EventGroupCommitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventGroupCommitter.class);
+
+    private final int intervalMilliseconds;
+    private final int maxBatchSize;
+    private final Consumer<List<List<EventCommittingContext>>> flushAction;
+    private final Consumer<List<List<EventCommittingContext>>> rejectAction;
+    private final ScheduledExecutorService scheduler;
+    private final Object lockObj = new Object();
+    private List<List<EventCommittingContext>> pendingGroups;
+    private int pendingCount;
+    private boolean flushScheduled;
+    private boolean stopped;
+
+    public EventGroupCommitter(int intervalMilliseconds, int maxBatchSize, Consumer<List<List<EventCommittingContext>>> flushAction,
+                               Consumer<List<List<EventCommittingContext>>> rejectAction) {
+        this.intervalMilliseconds = intervalMilliseconds;
+        this.maxBatchSize = maxBatchSize;
+        this.flushAction = flushAction;
+        this.rejectAction = rejectAction;
+        this.pendingGroups = new ArrayList<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("EventGroupCommitter-%d").build());
+    }
+
+    public void commit(List<EventCommittingContext> committingContexts) {
+        List<List<EventCommittingContext>> groups = null;
+        List<List<EventCommittingContext>> rejectedGroups = null;
+        synchronized (lockObj) {
+            if (stopped) {
+                rejectedGroups = Collections.singletonList(committingContexts);
+            } else {
+                pendingGroups.add(committingContexts);
+                pendingCount += committingContexts.size();
+                if (pendingCount >= maxBatchSize) {
+                    groups = drain();
+                } else if (!flushScheduled) {
+                    try {
+                        scheduler.schedule(this::flushPending, intervalMilliseconds, TimeUnit.MILLISECONDS);
+                        flushScheduled = true;
+                    } catch (RejectedExecutionException ex) {
+                        rejectedGroups = drain();
+                    }
+                }
+            }
+        }
+        if (groups != null) {
+            flush(groups);
+        }
+        if (rejectedGroups != null) {
+            reject(rejectedGroups);
+        }
+    }
+
+    /**
+     * 持久化已经收集的事件，之后提交的事件交给rejectAction
+     */
+    public void shutdown() {
+        synchronized (lockObj) {
+            stopped = true;
+        }
+        scheduler.shutdown();
+        flushPending();
+    }
+
+    private void flushPending() {
+        List<List<EventCommittingContext>> groups;
+        synchronized (lockObj) {
+            flushScheduled = false;
+            groups = drain();
+        }
+        flush(groups);
+    }
+
+    private List<List<EventCommittingContext>> drain() {
+        List<List<EventCommittingContext>> groups = pendingGroups;
+        pendingGroups = new ArrayList<>();
+        pendingCount = 0;
+        return groups;
+    }
+
+    private void reject(List<List<EventCommittingContext>> groups) {
+        logger.warn("Group commit events is rejected as the committer is shutdown, groupCount: {}", groups.size());
+        try {
+            rejectAction.accept(groups);
+        } catch (Exception ex) {
+            logger.error(String.format("Reject group commit events has unknown exception, groupCount: %d", groups.size()), ex);
+        }
+    }
+
+    private void flush(List<List<EventCommittingContext>> groups) {
+        if (groups.isEmpty()) {
+            return;
+        }
+        try {
+            flushAction.accept(groups);
+        } catch (Exception ex) {
+            logger.error(String.format("Group commit events has unknown exception, groupCount: %d", groups.size()), ex);
+        }
+    }
+}
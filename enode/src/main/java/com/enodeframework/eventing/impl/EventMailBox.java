@@ -8,9 +8,10 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public class EventMailBox {
@@ -19,12 +20,18 @@ public class EventMailBox {
     private final String aggregateRootId;
     private final Queue<EventCommittingContext> messageQueue;
     private final Consumer<List<EventCommittingContext>> handleMessageAction;
+    private final Executor executor;
+    /**
+     * ConcurrentLinkedQueue.size()需要遍历队列，单独计数
+     */
+    private final AtomicInteger backlog = new AtomicInteger();
     private AtomicBoolean isRunning;
     private int batchSize;
     private Date lastActiveTime;
 
-    public EventMailBox(String aggregateRootId, int batchSize, Consumer<List<EventCommittingContext>> handleMessageAction) {
+    public EventMailBox(String aggregateRootId, int batchSize, Executor executor, Consumer<List<EventCommittingContext>> handleMessageAction) {
         this.aggregateRootId = aggregateRootId;
+        this.executor = executor;
         this.batchSize = batchSize;
         this.handleMessageAction = handleMessageAction;
         this.messageQueue = new ConcurrentLinkedQueue<>();
@@ -38,6 +45,7 @@ public class EventMailBox {
 
     public void enqueueMessage(EventCommittingContext message) {
         messageQueue.add(message);
+        backlog.incrementAndGet();
         lastActiveTime = new Date();
         tryRun(false);
     }
@@ -51,7 +59,7 @@ public class EventMailBox {
             exit();
         }
         if (tryEnter()) {
-            CompletableFuture.runAsync(this::run);
+            executor.execute(this::run);
         }
     }
 
@@ -62,6 +70,7 @@ public class EventMailBox {
             EventCommittingContext context = null;
 
             while ((context = messageQueue.poll()) != null) {
+                backlog.decrementAndGet();
                 context.setEventMailBox(this);
                 if (contextList == null) {
                     contextList = new ArrayList<>();
@@ -98,7 +107,16 @@ public class EventMailBox {
 
 
     public void clear() {
-        messageQueue.clear();
+        while (messageQueue.poll() != null) {
+            backlog.decrementAndGet();
+        }
+    }
+
+    /**
+     * 已入队但还没有被取出持久化的事件流数量
+     */
+    public int getBacklog() {
+        return backlog.get();
     }
 
     public boolean isInactive(int timeoutSeconds) {
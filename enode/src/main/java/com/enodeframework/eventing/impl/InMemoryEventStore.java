@@ -15,6 +15,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 public class InMemoryEventStore implements IEventStore {
@@ -84,6 +85,20 @@ public class InMemoryEventStore implements IEventStore {
         return CompletableFuture.supplyAsync(() -> new AsyncTaskResult<>(AsyncTaskStatus.Success, null, queryAggregateEvents(aggregateRootId, aggregateRootTypeName, minVersion, maxVersion)));
     }
 
+    @Override
+    public CompletableFuture<AsyncTaskResult<Long>> scanCommandIdsAsync(BiConsumer<String, String> commandIdConsumer) {
+        return CompletableFuture.supplyAsync(() -> {
+            long count = 0;
+            for (Map.Entry<String, AggregateInfo> entry : aggregateInfoDict.entrySet()) {
+                for (String commandId : entry.getValue().getCommandDict().keySet()) {
+                    commandIdConsumer.accept(entry.getKey(), commandId);
+                    count++;
+                }
+            }
+            return new AsyncTaskResult<>(AsyncTaskStatus.Success, null, count);
+        });
+    }
+
     private EventAppendResult appends(DomainEventStream eventStream) {
         AggregateInfo aggregateInfo = aggregateInfoDict.computeIfAbsent(eventStream.aggregateRootId(), key -> new AggregateInfo());
 
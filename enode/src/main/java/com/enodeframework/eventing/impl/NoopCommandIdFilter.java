@@ -0,0 +1,20 @@
+package com.enodeframework.eventing.impl;
+
+import com.enodeframework.eventing.ICommandIdFilter;
+
+/**
+ * 没有配置命令id过滤器时使用，每次都查询事件库
+ */
+public class NoopCommandIdFilter implements ICommandIdFilter {
+
+    public static final NoopCommandIdFilter INSTANCE = new NoopCommandIdFilter();
+
+    @Override
+    public boolean mightExist(String aggregateRootId, String commandId) {
+        return true;
+    }
+
+    @Override
+    public void add(String aggregateRootId, String commandId, int version) {
+    }
+}
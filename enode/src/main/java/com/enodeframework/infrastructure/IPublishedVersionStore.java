@@ -1,7 +1,9 @@
 package com.enodeframework.infrastructure;
 
 import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.common.io.AsyncTaskStatus;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface IPublishedVersionStore {
@@ -9,4 +11,30 @@ public interface IPublishedVersionStore {
     CompletableFuture<AsyncTaskResult> updatePublishedVersionAsync(String processorName, String aggregateRootTypeName, String aggregateRootId, int publishedVersion);
 
     CompletableFuture<AsyncTaskResult<Integer>> getPublishedVersionAsync(String processorName, String aggregateRootTypeName, String aggregateRootId);
+
+    /**
+     * 批量更新已发布版本，每个（处理器，聚合根）最多出现一次，且版本只能前进不能后退；
+     * 默认逐条调用updatePublishedVersionAsync，全部成功才算成功
+     */
+    default CompletableFuture<AsyncTaskResult> batchUpdatePublishedVersionAsync(List<PublishedVersionRecord> records) {
+        CompletableFuture<AsyncTaskResult>[] futures = records.stream()
+                .map(x -> updatePublishedVersionAsync(x.getProcessorName(), x.getAggregateRootTypeName(), x.getAggregateRootId(), x.getVersion()))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures).thenApply(x -> {
+            for (CompletableFuture<AsyncTaskResult> future : futures) {
+                AsyncTaskResult result = future.join();
+                if (result.getStatus() != AsyncTaskStatus.Success) {
+                    return result;
+                }
+            }
+            return AsyncTaskResult.Success;
+        });
+    }
+
+    /**
+     * 丢弃本地缓存的已发布版本，返回true表示缓存可能已过期，调用方应重新读取；没有本地缓存的实现返回false
+     */
+    default boolean evictCachedPublishedVersion(String processorName, String aggregateRootId) {
+        return false;
+    }
 }
@@ -1,6 +1,5 @@
 package com.enodeframework.infrastructure;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 
 public interface MethodInvocation {
@@ -10,6 +9,4 @@ public interface MethodInvocation {
     void setMethod(Method method);
 
     void setHandlerType(Class handlerType);
-
-    void setMethodHandle(MethodHandle methodHandle);
 }
@@ -0,0 +1,113 @@
+package com.enodeframework.infrastructure;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * 启动时通过LambdaMetafactory为处理方法生成实现了函数接口（如Action2、Func2）的调用类，
+ * 调用时是普通的接口调用，JIT可以内联到目标方法，避免非常量MethodHandle.invoke的开销；
+ * 无法生成时（如void方法映射到有返回值的接口、基本类型参数）退回MethodHandleProxies
+ */
+public final class MethodInvokerFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(MethodInvokerFactory.class);
+
+    /**
+     * Java 8中Lookup的PUBLIC|PRIVATE|PROTECTED|PACKAGE
+     */
+    private static final int ALL_LOOKUP_MODES = 0x0F;
+
+    private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupIn();
+
+    private MethodInvokerFactory() {
+    }
+
+    /**
+     * 生成调用method的invokerType实例，第一个参数是目标对象，其余参数依次是method的参数
+     */
+    public static <T> T create(Class<T> invokerType, Method method) {
+        Method invokerMethod = getFunctionalMethod(invokerType);
+        MethodType invokerMethodType = MethodType.methodType(invokerMethod.getReturnType(), invokerMethod.getParameterTypes());
+        MethodHandles.Lookup lookup;
+        MethodHandle methodHandle;
+        try {
+            lookup = privateLookupIn(method.getDeclaringClass());
+            methodHandle = lookup.unreflect(method);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Create lookup for method {} failed, use reflection instead, errorMessage: {}", method, e.getMessage());
+            return createByReflection(invokerType, invokerMethodType, method);
+        }
+        if (invokerMethodType.parameterCount() != methodHandle.type().parameterCount()) {
+            throw new IllegalArgumentException(String.format("Invoker %s does not match method %s.", invokerType.getName(), method));
+        }
+        try {
+            CallSite callSite = LambdaMetafactory.metafactory(
+                    lookup,
+                    invokerMethod.getName(),
+                    MethodType.methodType(invokerType),
+                    invokerMethodType,
+                    methodHandle,
+                    getInstantiatedMethodType(invokerMethodType, methodHandle.type()));
+            return (T) callSite.getTarget().invoke();
+        } catch (Throwable e) {
+            logger.debug("Generate invoker for method {} failed, use method handle proxy instead, errorMessage: {}", method, e.getMessage());
+            return MethodHandleProxies.asInterfaceInstance(invokerType, methodHandle.asType(invokerMethodType));
+        }
+    }
+
+    private static MethodType getInstantiatedMethodType(MethodType invokerMethodType, MethodType implMethodType) {
+        Class<?> returnType = invokerMethodType.returnType() == void.class ? void.class : implMethodType.wrap().returnType();
+        return MethodType.methodType(returnType, implMethodType.parameterArray());
+    }
+
+    private static <T> T createByReflection(Class<T> invokerType, MethodType invokerMethodType, Method method) {
+        try {
+            method.setAccessible(true);
+            MethodHandle methodHandle = MethodHandles.lookup().unreflect(method);
+            return MethodHandleProxies.asInterfaceInstance(invokerType, methodHandle.asType(invokerMethodType));
+        } catch (IllegalAccessException e) {
+            throw new WrappedRuntimeException(e);
+        }
+    }
+
+    private static Method getFunctionalMethod(Class<?> invokerType) {
+        Method[] abstractMethods = Arrays.stream(invokerType.getMethods())
+                .filter(method -> Modifier.isAbstract(method.getModifiers()))
+                .toArray(Method[]::new);
+        if (!invokerType.isInterface() || abstractMethods.length != 1) {
+            throw new IllegalArgumentException(String.format("%s is not a functional interface.", invokerType.getName()));
+        }
+        return abstractMethods[0];
+    }
+
+    private static MethodHandles.Lookup privateLookupIn(Class<?> type) throws ReflectiveOperationException {
+        if (PRIVATE_LOOKUP_IN != null) {
+            return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, type, MethodHandles.lookup());
+        }
+        Constructor<MethodHandles.Lookup> constructor = MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(type, ALL_LOOKUP_MODES);
+    }
+
+    /**
+     * Java 9及以上使用MethodHandles.privateLookupIn，Java 8没有该方法时返回null
+     */
+    private static Method findPrivateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
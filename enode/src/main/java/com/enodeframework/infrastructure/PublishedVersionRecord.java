@@ -0,0 +1,55 @@
+package com.enodeframework.infrastructure;
+
+public class PublishedVersionRecord {
+    private String processorName;
+    private String aggregateRootTypeName;
+    private String aggregateRootId;
+    private int version;
+
+    public PublishedVersionRecord() {
+    }
+
+    public PublishedVersionRecord(String processorName, String aggregateRootTypeName, String aggregateRootId, int version) {
+        this.processorName = processorName;
+        this.aggregateRootTypeName = aggregateRootTypeName;
+        this.aggregateRootId = aggregateRootId;
+        this.version = version;
+    }
+
+    public String getProcessorName() {
+        return processorName;
+    }
+
+    public void setProcessorName(String processorName) {
+        this.processorName = processorName;
+    }
+
+    public String getAggregateRootTypeName() {
+        return aggregateRootTypeName;
+    }
+
+    public void setAggregateRootTypeName(String aggregateRootTypeName) {
+        this.aggregateRootTypeName = aggregateRootTypeName;
+    }
+
+    public String getAggregateRootId() {
+        return aggregateRootId;
+    }
+
+    public void setAggregateRootId(String aggregateRootId) {
+        this.aggregateRootId = aggregateRootId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[processorName=%s,aggregateRootTypeName=%s,aggregateRootId=%s,version=%d]", processorName, aggregateRootTypeName, aggregateRootId, version);
+    }
+}
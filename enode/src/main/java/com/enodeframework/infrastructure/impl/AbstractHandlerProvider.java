@@ -13,17 +13,18 @@ import com.enodeframework.infrastructure.MethodInvocation;
 import com.enodeframework.infrastructure.WrappedRuntimeException;
 import org.reflections.ReflectionUtils;
 
-import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 public abstract class AbstractHandlerProvider<TKey, THandlerProxyInterface extends IObjectProxy & MethodInvocation, THandlerSource> implements IAssemblyInitializer {
@@ -31,7 +32,10 @@ public abstract class AbstractHandlerProvider<TKey, THandlerProxyInterface exten
 
     private Map<TKey, MessageHandlerData<THandlerProxyInterface>> messageHandlerDict = new HashMap<>();
 
-    private MethodHandles.Lookup lookup = MethodHandles.lookup();
+    /**
+     * 消息源到处理器的索引，initialize时按已注册的key预先计算，其它消息源（如子类型）第一次查找时计算并缓存
+     */
+    private ConcurrentMap<THandlerSource, List<MessageHandlerData<THandlerProxyInterface>>> handlerIndex = new ConcurrentHashMap<>();
 
     protected abstract TKey getKey(Method method);
 
@@ -47,16 +51,45 @@ public abstract class AbstractHandlerProvider<TKey, THandlerProxyInterface exten
     public void initialize(Set<Class<?>> componentTypes) {
         componentTypes.stream().filter(this::isHandlerType).forEach(this::registerHandler);
         initializeHandlerPriority();
+        initializeHandlerIndex();
     }
 
     public List<MessageHandlerData<THandlerProxyInterface>> getHandlers(THandlerSource source) {
+        List<MessageHandlerData<THandlerProxyInterface>> handlerDataList = handlerIndex.get(source);
+        if (handlerDataList != null) {
+            return handlerDataList;
+        }
+        handlerDataList = findHandlers(source);
+        List<MessageHandlerData<THandlerProxyInterface>> existing = handlerIndex.putIfAbsent(copyHandlerSource(source), handlerDataList);
+        return existing != null ? existing : handlerDataList;
+    }
+
+    /**
+     * 已注册的key对应的消息源，用于预先计算索引；默认key本身就是消息源
+     */
+    protected Collection<THandlerSource> getHandlerSources(TKey key) {
+        return Collections.singletonList((THandlerSource) key);
+    }
+
+    /**
+     * 消息源作为索引的key保存前复制一份，避免调用方修改
+     */
+    protected THandlerSource copyHandlerSource(THandlerSource source) {
+        return source;
+    }
+
+    private void initializeHandlerIndex() {
+        messageHandlerDict.keySet().forEach(key -> getHandlerSources(key).forEach(source -> handlerIndex.put(source, findHandlers(source))));
+    }
+
+    private List<MessageHandlerData<THandlerProxyInterface>> findHandlers(THandlerSource source) {
         List<MessageHandlerData<THandlerProxyInterface>> handlerDataList = new ArrayList<>();
 
         messageHandlerDict.keySet().stream()
                 .filter(key -> isHandlerSourceMatchKey(source, key))
                 .forEach(key -> handlerDataList.add(messageHandlerDict.get(key)));
 
-        return handlerDataList;
+        return handlerDataList.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(handlerDataList);
     }
 
     private void initializeHandlerPriority() {
@@ -140,8 +173,6 @@ public abstract class AbstractHandlerProvider<TKey, THandlerProxyInterface exten
 
         handleMethods.forEach(method -> {
             try {
-                //反射Method转换为MethodHandle,提高效率
-                MethodHandle handleMethod = lookup.findVirtual(handlerType, method.getName(), MethodType.methodType(method.getReturnType(), method.getParameterTypes()));
                 TKey key = getKey(method);
                 List<THandlerProxyInterface> handlers = handlerDict.computeIfAbsent(key, k -> new ArrayList<>());
                 IObjectContainer objectContainer = getObjectContainer();
@@ -154,8 +185,8 @@ public abstract class AbstractHandlerProvider<TKey, THandlerProxyInterface exten
                     throw new RuntimeException("THandlerProxyInterface is null, " + getHandlerProxyImplementationType().getName());
                 }
                 handlerProxy.setHandlerType(handlerType);
+                //处理器代理在setMethod时为方法生成调用类
                 handlerProxy.setMethod(method);
-                handlerProxy.setMethodHandle(handleMethod);
                 handlers.add(handlerProxy);
             } catch (Exception e) {
                 throw new WrappedRuntimeException(e);
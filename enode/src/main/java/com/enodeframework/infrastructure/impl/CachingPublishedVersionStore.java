@@ -0,0 +1,216 @@
+package com.enodeframework.infrastructure.impl;
+
+import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.common.io.AsyncTaskStatus;
+import com.enodeframework.common.utilities.Ensure;
+import com.enodeframework.infrastructure.IPublishedVersionStore;
+import com.enodeframework.infrastructure.PublishedVersionRecord;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 带本地缓存和合并写入的已发布版本存储装饰器：
+ * 读取时首次从被装饰的存储加载，之后直接读本地缓存，缓存有数量上限并在一段时间未访问后过期，未命中时重新从被装饰的存储加载；
+ * 更新先在内存中按（处理器，聚合根）合并，在一个很短的时间窗口内或达到数量上限时批量写入被装饰的存储，
+ * 写入成功后才完成调用方的Future，因此消息只有在版本持久化之后才会被确认，宕机恢复语义与逐条更新相同。
+ */
+public class CachingPublishedVersionStore implements IPublishedVersionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingPublishedVersionStore.class);
+
+    private final IPublishedVersionStore publishedVersionStore;
+    private final Object lockObj = new Object();
+    private final ScheduledExecutorService scheduler;
+    private Map<String, PendingVersion> pendingVersions = new HashMap<>();
+    private boolean flushScheduled;
+    private int flushIntervalMilliseconds = 5;
+    private int maxBatchSize = 500;
+    private int cacheMaximumSize = 100000;
+    private int cacheExpireAfterAccessSeconds = 3600;
+    private ConcurrentMap<String, CachedVersion> versionCache = buildVersionCache(cacheMaximumSize, cacheExpireAfterAccessSeconds);
+
+    public CachingPublishedVersionStore(IPublishedVersionStore publishedVersionStore) {
+        Ensure.notNull(publishedVersionStore, "publishedVersionStore");
+        this.publishedVersionStore = publishedVersionStore;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("CachingPublishedVersionStore-%d").build());
+    }
+
+    @Override
+    public CompletableFuture<AsyncTaskResult> updatePublishedVersionAsync(String processorName, String aggregateRootTypeName, String aggregateRootId, int publishedVersion) {
+        String key = buildKey(processorName, aggregateRootId);
+        CompletableFuture<AsyncTaskResult> future = new CompletableFuture<>();
+        List<PendingVersion> batch = null;
+        synchronized (lockObj) {
+            PendingVersion pending = pendingVersions.get(key);
+            if (pending == null) {
+                pending = new PendingVersion(key, new PublishedVersionRecord(processorName, aggregateRootTypeName, aggregateRootId, publishedVersion));
+                pendingVersions.put(key, pending);
+            } else if (publishedVersion > pending.record.getVersion()) {
+                pending.record.setVersion(publishedVersion);
+            }
+            pending.futures.add(future);
+            if (pendingVersions.size() >= maxBatchSize) {
+                batch = drain();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::flushPending, flushIntervalMilliseconds, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (batch != null) {
+            flush(batch);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<AsyncTaskResult<Integer>> getPublishedVersionAsync(String processorName, String aggregateRootTypeName, String aggregateRootId) {
+        String key = buildKey(processorName, aggregateRootId);
+        CachedVersion cachedVersion = versionCache.get(key);
+        if (cachedVersion != null) {
+            return CompletableFuture.completedFuture(new AsyncTaskResult<>(AsyncTaskStatus.Success, cachedVersion.version));
+        }
+        return publishedVersionStore.getPublishedVersionAsync(processorName, aggregateRootTypeName, aggregateRootId).thenApply(result -> {
+            if (result.getStatus() != AsyncTaskStatus.Success) {
+                return result;
+            }
+            CachedVersion current = versionCache.merge(key, new CachedVersion(result.getData(), true), CachedVersion::max);
+            return new AsyncTaskResult<>(AsyncTaskStatus.Success, current.version);
+        });
+    }
+
+    @Override
+    public CompletableFuture<AsyncTaskResult> batchUpdatePublishedVersionAsync(List<PublishedVersionRecord> records) {
+        return publishedVersionStore.batchUpdatePublishedVersionAsync(records);
+    }
+
+    /**
+     * 缓存的版本是本节点自己写入的，其它节点（如分区重新分配后）可能已经推进了版本，此时丢弃缓存让调用方重新读取；
+     * 刚从存储加载的版本与存储一致，不需要丢弃
+     */
+    @Override
+    public boolean evictCachedPublishedVersion(String processorName, String aggregateRootId) {
+        String key = buildKey(processorName, aggregateRootId);
+        CachedVersion cachedVersion = versionCache.get(key);
+        if (cachedVersion == null || cachedVersion.loaded) {
+            return false;
+        }
+        return versionCache.remove(key, cachedVersion);
+    }
+
+    public void stop() {
+        scheduler.shutdown();
+        flushPending();
+    }
+
+    public void setFlushIntervalMilliseconds(int flushIntervalMilliseconds) {
+        Ensure.positive(flushIntervalMilliseconds, "flushIntervalMilliseconds");
+        this.flushIntervalMilliseconds = flushIntervalMilliseconds;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        Ensure.positive(maxBatchSize, "maxBatchSize");
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void setCacheMaximumSize(int cacheMaximumSize) {
+        Ensure.positive(cacheMaximumSize, "cacheMaximumSize");
+        this.cacheMaximumSize = cacheMaximumSize;
+        this.versionCache = buildVersionCache(cacheMaximumSize, cacheExpireAfterAccessSeconds);
+    }
+
+    public void setCacheExpireAfterAccessSeconds(int cacheExpireAfterAccessSeconds) {
+        Ensure.positive(cacheExpireAfterAccessSeconds, "cacheExpireAfterAccessSeconds");
+        this.cacheExpireAfterAccessSeconds = cacheExpireAfterAccessSeconds;
+        this.versionCache = buildVersionCache(cacheMaximumSize, cacheExpireAfterAccessSeconds);
+    }
+
+    private static ConcurrentMap<String, CachedVersion> buildVersionCache(int maximumSize, int expireAfterAccessSeconds) {
+        Cache<String, CachedVersion> cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccessSeconds, TimeUnit.SECONDS)
+                .build();
+        return cache.asMap();
+    }
+
+    private void flushPending() {
+        List<PendingVersion> batch;
+        synchronized (lockObj) {
+            flushScheduled = false;
+            batch = drain();
+        }
+        flush(batch);
+    }
+
+    private List<PendingVersion> drain() {
+        List<PendingVersion> batch = new ArrayList<>(pendingVersions.values());
+        pendingVersions = new HashMap<>();
+        return batch;
+    }
+
+    private void flush(List<PendingVersion> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<PublishedVersionRecord> records = batch.stream().map(x -> x.record).collect(Collectors.toList());
+        CompletableFuture<AsyncTaskResult> future;
+        try {
+            future = publishedVersionStore.batchUpdatePublishedVersionAsync(records);
+        } catch (Exception ex) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+        }
+        future.whenComplete((result, ex) -> {
+            if (ex != null) {
+                logger.error(String.format("Batch update published version has unknown exception, count: %d", records.size()), ex);
+                result = new AsyncTaskResult(AsyncTaskStatus.Failed, ex.getMessage());
+            } else if (result.getStatus() == AsyncTaskStatus.Success) {
+                batch.forEach(x -> versionCache.merge(x.key, new CachedVersion(x.record.getVersion(), false), CachedVersion::max));
+            }
+            AsyncTaskResult flushResult = result;
+            batch.forEach(x -> x.futures.forEach(f -> f.complete(flushResult)));
+        });
+    }
+
+    private String buildKey(String processorName, String aggregateRootId) {
+        return String.format("%s-%s", processorName, aggregateRootId);
+    }
+
+    private static final class CachedVersion {
+        private final int version;
+        private final boolean loaded;
+
+        private CachedVersion(int version, boolean loaded) {
+            this.version = version;
+            this.loaded = loaded;
+        }
+
+        private static CachedVersion max(CachedVersion current, CachedVersion other) {
+            return current.version >= other.version ? current : other;
+        }
+    }
+
+    private static final class PendingVersion {
+        private final String key;
+        private final PublishedVersionRecord record;
+        private final List<CompletableFuture<AsyncTaskResult>> futures = new ArrayList<>();
+
+        private PendingVersion(String key, PublishedVersionRecord record) {
+            this.key = key;
+            this.record = record;
+        }
+    }
+}
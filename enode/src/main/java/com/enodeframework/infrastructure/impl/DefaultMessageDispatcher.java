@@ -16,17 +16,22 @@ import com.enodeframework.infrastructure.ITwoMessageHandlerProvider;
 import com.enodeframework.infrastructure.ITypeNameProvider;
 import com.enodeframework.infrastructure.MessageHandlerData;
 import com.enodeframework.infrastructure.WrappedRuntimeException;
-import com.google.common.collect.Lists;
+import com.enodeframework.metrics.IMetrics;
+import com.enodeframework.metrics.ITimer;
+import com.enodeframework.metrics.MetricNames;
+import com.enodeframework.metrics.impl.NoopMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class DefaultMessageDispatcher implements IMessageDispatcher {
@@ -43,10 +48,21 @@ public class DefaultMessageDispatcher implements IMessageDispatcher {
     private IThreeMessageHandlerProvider threeMessageHandlerProvider;
     @Autowired
     private IOHelper ioHelper;
+    @Autowired(required = false)
+    private IMetrics metrics = NoopMetrics.INSTANCE;
+
+    private final ConcurrentMap<String, ITimer> handlerTimerDict = new ConcurrentHashMap<>();
+
+    /**
+     * 按消息类型序列缓存的分发计划，不同的序列数量超过上限后不再缓存，每次临时计算
+     */
+    private final ConcurrentMap<MessageTypes, DispatchPlan> dispatchPlanDict = new ConcurrentHashMap<>();
+
+    private int maxDispatchPlanCount = 10000;
 
     @Override
     public CompletableFuture<AsyncTaskResult> dispatchMessageAsync(IMessage message) {
-        return dispatchMessages(Lists.newArrayList(message));
+        return dispatchMessages(Collections.singletonList(message));
     }
 
     @Override
@@ -59,31 +75,62 @@ public class DefaultMessageDispatcher implements IMessageDispatcher {
         if (messageCount == 0) {
             return CompletableFuture.completedFuture(AsyncTaskResult.Success);
         }
+        DispatchPlan dispatchPlan = getDispatchPlan(messages);
         RootDispatching rootDispatching = new RootDispatching();
 
         //先对每个事件调用其Handler
-        QueueMessageDispatching queueMessageDispatching = new QueueMessageDispatching(this, rootDispatching, messages);
-        dispatchSingleMessage(queueMessageDispatching.dequeueMessage(), queueMessageDispatching);
+        QueueMessageDispatching queueMessageDispatching = new QueueMessageDispatching(this, rootDispatching, messages, dispatchPlan);
+        queueMessageDispatching.dispatchNextMessage();
 
         //如果有至少两个事件，则尝试调用针对两个事件的Handler
-        if (messageCount >= 2) {
-            List<MessageHandlerData<IMessageHandlerProxy2>> twoMessageHandlers = twoMessageHandlerProvider.getHandlers(messages.stream().map(x -> x.getClass()).collect(Collectors.toList()));
-            if (!twoMessageHandlers.isEmpty()) {
-                dispatchMultiMessage(messages, twoMessageHandlers, rootDispatching, this::dispatchTwoMessageToHandlerAsync);
-            }
+        if (!dispatchPlan.twoMessageHandlers.isEmpty()) {
+            dispatchMultiMessage(messages, dispatchPlan.twoMessageHandlers, rootDispatching, this::dispatchTwoMessageToHandlerAsync);
         }
         //如果有至少三个事件，则尝试调用针对三个事件的Handler
-        if (messageCount >= 3) {
-            List<MessageHandlerData<IMessageHandlerProxy3>> threeMessageHandlers = threeMessageHandlerProvider.getHandlers(messages.stream().map(x -> x.getClass()).collect(Collectors.toList()));
-            if (!threeMessageHandlers.isEmpty()) {
-                dispatchMultiMessage(messages, threeMessageHandlers, rootDispatching, this::dispatchThreeMessageToHandlerAsync);
-            }
+        if (!dispatchPlan.threeMessageHandlers.isEmpty()) {
+            dispatchMultiMessage(messages, dispatchPlan.threeMessageHandlers, rootDispatching, this::dispatchThreeMessageToHandlerAsync);
         }
         return rootDispatching.getTaskCompletionSource();
     }
 
-    private void dispatchSingleMessage(IMessage message, QueueMessageDispatching queueMessageDispatching) {
-        List<MessageHandlerData<IMessageHandlerProxy1>> messageHandlerDataList = handlerProvider.getHandlers(message.getClass());
+    public void setMaxDispatchPlanCount(int maxDispatchPlanCount) {
+        this.maxDispatchPlanCount = maxDispatchPlanCount;
+    }
+
+    private DispatchPlan getDispatchPlan(List<? extends IMessage> messages) {
+        int messageCount = messages.size();
+        Class[] messageTypes = new Class[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            messageTypes[i] = messages.get(i).getClass();
+        }
+        MessageTypes key = new MessageTypes(messageTypes);
+        DispatchPlan dispatchPlan = dispatchPlanDict.get(key);
+        if (dispatchPlan != null) {
+            return dispatchPlan;
+        }
+        dispatchPlan = createDispatchPlan(messageTypes);
+        if (dispatchPlanDict.size() < maxDispatchPlanCount) {
+            DispatchPlan existing = dispatchPlanDict.putIfAbsent(key, dispatchPlan);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return dispatchPlan;
+    }
+
+    private DispatchPlan createDispatchPlan(Class[] messageTypes) {
+        List<MessageHandlerData<IMessageHandlerProxy1>>[] singleMessageHandlers = new List[messageTypes.length];
+        for (int i = 0; i < messageTypes.length; i++) {
+            singleMessageHandlers[i] = handlerProvider.getHandlers(messageTypes[i]);
+        }
+        List<MessageHandlerData<IMessageHandlerProxy2>> twoMessageHandlers = messageTypes.length >= 2
+                ? twoMessageHandlerProvider.getHandlers(Arrays.asList(messageTypes)) : Collections.emptyList();
+        List<MessageHandlerData<IMessageHandlerProxy3>> threeMessageHandlers = messageTypes.length >= 3
+                ? threeMessageHandlerProvider.getHandlers(Arrays.asList(messageTypes)) : Collections.emptyList();
+        return new DispatchPlan(singleMessageHandlers, twoMessageHandlers, threeMessageHandlers);
+    }
+
+    private void dispatchSingleMessage(IMessage message, List<MessageHandlerData<IMessageHandlerProxy1>> messageHandlerDataList, QueueMessageDispatching queueMessageDispatching) {
         if (messageHandlerDataList.isEmpty()) {
             queueMessageDispatching.onMessageHandled(message);
             return;
@@ -176,7 +223,7 @@ public class DefaultMessageDispatcher implements IMessageDispatcher {
                 errorMessage ->
                         logger.error(String.format("Handle single message has unknown exception, the code should not be run to here, errorMessage: %s", errorMessage))
                 ,
-                retryTimes, true);
+                retryTimes, true, getHandlerTimer(handlerTypeName));
     }
 
     private void handleTwoMessageAsync(
@@ -203,7 +250,7 @@ public class DefaultMessageDispatcher implements IMessageDispatcher {
                 errorMessage ->
                         logger.error(String.format("Handle two message has unknown exception, the code should not be run to here, errorMessage: %s", errorMessage))
                 ,
-                retryTimes, true);
+                retryTimes, true, getHandlerTimer(handlerTypeName));
     }
 
     private void handleThreeMessageAsync(
@@ -231,7 +278,15 @@ public class DefaultMessageDispatcher implements IMessageDispatcher {
                 },
                 () -> String.format("[messages:%s, handlerType:%s]", String.join("|", Arrays.stream(messages).map(x -> String.format("id:%s,type:%s", x.id(), x.getClass().getName())).collect(Collectors.toList())), handlerProxy.getInnerObject().getClass().getName()),
                 errorMessage -> logger.error(String.format("Handle three message has unknown exception, the code should not be run to here, errorMessage: %s", errorMessage)),
-                retryTimes, true);
+                retryTimes, true, getHandlerTimer(handlerTypeName));
+    }
+
+    private ITimer getHandlerTimer(String handlerTypeName) {
+        ITimer timer = handlerTimerDict.get(handlerTypeName);
+        if (timer == null) {
+            timer = handlerTimerDict.computeIfAbsent(handlerTypeName, x -> metrics.timer(MetricNames.HANDLER_DURATION, MetricNames.TAG_HANDLER, x));
+        }
+        return timer;
     }
 
     class RootDispatching {
@@ -260,34 +315,79 @@ public class DefaultMessageDispatcher implements IMessageDispatcher {
         }
     }
 
+    /**
+     * 消息按顺序逐个分发，前一个消息的所有Handler处理完成后才分发下一个
+     */
     class QueueMessageDispatching {
         private DefaultMessageDispatcher dispatcher;
         private RootDispatching rootDispatching;
-        private ConcurrentLinkedQueue<IMessage> messageQueue;
+        private List<? extends IMessage> messages;
+        private DispatchPlan dispatchPlan;
+        private AtomicInteger nextIndex;
 
-        public QueueMessageDispatching(DefaultMessageDispatcher dispatcher, RootDispatching rootDispatching, List<? extends IMessage> messages) {
+        public QueueMessageDispatching(DefaultMessageDispatcher dispatcher, RootDispatching rootDispatching, List<? extends IMessage> messages, DispatchPlan dispatchPlan) {
             this.dispatcher = dispatcher;
-            messageQueue = new ConcurrentLinkedQueue<>();
-
-            //TODO messageQueue
-            messages.forEach(message ->
-                    messageQueue.add(message)
-            );
+            this.messages = messages;
+            this.dispatchPlan = dispatchPlan;
+            this.nextIndex = new AtomicInteger();
             this.rootDispatching = rootDispatching;
             this.rootDispatching.addChildDispatching(this);
         }
 
-        public IMessage dequeueMessage() {
-            return messageQueue.poll();
+        public void dispatchNextMessage() {
+            int index = nextIndex.getAndIncrement();
+            if (index >= messages.size()) {
+                rootDispatching.onChildDispatchingFinished(this);
+                return;
+            }
+            dispatcher.dispatchSingleMessage(messages.get(index), dispatchPlan.singleMessageHandlers[index], this);
         }
 
         public void onMessageHandled(IMessage message) {
-            IMessage nextMessage = dequeueMessage();
-            if (nextMessage == null) {
-                rootDispatching.onChildDispatchingFinished(this);
-                return;
+            dispatchNextMessage();
+        }
+    }
+
+    /**
+     * 同一个消息类型序列的分发计划：每个位置上消息的Handler，以及针对两个、三个消息的Handler
+     */
+    static class DispatchPlan {
+        private final List<MessageHandlerData<IMessageHandlerProxy1>>[] singleMessageHandlers;
+        private final List<MessageHandlerData<IMessageHandlerProxy2>> twoMessageHandlers;
+        private final List<MessageHandlerData<IMessageHandlerProxy3>> threeMessageHandlers;
+
+        DispatchPlan(List<MessageHandlerData<IMessageHandlerProxy1>>[] singleMessageHandlers,
+                     List<MessageHandlerData<IMessageHandlerProxy2>> twoMessageHandlers,
+                     List<MessageHandlerData<IMessageHandlerProxy3>> threeMessageHandlers) {
+            this.singleMessageHandlers = singleMessageHandlers;
+            this.twoMessageHandlers = twoMessageHandlers;
+            this.threeMessageHandlers = threeMessageHandlers;
+        }
+    }
+
+    static class MessageTypes {
+        private final Class[] types;
+        private final int hashCode;
+
+        MessageTypes(Class[] types) {
+            this.types = types;
+            this.hashCode = Arrays.hashCode(types);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MessageTypes)) {
+                return false;
             }
-            dispatcher.dispatchSingleMessage(nextMessage, this);
+            return Arrays.equals(types, ((MessageTypes) obj).types);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
         }
     }
 
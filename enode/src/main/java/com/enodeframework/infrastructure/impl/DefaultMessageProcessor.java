@@ -1,6 +1,6 @@
 package com.enodeframework.infrastructure.impl;
 
-import com.enodeframework.common.scheduling.IScheduleService;
+import com.enodeframework.common.scheduling.TimingWheel;
 import com.enodeframework.infrastructure.IMessage;
 import com.enodeframework.infrastructure.IMessageProcessor;
 import com.enodeframework.infrastructure.IProcessingMessage;
@@ -11,12 +11,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.stream.Collectors;
 
 public class DefaultMessageProcessor<X extends IProcessingMessage<X, Y>, Y extends IMessage> implements IMessageProcessor<X, Y> {
 
@@ -28,12 +24,10 @@ public class DefaultMessageProcessor<X extends IProcessingMessage<X, Y>, Y exten
 
     private final int scanExpiredAggregateIntervalMilliseconds = 5000;
 
-    private final String taskName;
-
     private ConcurrentMap<String, ProcessingMessageMailbox<X, Y>> mailboxDict;
 
     @Autowired
-    private IScheduleService scheduleService;
+    private TimingWheel timingWheel;
 
     @Autowired
     private IProcessingMessageScheduler<X, Y> processingMessageScheduler;
@@ -43,7 +37,6 @@ public class DefaultMessageProcessor<X extends IProcessingMessage<X, Y>, Y exten
 
     public DefaultMessageProcessor() {
         mailboxDict = new ConcurrentHashMap<>();
-        taskName = "CleanInactiveAggregates" + System.nanoTime() + new Random().nextInt(10000);
     }
 
     public String getMessageName() {
@@ -54,7 +47,11 @@ public class DefaultMessageProcessor<X extends IProcessingMessage<X, Y>, Y exten
     public void process(X processingMessage) {
         String routingKey = processingMessage.getMessage().getRoutingKey();
         if (routingKey != null && !"".equals(routingKey.trim())) {
-            ProcessingMessageMailbox<X, Y> mailbox = mailboxDict.computeIfAbsent(routingKey, key -> new ProcessingMessageMailbox<>(routingKey, processingMessageScheduler, processingMessageHandler));
+            ProcessingMessageMailbox<X, Y> mailbox = mailboxDict.computeIfAbsent(routingKey, key -> {
+                ProcessingMessageMailbox<X, Y> newMailbox = new ProcessingMessageMailbox<>(routingKey, processingMessageScheduler, processingMessageHandler);
+                timingWheel.schedule(timeoutSeconds * 1000L, () -> expireMailbox(key, newMailbox));
+                return newMailbox;
+            });
             mailbox.enqueueMessage(processingMessage);
         } else {
             processingMessageScheduler.scheduleMessage(processingMessage);
@@ -63,23 +60,29 @@ public class DefaultMessageProcessor<X extends IProcessingMessage<X, Y>, Y exten
 
     @Override
     public void start() {
-        scheduleService.startTask(taskName, this::cleanInactiveMailbox, scanExpiredAggregateIntervalMilliseconds, scanExpiredAggregateIntervalMilliseconds);
     }
 
     @Override
     public void stop() {
-        scheduleService.stopTask(taskName);
     }
 
-    private void cleanInactiveMailbox() {
-        List<Map.Entry<String, ProcessingMessageMailbox<X, Y>>> inactiveList = mailboxDict.entrySet().stream().filter(entry ->
-                entry.getValue().isInactive(timeoutSeconds) && !entry.getValue().isRunning()
-        ).collect(Collectors.toList());
-
-        inactiveList.forEach(entry -> {
-            if (mailboxDict.remove(entry.getKey()) != null) {
-                logger.info("Removed inactive {} mailbox, aggregateRootId: {}", getMessageName(), entry.getKey());
-            }
-        });
+    /**
+     * 时间轮到期时检查邮箱的真实活跃时间，未过期则返回剩余时间重新登记
+     */
+    private long expireMailbox(String routingKey, ProcessingMessageMailbox<X, Y> mailbox) {
+        if (mailboxDict.get(routingKey) != mailbox) {
+            return 0;
+        }
+        long remainingMillis = timeoutSeconds * 1000L - (System.currentTimeMillis() - mailbox.getLastActiveTime().getTime());
+        if (remainingMillis > 0) {
+            return remainingMillis;
+        }
+        if (mailbox.isRunning()) {
+            return scanExpiredAggregateIntervalMilliseconds;
+        }
+        if (mailboxDict.remove(routingKey, mailbox)) {
+            logger.info("Removed inactive {} mailbox, aggregateRootId: {}", getMessageName(), routingKey);
+        }
+        return 0;
     }
 }
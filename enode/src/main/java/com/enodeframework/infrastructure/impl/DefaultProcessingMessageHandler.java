@@ -58,6 +58,10 @@ public class DefaultProcessingMessageHandler<X extends IProcessingMessage<X, Y>,
                     if (publishedVersion + 1 == message.version()) {
                         doDispatchProcessingMessageAsync(processingMessage, 0);
                     } else if (publishedVersion + 1 < message.version()) {
+                        if (publishedVersionStore.evictCachedPublishedVersion(getName(), message.aggregateRootStringId())) {
+                            handleMessageAsync(processingMessage, 0);
+                            return;
+                        }
                         logger.info("The sequence message cannot be process now as the version is not the next version, it will be handle later. contextInfo [aggregateRootId={},lastPublishedVersion={},messageVersion={}]", message.aggregateRootStringId(), publishedVersion, message.version());
                         processingMessage.addToWaitingList();
                     } else {
@@ -8,7 +8,9 @@ import com.enodeframework.infrastructure.IThreeMessageHandlerProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 public class DefaultThreeMessageHandlerProvider extends AbstractHandlerProvider<ManyType, IMessageHandlerProxy3, List<Class>> implements IThreeMessageHandlerProvider {
@@ -41,6 +43,16 @@ public class DefaultThreeMessageHandlerProvider extends AbstractHandlerProvider<
         return true;
     }
 
+    @Override
+    protected Collection<List<Class>> getHandlerSources(ManyType key) {
+        return key.getPermutations();
+    }
+
+    @Override
+    protected List<Class> copyHandlerSource(List<Class> handlerSource) {
+        return new ArrayList<>(handlerSource);
+    }
+
     @Override
     protected boolean isHandleMethodMatch(Method method) {
         if (!Constants.EVENT_HANDLE_METHOD.equals(method.getName())) {
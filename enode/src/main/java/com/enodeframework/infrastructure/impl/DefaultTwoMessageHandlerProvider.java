@@ -8,7 +8,9 @@ import com.enodeframework.infrastructure.ITwoMessageHandlerProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 public class DefaultTwoMessageHandlerProvider extends AbstractHandlerProvider<ManyType, IMessageHandlerProxy2, List<Class>> implements ITwoMessageHandlerProvider {
@@ -40,6 +42,16 @@ public class DefaultTwoMessageHandlerProvider extends AbstractHandlerProvider<Ma
         return true;
     }
 
+    @Override
+    protected Collection<List<Class>> getHandlerSources(ManyType key) {
+        return key.getPermutations();
+    }
+
+    @Override
+    protected List<Class> copyHandlerSource(List<Class> handlerSource) {
+        return new ArrayList<>(handlerSource);
+    }
+
     @Override
     protected boolean isHandleMethodMatch(Method method) {
         if (!Constants.EVENT_HANDLE_METHOD.equals(method.getName())) {
@@ -1,21 +1,101 @@
 package com.enodeframework.infrastructure.impl;
 
+import com.enodeframework.annotation.TypeCode;
+import com.enodeframework.domain.IAggregateRoot;
+import com.enodeframework.infrastructure.IAssemblyInitializer;
+import com.enodeframework.infrastructure.IMessage;
+import com.enodeframework.infrastructure.IPublishableException;
 import com.enodeframework.infrastructure.ITypeNameProvider;
 import com.enodeframework.infrastructure.WrappedRuntimeException;
 
-public class DefaultTypeNameProvider implements ITypeNameProvider {
+import java.lang.reflect.Modifier;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * 类型与类型名称的双向缓存，启动时注册扫描到的消息、异常和聚合根类型，其它类型第一次解析时加入缓存；
+ * 标注了TypeCode的类型，其编码和完整类名都能解析；
+ * 聚合根类型名称会写入事件表并由分片策略按名称路由，开启类型编码后仍然返回完整类名，已有的事件历史不会被路由到其它分片
+ */
+public class DefaultTypeNameProvider implements ITypeNameProvider, IAssemblyInitializer {
+
+    private static final Pattern TYPE_CODE_PATTERN = Pattern.compile("[A-Za-z0-9_\\-:]+");
+
+    private final ConcurrentMap<Class, String> typeNameDict = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Class> typeDict = new ConcurrentHashMap<>();
+
+    /**
+     * 默认关闭，所有节点都升级到能解析类型编码后再开启；开启后getTypeName对标注了TypeCode的非聚合根类型返回编码
+     */
+    private boolean typeCodeEnabled = false;
+
+    @Override
+    public void initialize(Set<Class<?>> componentTypes) {
+        componentTypes.stream().filter(this::isRegisterType).forEach(this::registerType);
+    }
 
     @Override
     public String getTypeName(Class type) {
-        return type.getName();
+        String typeName = typeNameDict.get(type);
+        if (typeName != null) {
+            return typeName;
+        }
+        registerType(type);
+        return typeNameDict.get(type);
     }
 
     @Override
     public Class getType(String typeName) {
+        Class type = typeDict.get(typeName);
+        if (type != null) {
+            return type;
+        }
         try {
-            return Class.forName(typeName);
+            type = Class.forName(typeName);
         } catch (ClassNotFoundException e) {
             throw new WrappedRuntimeException("ClassNotFound", e);
         }
+        registerType(type);
+        return type;
+    }
+
+    public boolean isTypeCodeEnabled() {
+        return typeCodeEnabled;
+    }
+
+    public void setTypeCodeEnabled(boolean typeCodeEnabled) {
+        this.typeCodeEnabled = typeCodeEnabled;
+        typeNameDict.clear();
+    }
+
+    private boolean isRegisterType(Class type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return false;
+        }
+        return IMessage.class.isAssignableFrom(type)
+                || IPublishableException.class.isAssignableFrom(type)
+                || IAggregateRoot.class.isAssignableFrom(type);
+    }
+
+    private void registerType(Class type) {
+        typeDict.putIfAbsent(type.getName(), type);
+        TypeCode typeCode = (TypeCode) type.getAnnotation(TypeCode.class);
+        if (typeCode == null) {
+            typeNameDict.putIfAbsent(type, type.getName());
+            return;
+        }
+        String code = typeCode.value();
+        if (!TYPE_CODE_PATTERN.matcher(code).matches()) {
+            throw new IllegalArgumentException(String.format("Invalid type code [%s] of type %s.", code, type.getName()));
+        }
+        Class existingType = typeDict.putIfAbsent(code, type);
+        if (existingType != null && existingType != type) {
+            throw new IllegalStateException(String.format("Duplicate type code [%s], types: %s, %s.", code, existingType.getName(), type.getName()));
+        }
+        boolean useCode = typeCodeEnabled && !IAggregateRoot.class.isAssignableFrom(type);
+        typeNameDict.putIfAbsent(type, useCode ? code : type.getName());
     }
 }
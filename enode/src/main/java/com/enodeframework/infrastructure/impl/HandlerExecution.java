@@ -0,0 +1,69 @@
+package com.enodeframework.infrastructure.impl;
+
+import com.enodeframework.annotation.ExecutionMode;
+import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.infrastructure.WrappedRuntimeException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 一个处理方法确定下来的执行方式，由HandlerExecutionRegistry解析后缓存在处理器代理中
+ */
+class HandlerExecution {
+
+    private final ExecutionMode mode;
+
+    private final Executor executor;
+
+    HandlerExecution(ExecutionMode mode, Executor executor) {
+        this.mode = mode;
+        this.executor = executor;
+    }
+
+    ExecutionMode getMode() {
+        return mode;
+    }
+
+    CompletableFuture<AsyncTaskResult> execute(HandlerInvocation invocation) {
+        if (mode == ExecutionMode.EXECUTOR) {
+            try {
+                return CompletableFuture.supplyAsync(() -> (AsyncTaskResult) invoke(invocation), executor);
+            } catch (RejectedExecutionException ex) {
+                return failedFuture(ex);
+            }
+        }
+        try {
+            Object result = invoke(invocation);
+            if (mode == ExecutionMode.ASYNC && result != null) {
+                return (CompletableFuture<AsyncTaskResult>) result;
+            }
+            if (mode == ExecutionMode.ASYNC) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.completedFuture((AsyncTaskResult) result);
+        } catch (Exception ex) {
+            return failedFuture(ex);
+        }
+    }
+
+    private static Object invoke(HandlerInvocation invocation) {
+        try {
+            return invocation.invoke();
+        } catch (Throwable throwable) {
+            throw new WrappedRuntimeException(throwable);
+        }
+    }
+
+    private static CompletableFuture<AsyncTaskResult> failedFuture(Throwable throwable) {
+        CompletableFuture<AsyncTaskResult> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    @FunctionalInterface
+    interface HandlerInvocation {
+        Object invoke() throws Throwable;
+    }
+}
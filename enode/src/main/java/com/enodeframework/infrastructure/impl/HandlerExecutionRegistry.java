@@ -0,0 +1,142 @@
+package com.enodeframework.infrastructure.impl;
+
+import com.enodeframework.annotation.Execution;
+import com.enodeframework.annotation.ExecutionMode;
+import com.enodeframework.common.utilities.Ensure;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息处理器执行方式的配置：命名线程池、按处理器类型的配置以及默认执行方式。
+ * 解析顺序为：按处理器类型的配置、方法上的@Execution、类上的@Execution、默认执行方式；
+ * 处理方法返回CompletableFuture时总是使用ASYNC方式。
+ * 默认执行方式为EXECUTOR + ForkJoinPool.commonPool()，与原来每次调用supplyAsync的行为一致。
+ */
+public class HandlerExecutionRegistry {
+
+    private final Map<String, Executor> executorDict = new ConcurrentHashMap<>();
+
+    private final Map<Class, Execution> handlerExecutionDict = new ConcurrentHashMap<>();
+
+    private final Map<String, ExecutorService> ownedExecutorDict = new ConcurrentHashMap<>();
+
+    private ExecutionMode defaultMode = ExecutionMode.EXECUTOR;
+
+    private Executor defaultExecutor = ForkJoinPool.commonPool();
+
+    public void setDefaultMode(ExecutionMode defaultMode) {
+        Ensure.notNull(defaultMode, "defaultMode");
+        if (defaultMode == ExecutionMode.DEFAULT || defaultMode == ExecutionMode.ASYNC) {
+            throw new IllegalArgumentException("defaultMode should be INLINE or EXECUTOR.");
+        }
+        this.defaultMode = defaultMode;
+    }
+
+    public void setDefaultExecutor(Executor defaultExecutor) {
+        Ensure.notNull(defaultExecutor, "defaultExecutor");
+        this.defaultExecutor = defaultExecutor;
+    }
+
+    public void registerExecutor(String name, Executor executor) {
+        Ensure.notNullOrEmpty(name, "name");
+        Ensure.notNull(executor, "executor");
+        executorDict.put(name, executor);
+    }
+
+    /**
+     * 注册一个有界线程池，队列满时拒绝执行，处理失败后由IOHelper重试
+     */
+    public void registerExecutor(String name, int threadCount, int queueCapacity) {
+        Ensure.positive(threadCount, "threadCount");
+        Ensure.positive(queueCapacity, "queueCapacity");
+        ExecutorService executor = new ThreadPoolExecutor(threadCount, threadCount,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MessageHandler-" + name + "-%d").build());
+        registerExecutor(name, executor);
+        ExecutorService oldExecutor = ownedExecutorDict.put(name, executor);
+        if (oldExecutor != null) {
+            oldExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 不修改处理器代码时按处理器类型配置执行方式，优先于注解
+     */
+    public void setHandlerExecution(Class handlerType, ExecutionMode mode, String executorName) {
+        Ensure.notNull(handlerType, "handlerType");
+        Ensure.notNull(mode, "mode");
+        handlerExecutionDict.put(handlerType, new ExecutionSetting(mode, executorName == null ? "" : executorName));
+    }
+
+    public void shutdown() {
+        ownedExecutorDict.values().forEach(ExecutorService::shutdown);
+    }
+
+    HandlerExecution resolve(Class handlerType, Method method) {
+        if (CompletableFuture.class.isAssignableFrom(method.getReturnType())) {
+            return new HandlerExecution(ExecutionMode.ASYNC, null);
+        }
+        Execution execution = handlerExecutionDict.get(handlerType);
+        if (execution == null || execution.value() == ExecutionMode.DEFAULT) {
+            execution = method.getAnnotation(Execution.class);
+        }
+        if (execution == null || execution.value() == ExecutionMode.DEFAULT) {
+            execution = (Execution) handlerType.getAnnotation(Execution.class);
+        }
+        ExecutionMode mode = execution == null || execution.value() == ExecutionMode.DEFAULT ? defaultMode : execution.value();
+        if (mode == ExecutionMode.ASYNC) {
+            throw new IllegalStateException(String.format("Handler method should return CompletableFuture when execution mode is ASYNC, handlerType: %s, method: %s", handlerType.getName(), method));
+        }
+        if (mode == ExecutionMode.INLINE) {
+            return new HandlerExecution(ExecutionMode.INLINE, null);
+        }
+        String executorName = execution == null ? "" : execution.executor();
+        if (executorName.isEmpty()) {
+            return new HandlerExecution(ExecutionMode.EXECUTOR, defaultExecutor);
+        }
+        Executor executor = executorDict.get(executorName);
+        if (executor == null) {
+            throw new IllegalStateException(String.format("Handler executor [%s] is not registered, handlerType: %s", executorName, handlerType.getName()));
+        }
+        return new HandlerExecution(ExecutionMode.EXECUTOR, executor);
+    }
+
+    /**
+     * 以注解的形式保存按处理器类型的配置，解析时与注解统一处理
+     */
+    private static class ExecutionSetting implements Execution {
+        private final ExecutionMode mode;
+        private final String executor;
+
+        private ExecutionSetting(ExecutionMode mode, String executor) {
+            this.mode = mode;
+            this.executor = executor;
+        }
+
+        @Override
+        public ExecutionMode value() {
+            return mode;
+        }
+
+        @Override
+        public String executor() {
+            return executor;
+        }
+
+        @Override
+        public Class<Execution> annotationType() {
+            return Execution.class;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.enodeframework.infrastructure.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -19,6 +21,27 @@ public class ManyType {
         return types;
     }
 
+    /**
+     * 所有类型的全排列，即能匹配该ManyType的所有有序消息类型列表
+     */
+    public List<List<Class>> getPermutations() {
+        List<List<Class>> permutations = new ArrayList<>();
+        permute(new ArrayList<>(types), 0, permutations);
+        return permutations;
+    }
+
+    private void permute(List<Class> current, int index, List<List<Class>> permutations) {
+        if (index == current.size()) {
+            permutations.add(new ArrayList<>(current));
+            return;
+        }
+        for (int i = index; i < current.size(); i++) {
+            Collections.swap(current, index, i);
+            permute(current, index + 1, permutations);
+            Collections.swap(current, index, i);
+        }
+    }
+
     @Override
     public int hashCode() {
         return types.stream().map(Object::hashCode).reduce((x, y) -> x ^ y).get();
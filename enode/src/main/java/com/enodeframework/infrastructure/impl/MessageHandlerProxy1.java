@@ -1,13 +1,13 @@
 package com.enodeframework.infrastructure.impl;
 
 import com.enodeframework.common.container.IObjectContainer;
+import com.enodeframework.common.function.Func2;
 import com.enodeframework.common.io.AsyncTaskResult;
 import com.enodeframework.infrastructure.IMessage;
 import com.enodeframework.infrastructure.IMessageHandlerProxy1;
-import com.enodeframework.infrastructure.WrappedRuntimeException;
+import com.enodeframework.infrastructure.MethodInvokerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.concurrent.CompletableFuture;
 
@@ -16,23 +16,31 @@ public class MessageHandlerProxy1 implements IMessageHandlerProxy1 {
     @Autowired
     private IObjectContainer objectContainer;
 
+    @Autowired
+    private HandlerExecutionRegistry executionRegistry;
+
     private Class handlerType;
 
     private Object handler;
 
-    private MethodHandle methodHandle;
+    private Func2<Object, IMessage, Object> invoker;
 
     private Method method;
 
+    private volatile HandlerExecution execution;
+
     @Override
     public CompletableFuture<AsyncTaskResult> handleAsync(IMessage message) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return (AsyncTaskResult) methodHandle.invoke(getInnerObject(), message);
-            } catch (Throwable throwable) {
-                throw new WrappedRuntimeException(throwable);
-            }
-        });
+        return getExecution().execute(() -> invoker.apply(getInnerObject(), message));
+    }
+
+    private HandlerExecution getExecution() {
+        HandlerExecution handlerExecution = execution;
+        if (handlerExecution == null) {
+            handlerExecution = executionRegistry.resolve(handlerType, method);
+            execution = handlerExecution;
+        }
+        return handlerExecution;
     }
 
     @Override
@@ -49,11 +57,6 @@ public class MessageHandlerProxy1 implements IMessageHandlerProxy1 {
         this.handlerType = handlerType;
     }
 
-    @Override
-    public void setMethodHandle(MethodHandle methodHandle) {
-        this.methodHandle = methodHandle;
-    }
-
     @Override
     public Method getMethod() {
         return method;
@@ -62,6 +65,7 @@ public class MessageHandlerProxy1 implements IMessageHandlerProxy1 {
     @Override
     public void setMethod(Method method) {
         this.method = method;
+        this.invoker = MethodInvokerFactory.create(Func2.class, method);
     }
 
 }
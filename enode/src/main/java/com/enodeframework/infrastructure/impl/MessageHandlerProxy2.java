@@ -1,13 +1,13 @@
 package com.enodeframework.infrastructure.impl;
 
 import com.enodeframework.common.container.IObjectContainer;
+import com.enodeframework.common.function.Func3;
 import com.enodeframework.common.io.AsyncTaskResult;
 import com.enodeframework.infrastructure.IMessage;
 import com.enodeframework.infrastructure.IMessageHandlerProxy2;
-import com.enodeframework.infrastructure.WrappedRuntimeException;
+import com.enodeframework.infrastructure.MethodInvokerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.concurrent.CompletableFuture;
 
@@ -16,32 +16,42 @@ public class MessageHandlerProxy2 implements IMessageHandlerProxy2 {
     @Autowired
     private IObjectContainer objectContainer;
 
+    @Autowired
+    private HandlerExecutionRegistry executionRegistry;
+
     private Class handlerType;
 
     private Object handler;
 
-    private MethodHandle methodHandle;
+    private Func3<Object, IMessage, IMessage, Object> invoker;
 
     private Method method;
 
+    private volatile HandlerExecution execution;
+
     private Class<?>[] methodParameterTypes;
 
     @Override
     public CompletableFuture<AsyncTaskResult> handleAsync(IMessage message1, IMessage message2) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                if (methodParameterTypes[0].isAssignableFrom(message1.getClass())) {
-                    return (AsyncTaskResult) methodHandle.invoke(getInnerObject(), message1, message2);
-                } else {
-                    return (AsyncTaskResult) methodHandle.invoke(getInnerObject(), message2, message1);
-                }
-            } catch (Throwable throwable) {
-                throw new WrappedRuntimeException(throwable);
+        return getExecution().execute(() -> {
+            if (methodParameterTypes[0].isAssignableFrom(message1.getClass())) {
+                return invoker.apply(getInnerObject(), message1, message2);
+            } else {
+                return invoker.apply(getInnerObject(), message2, message1);
             }
         });
     }
 
 
+    private HandlerExecution getExecution() {
+        HandlerExecution handlerExecution = execution;
+        if (handlerExecution == null) {
+            handlerExecution = executionRegistry.resolve(handlerType, method);
+            execution = handlerExecution;
+        }
+        return handlerExecution;
+    }
+
     @Override
     public Object getInnerObject() {
         if (handler != null) {
@@ -56,11 +66,6 @@ public class MessageHandlerProxy2 implements IMessageHandlerProxy2 {
         this.handlerType = handlerType;
     }
 
-    @Override
-    public void setMethodHandle(MethodHandle methodHandle) {
-        this.methodHandle = methodHandle;
-    }
-
     @Override
     public Method getMethod() {
         return method;
@@ -69,6 +74,7 @@ public class MessageHandlerProxy2 implements IMessageHandlerProxy2 {
     @Override
     public void setMethod(Method method) {
         this.method = method;
+        this.invoker = MethodInvokerFactory.create(Func3.class, method);
         methodParameterTypes = method.getParameterTypes();
     }
 
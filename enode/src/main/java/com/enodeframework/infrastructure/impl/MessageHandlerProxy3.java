@@ -1,12 +1,13 @@
 package com.enodeframework.infrastructure.impl;
 
 import com.enodeframework.common.container.IObjectContainer;
+import com.enodeframework.common.function.Func4;
 import com.enodeframework.common.io.AsyncTaskResult;
 import com.enodeframework.infrastructure.IMessage;
 import com.enodeframework.infrastructure.IMessageHandlerProxy3;
+import com.enodeframework.infrastructure.MethodInvokerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,19 +20,24 @@ public class MessageHandlerProxy3 implements IMessageHandlerProxy3 {
     @Autowired
     private IObjectContainer objectContainer;
 
+    @Autowired
+    private HandlerExecutionRegistry executionRegistry;
+
     private Class handlerType;
 
     private Object handler;
 
-    private MethodHandle methodHandle;
+    private Func4<Object, IMessage, IMessage, IMessage, Object> invoker;
 
     private Method method;
 
+    private volatile HandlerExecution execution;
+
     private Class<?>[] methodParameterTypes;
 
     @Override
     public CompletableFuture<AsyncTaskResult> handleAsync(IMessage message1, IMessage message2, IMessage message3) {
-        return CompletableFuture.supplyAsync(() -> {
+        return getExecution().execute(() -> {
             List<Class<?>> parameterTypes = Arrays.asList(methodParameterTypes);
             List<IMessage> params = new ArrayList<>();
             params.add(message1);
@@ -40,12 +46,8 @@ public class MessageHandlerProxy3 implements IMessageHandlerProxy3 {
             //排序参数
             params.sort(Comparator.comparingInt(m -> getMessageParameterIndex(parameterTypes, m))
             );
-            try {
-                //参数按照方法定义参数类型列表传递
-                return (AsyncTaskResult) methodHandle.invoke(getInnerObject(), params.get(0), params.get(1), params.get(2));
-            } catch (Throwable throwable) {
-                throw new RuntimeException(throwable);
-            }
+            //参数按照方法定义参数类型列表传递
+            return invoker.apply(getInnerObject(), params.get(0), params.get(1), params.get(2));
         });
     }
 
@@ -60,6 +62,15 @@ public class MessageHandlerProxy3 implements IMessageHandlerProxy3 {
         return i;
     }
 
+    private HandlerExecution getExecution() {
+        HandlerExecution handlerExecution = execution;
+        if (handlerExecution == null) {
+            handlerExecution = executionRegistry.resolve(handlerType, method);
+            execution = handlerExecution;
+        }
+        return handlerExecution;
+    }
+
     @Override
     public Object getInnerObject() {
         if (handler != null) {
@@ -74,11 +85,6 @@ public class MessageHandlerProxy3 implements IMessageHandlerProxy3 {
         this.handlerType = handlerType;
     }
 
-    @Override
-    public void setMethodHandle(MethodHandle methodHandle) {
-        this.methodHandle = methodHandle;
-    }
-
     @Override
     public Method getMethod() {
         return method;
@@ -87,6 +93,7 @@ public class MessageHandlerProxy3 implements IMessageHandlerProxy3 {
     @Override
     public void setMethod(Method method) {
         this.method = method;
+        this.invoker = MethodInvokerFactory.create(Func4.class, method);
         methodParameterTypes = method.getParameterTypes();
     }
 
@@ -0,0 +1,8 @@
+package com.enodeframework.metrics;
+
+public interface ICounter {
+
+    void increment();
+
+    void increment(long amount);
+}
@@ -0,0 +1,19 @@
+package com.enodeframework.metrics;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 指标SPI，tags为key、value交替排列；
+ * counter和timer的创建有开销，调用方应在初始化时创建并缓存，热点路径上只调用increment和record
+ */
+public interface IMetrics {
+
+    ICounter counter(String name, String... tags);
+
+    ITimer timer(String name, String... tags);
+
+    /**
+     * 注册一个在采集时才计算的指标，valueFunction需要线程安全
+     */
+    <T> void gauge(String name, T target, ToDoubleFunction<T> valueFunction, String... tags);
+}
@@ -0,0 +1,19 @@
+package com.enodeframework.metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public interface ITimer {
+
+    void record(long amount, TimeUnit unit);
+
+    /**
+     * 记录future从现在到完成（包括异常完成）的耗时，返回原future；
+     * 每次调用会挂接一个完成阶段，框架的热点路径在已有的完成回调中直接调用record
+     */
+    default <T> CompletableFuture<T> recordAsync(CompletableFuture<T> future) {
+        long startTime = System.nanoTime();
+        future.whenComplete((result, ex) -> record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS));
+        return future;
+    }
+}
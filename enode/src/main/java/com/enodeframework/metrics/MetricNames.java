@@ -0,0 +1,25 @@
+package com.enodeframework.metrics;
+
+public class MetricNames {
+    public static final String COMMAND_MAILBOX_COUNT = "enode.command.mailbox.count";
+    public static final String COMMAND_MAILBOX_DEPTH = "enode.command.mailbox.depth";
+    public static final String COMMAND_MAILBOX_MAX_DEPTH = "enode.command.mailbox.depth.max";
+    public static final String EVENT_MAILBOX_COUNT = "enode.event.mailbox.count";
+    public static final String EVENT_MAILBOX_BACKLOG = "enode.event.mailbox.backlog";
+    public static final String EVENT_STORE_APPEND = "enode.eventstore.append";
+    public static final String EVENT_STORE_QUERY = "enode.eventstore.query";
+    public static final String IO_RETRY = "enode.io.retry";
+    public static final String HANDLER_DURATION = "enode.handler.duration";
+    public static final String COMMAND_DURATION = "enode.command.duration";
+    public static final String COMMAND_FILTER = "enode.command.filter";
+    public static final String MEMORY_CACHE_ACCESS = "enode.memorycache.access";
+    public static final String MEMORY_CACHE_REMOVAL = "enode.memorycache.removal";
+    public static final String MEMORY_CACHE_SIZE = "enode.memorycache.size";
+
+    public static final String TAG_ACTION = "action";
+    public static final String TAG_HANDLER = "handler";
+    public static final String TAG_MODE = "mode";
+    public static final String TAG_RETURN_TYPE = "returnType";
+    public static final String TAG_RESULT = "result";
+    public static final String TAG_CAUSE = "cause";
+}
@@ -0,0 +1,52 @@
+package com.enodeframework.metrics.impl;
+
+import com.enodeframework.metrics.ICounter;
+import com.enodeframework.metrics.IMetrics;
+import com.enodeframework.metrics.ITimer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 默认的空实现，不记录任何指标
+ */
+public class NoopMetrics implements IMetrics {
+
+    public static final NoopMetrics INSTANCE = new NoopMetrics();
+
+    private static final ICounter NOOP_COUNTER = new ICounter() {
+        @Override
+        public void increment() {
+        }
+
+        @Override
+        public void increment(long amount) {
+        }
+    };
+
+    private static final ITimer NOOP_TIMER = new ITimer() {
+        @Override
+        public void record(long amount, TimeUnit unit) {
+        }
+
+        @Override
+        public <T> CompletableFuture<T> recordAsync(CompletableFuture<T> future) {
+            return future;
+        }
+    };
+
+    @Override
+    public ICounter counter(String name, String... tags) {
+        return NOOP_COUNTER;
+    }
+
+    @Override
+    public ITimer timer(String name, String... tags) {
+        return NOOP_TIMER;
+    }
+
+    @Override
+    public <T> void gauge(String name, T target, ToDoubleFunction<T> valueFunction, String... tags) {
+    }
+}
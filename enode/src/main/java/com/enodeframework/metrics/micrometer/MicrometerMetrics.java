@@ -0,0 +1,53 @@
+package com.enodeframework.metrics.micrometer;
+
+import com.enodeframework.common.utilities.Ensure;
+import com.enodeframework.metrics.ICounter;
+import com.enodeframework.metrics.IMetrics;
+import com.enodeframework.metrics.ITimer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer绑定，micrometer-core为可选依赖，使用时声明为bean：
+ * new MicrometerMetrics(meterRegistry)；timer默认发布直方图，便于在监控系统中计算分位数
+ */
+public class MicrometerMetrics implements IMetrics {
+
+    private final MeterRegistry registry;
+
+    public MicrometerMetrics(MeterRegistry registry) {
+        Ensure.notNull(registry, "registry");
+        this.registry = registry;
+    }
+
+    @Override
+    public ICounter counter(String name, String... tags) {
+        Counter counter = Counter.builder(name).tags(tags).register(registry);
+        return new ICounter() {
+            @Override
+            public void increment() {
+                counter.increment();
+            }
+
+            @Override
+            public void increment(long amount) {
+                counter.increment(amount);
+            }
+        };
+    }
+
+    @Override
+    public ITimer timer(String name, String... tags) {
+        Timer timer = Timer.builder(name).tags(tags).publishPercentileHistogram().register(registry);
+        return (amount, unit) -> timer.record(amount, unit);
+    }
+
+    @Override
+    public <T> void gauge(String name, T target, ToDoubleFunction<T> valueFunction, String... tags) {
+        Gauge.builder(name, target, valueFunction).tags(tags).register(registry);
+    }
+}
@@ -3,6 +3,7 @@ package com.enodeframework.queue.applicationmessage;
 import com.enodeframework.common.serializing.IJsonSerializer;
 import com.enodeframework.infrastructure.IApplicationMessage;
 import com.enodeframework.infrastructure.IMessagePublisher;
+import com.enodeframework.infrastructure.ITypeNameProvider;
 import com.enodeframework.queue.QueueMessage;
 import com.enodeframework.queue.QueueMessageTypeCode;
 import com.enodeframework.queue.TopicData;
@@ -13,6 +14,9 @@ public abstract class AbstractApplicationMessagePublisher implements IMessagePub
     @Autowired
     protected IJsonSerializer jsonSerializer;
 
+    @Autowired
+    protected ITypeNameProvider typeNameProvider;
+
     protected TopicData topicData;
 
     public TopicData getTopicData() {
@@ -25,7 +29,7 @@ public abstract class AbstractApplicationMessagePublisher implements IMessagePub
 
     protected QueueMessage createApplicationMessage(IApplicationMessage message) {
         String appMessageData = jsonSerializer.serialize(message);
-        ApplicationDataMessage appDataMessage = new ApplicationDataMessage(appMessageData, message.getClass().getName());
+        ApplicationDataMessage appDataMessage = new ApplicationDataMessage(appMessageData, typeNameProvider.getTypeName(message.getClass()));
         String data = jsonSerializer.serialize(appDataMessage);
         String routeKey = message.getRoutingKey() != null ? message.getRoutingKey() : message.id();
         QueueMessage queueMessage = new QueueMessage();
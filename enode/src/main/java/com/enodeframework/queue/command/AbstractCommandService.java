@@ -6,6 +6,7 @@ import com.enodeframework.commanding.ICommandService;
 import com.enodeframework.common.remoting.common.RemotingUtil;
 import com.enodeframework.common.serializing.IJsonSerializer;
 import com.enodeframework.common.utilities.Ensure;
+import com.enodeframework.infrastructure.ITypeNameProvider;
 import com.enodeframework.queue.QueueMessage;
 import com.enodeframework.queue.QueueMessageTypeCode;
 import com.enodeframework.queue.TopicData;
@@ -22,6 +23,9 @@ public abstract class AbstractCommandService implements ICommandService {
     @Autowired
     protected CommandResultProcessor commandResultProcessor;
 
+    @Autowired
+    protected ITypeNameProvider typeNameProvider;
+
     protected TopicData topicData;
 
     public TopicData getTopicData() {
@@ -36,7 +40,7 @@ public abstract class AbstractCommandService implements ICommandService {
         Ensure.notNull(command.getAggregateRootId(), "aggregateRootId");
         String commandData = jsonSerializer.serialize(command);
         String replyAddress = needReply && commandResultProcessor != null ? RemotingUtil.parseAddress(commandResultProcessor.getBindingAddress()) : null;
-        String messageData = jsonSerializer.serialize(new CommandMessage(commandData, replyAddress, command.getClass().getName()));
+        String messageData = jsonSerializer.serialize(new CommandMessage(commandData, replyAddress, typeNameProvider.getTypeName(command.getClass())));
         //命令唯一id，聚合根id
         String key = String.format("%s%s", command.id(), command.getAggregateRootId() == null ? "" : "cmd_agg_" + command.getAggregateRootId());
         QueueMessage queueMessage = new QueueMessage();
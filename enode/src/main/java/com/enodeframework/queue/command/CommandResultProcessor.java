@@ -13,6 +13,10 @@ import com.enodeframework.common.remoting.netty.NettyServerConfig;
 import com.enodeframework.common.remoting.protocol.RemotingCommand;
 import com.enodeframework.common.scheduling.Worker;
 import com.enodeframework.common.serializing.IJsonSerializer;
+import com.enodeframework.metrics.IMetrics;
+import com.enodeframework.metrics.ITimer;
+import com.enodeframework.metrics.MetricNames;
+import com.enodeframework.metrics.impl.NoopMetrics;
 import com.enodeframework.queue.domainevent.DomainEventHandledMessage;
 import io.netty.channel.ChannelHandlerContext;
 import org.slf4j.Logger;
@@ -26,6 +30,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class CommandResultProcessor implements NettyRequestProcessor {
 
@@ -33,6 +38,8 @@ public class CommandResultProcessor implements NettyRequestProcessor {
 
     private static final Charset CHARSETUTF8 = Charset.forName("UTF-8");
 
+    private static final int DEFAULT_MAX_QUEUE_SIZE = 100000;
+
     public SocketAddress bindingAddress;
 
     private RemotingServer remotingServer;
@@ -50,9 +57,23 @@ public class CommandResultProcessor implements NettyRequestProcessor {
     @Autowired
     private IJsonSerializer jsonSerializer;
 
+    @Autowired(required = false)
+    private IMetrics metrics = NoopMetrics.INSTANCE;
+
+    private ITimer commandExecutedTimer = NoopMetrics.INSTANCE.timer(MetricNames.COMMAND_DURATION);
+
+    private ITimer eventHandledTimer = NoopMetrics.INSTANCE.timer(MetricNames.COMMAND_DURATION);
+
     private boolean started;
 
     public CommandResultProcessor(int listenPort) {
+        this(listenPort, DEFAULT_MAX_QUEUE_SIZE);
+    }
+
+    /**
+     * @param maxQueueSize 本地待处理的命令结果队列长度上限，超过时拒绝新的请求，避免处理变慢时内存无限增长
+     */
+    public CommandResultProcessor(int listenPort, int maxQueueSize) {
         NettyServerConfig nettyServerConfig = new NettyServerConfig();
         nettyServerConfig.setListenPort(listenPort);
         nettyServerConfig.setServerChannelMaxIdleTimeSeconds(3600);
@@ -60,8 +81,8 @@ public class CommandResultProcessor implements NettyRequestProcessor {
         remotingServer.registerProcessor(CommandReturnType.CommandExecuted.getValue(), this);
         remotingServer.registerProcessor(CommandReturnType.EventHandled.getValue(), this);
         commandTaskDict = new ConcurrentHashMap<>();
-        commandExecutedMessageLocalQueue = new LinkedBlockingQueue<>();
-        domainEventHandledMessageLocalQueue = new LinkedBlockingQueue<>();
+        commandExecutedMessageLocalQueue = new LinkedBlockingQueue<>(maxQueueSize);
+        domainEventHandledMessageLocalQueue = new LinkedBlockingQueue<>(maxQueueSize);
         commandExecutedMessageWorker = new Worker("ProcessExecutedCommandMessage", () -> processExecutedCommandMessage(commandExecutedMessageLocalQueue.take()));
         domainEventHandledMessageWorker = new Worker("ProcessDomainEventHandledMessage", () -> processDomainEventHandledMessage(domainEventHandledMessageLocalQueue.take()));
     }
@@ -78,7 +99,9 @@ public class CommandResultProcessor implements NettyRequestProcessor {
 
         if (commandTaskCompletionSource != null) {
             CommandResult commandResult = new CommandResult(CommandStatus.Failed, command.id(), command.getAggregateRootId(), "Failed to send the command.", String.class.getName());
-            commandTaskCompletionSource.getTaskCompletionSource().complete(new AsyncTaskResult<>(AsyncTaskStatus.Success, commandResult));
+            if (commandTaskCompletionSource.getTaskCompletionSource().complete(new AsyncTaskResult<>(AsyncTaskStatus.Success, commandResult))) {
+                recordCommandDuration(commandTaskCompletionSource);
+            }
         }
     }
 
@@ -86,6 +109,8 @@ public class CommandResultProcessor implements NettyRequestProcessor {
         if (started) {
             return this;
         }
+        commandExecutedTimer = metrics.timer(MetricNames.COMMAND_DURATION, MetricNames.TAG_RETURN_TYPE, CommandReturnType.CommandExecuted.name());
+        eventHandledTimer = metrics.timer(MetricNames.COMMAND_DURATION, MetricNames.TAG_RETURN_TYPE, CommandReturnType.EventHandled.name());
         remotingServer.start();
         bindingAddress = remotingServer.bindAddress();
         commandExecutedMessageWorker.start();
@@ -111,11 +136,15 @@ public class CommandResultProcessor implements NettyRequestProcessor {
         if (request.getCode() == CommandReturnType.CommandExecuted.getValue()) {
             String body = new String(request.getBody(), CHARSETUTF8);
             CommandResult result = jsonSerializer.deserialize(body, CommandResult.class);
-            commandExecutedMessageLocalQueue.add(result);
+            if (!commandExecutedMessageLocalQueue.offer(result)) {
+                logger.warn("Command executed message queue is full, command result discarded, {}", result);
+            }
         } else if (request.getCode() == CommandReturnType.EventHandled.getValue()) {
             String body = new String(request.getBody(), CHARSETUTF8);
             DomainEventHandledMessage message = jsonSerializer.deserialize(body, DomainEventHandledMessage.class);
-            domainEventHandledMessageLocalQueue.add(message);
+            if (!domainEventHandledMessageLocalQueue.offer(message)) {
+                logger.warn("Domain event handled message queue is full, message discarded, commandId: {}", message.getCommandId());
+            }
         } else {
             logger.error("Invalid remoting request: {}", request);
         }
@@ -124,7 +153,19 @@ public class CommandResultProcessor implements NettyRequestProcessor {
 
     @Override
     public boolean rejectRequest() {
-        return false;
+        return commandExecutedMessageLocalQueue.remainingCapacity() == 0 || domainEventHandledMessageLocalQueue.remainingCapacity() == 0;
+    }
+
+    public int getCommandExecutedMessageQueueSize() {
+        return commandExecutedMessageLocalQueue.size();
+    }
+
+    public int getDomainEventHandledMessageQueueSize() {
+        return domainEventHandledMessageLocalQueue.size();
+    }
+
+    public int getPendingCommandCount() {
+        return commandTaskDict.size();
     }
 
     private void processExecutedCommandMessage(CommandResult commandResult) {
@@ -135,6 +176,7 @@ public class CommandResultProcessor implements NettyRequestProcessor {
                 commandTaskDict.remove(commandResult.getCommandId());
 
                 if (commandTaskCompletionSource.getTaskCompletionSource().complete(new AsyncTaskResult<>(AsyncTaskStatus.Success, commandResult))) {
+                    recordCommandDuration(commandTaskCompletionSource);
                     if (logger.isDebugEnabled()) {
                         logger.debug("Command result return, {}", commandResult);
                     }
@@ -143,6 +185,7 @@ public class CommandResultProcessor implements NettyRequestProcessor {
                 if (commandResult.getStatus().equals(CommandStatus.Failed) || commandResult.getStatus().equals(CommandStatus.NothingChanged)) {
                     commandTaskDict.remove(commandResult.getCommandId());
                     if (commandTaskCompletionSource.getTaskCompletionSource().complete(new AsyncTaskResult<>(AsyncTaskStatus.Success, commandResult))) {
+                        recordCommandDuration(commandTaskCompletionSource);
                         if (logger.isDebugEnabled()) {
                             logger.debug("Command result return, {}", commandResult);
                         }
@@ -158,6 +201,7 @@ public class CommandResultProcessor implements NettyRequestProcessor {
             CommandResult commandResult = new CommandResult(CommandStatus.Success, message.getCommandId(), message.getAggregateRootId(), message.getCommandResult(), message.getCommandResult() != null ? String.class.getName() : null);
 
             if (commandTaskCompletionSource.getTaskCompletionSource().complete(new AsyncTaskResult<>(AsyncTaskStatus.Success, commandResult))) {
+                recordCommandDuration(commandTaskCompletionSource);
                 if (logger.isDebugEnabled()) {
                     logger.debug("Command result return, {}", commandResult);
                 }
@@ -165,7 +209,16 @@ public class CommandResultProcessor implements NettyRequestProcessor {
         }
     }
 
+    /**
+     * 从注册命令到命令结果返回的耗时
+     */
+    private void recordCommandDuration(CommandTaskCompletionSource commandTaskCompletionSource) {
+        ITimer timer = commandTaskCompletionSource.getCommandReturnType() == CommandReturnType.EventHandled ? eventHandledTimer : commandExecutedTimer;
+        timer.record(System.nanoTime() - commandTaskCompletionSource.getStartTime(), TimeUnit.NANOSECONDS);
+    }
+
     class CommandTaskCompletionSource {
+        private final long startTime = System.nanoTime();
         private com.enodeframework.commanding.CommandReturnType commandReturnType;
         private CompletableFuture<AsyncTaskResult<CommandResult>> taskCompletionSource;
 
@@ -182,6 +235,10 @@ public class CommandResultProcessor implements NettyRequestProcessor {
             this.commandReturnType = commandReturnType;
         }
 
+        public long getStartTime() {
+            return startTime;
+        }
+
         public CompletableFuture<AsyncTaskResult<CommandResult>> getTaskCompletionSource() {
             return taskCompletionSource;
         }
@@ -3,6 +3,7 @@ package com.enodeframework.queue.domainevent;
 import com.enodeframework.commanding.CommandReturnType;
 import com.enodeframework.common.serializing.IJsonSerializer;
 import com.enodeframework.eventing.DomainEventStreamMessage;
+import com.enodeframework.eventing.EventEnvelope;
 import com.enodeframework.eventing.IDomainEvent;
 import com.enodeframework.eventing.IEventSerializer;
 import com.enodeframework.infrastructure.IMessageProcessor;
@@ -16,6 +17,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
+
 public abstract class AbstractDomainEventListener implements IMessageHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractDomainEventListener.class);
@@ -45,8 +48,16 @@ public abstract class AbstractDomainEventListener implements IMessageHandler {
 
     @Override
     public void handle(QueueMessage queueMessage, IMessageContext context) {
-        EventStreamMessage message = jsonSerializer.deserialize(queueMessage.getBody(), EventStreamMessage.class);
-        DomainEventStreamMessage domainEventStreamMessage = convertToDomainEventStream(message);
+        String body = queueMessage.getBody();
+        DomainEventStreamMessage domainEventStreamMessage;
+        if (EventEnvelope.isEnvelope(body)) {
+            String[] parts = EventEnvelope.unwrap(body);
+            EventStreamMessage message = jsonSerializer.deserialize(parts[0], EventStreamMessage.class);
+            domainEventStreamMessage = convertToDomainEventStream(message, eventSerializer.deserializeFromString(parts[1], IDomainEvent.class));
+        } else {
+            EventStreamMessage message = jsonSerializer.deserialize(body, EventStreamMessage.class);
+            domainEventStreamMessage = convertToDomainEventStream(message, eventSerializer.deserialize(message.getEvents(), IDomainEvent.class));
+        }
         DomainEventStreamProcessContext processContext = new DomainEventStreamProcessContext(AbstractDomainEventListener.this, domainEventStreamMessage, queueMessage, context);
         ProcessingDomainEventStreamMessage processingMessage = new ProcessingDomainEventStreamMessage(domainEventStreamMessage, processContext);
         logger.info("ENode event message received, messageId: {}, aggregateRootId: {}, aggregateRootType: {}, version: {}", domainEventStreamMessage.id(), domainEventStreamMessage.aggregateRootStringId(), domainEventStreamMessage.aggregateRootTypeName(), domainEventStreamMessage.version());
@@ -54,13 +65,13 @@ public abstract class AbstractDomainEventListener implements IMessageHandler {
     }
 
 
-    private DomainEventStreamMessage convertToDomainEventStream(EventStreamMessage message) {
+    private DomainEventStreamMessage convertToDomainEventStream(EventStreamMessage message, List<IDomainEvent> events) {
         DomainEventStreamMessage domainEventStreamMessage = new DomainEventStreamMessage(
                 message.getCommandId(),
                 message.getAggregateRootId(),
                 message.getVersion(),
                 message.getAggregateRootTypeName(),
-                eventSerializer.deserialize(message.getEvents(), IDomainEvent.class),
+                events,
                 message.getItems()
         );
         domainEventStreamMessage.setId(message.getId());
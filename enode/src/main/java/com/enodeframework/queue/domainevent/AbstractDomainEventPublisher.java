@@ -3,6 +3,7 @@ package com.enodeframework.queue.domainevent;
 import com.enodeframework.common.serializing.IJsonSerializer;
 import com.enodeframework.common.utilities.Ensure;
 import com.enodeframework.eventing.DomainEventStreamMessage;
+import com.enodeframework.eventing.EventEnvelope;
 import com.enodeframework.eventing.IEventSerializer;
 import com.enodeframework.infrastructure.IMessagePublisher;
 import com.enodeframework.queue.QueueMessage;
@@ -31,7 +32,14 @@ public abstract class AbstractDomainEventPublisher implements IMessagePublisher<
     protected QueueMessage createDomainEventStreamMessage(DomainEventStreamMessage eventStream) {
         Ensure.notNull(eventStream.aggregateRootId(), "aggregateRootId");
         EventStreamMessage eventMessage = createEventMessage(eventStream);
-        String data = jsonSerializer.serialize(eventMessage);
+        String data;
+        if (eventSerializer.isEnvelopeFormat()) {
+            //事件包直接拼接在消息头之后，避免事件JSON被再次转义
+            data = EventEnvelope.wrap(jsonSerializer.serialize(eventMessage), eventSerializer.serializeToString(eventStream.getEvents()));
+        } else {
+            eventMessage.setEvents(eventSerializer.serialize(eventStream.getEvents()));
+            data = jsonSerializer.serialize(eventMessage);
+        }
         String routeKey = eventStream.getRoutingKey() != null ? eventStream.getRoutingKey() : eventMessage.getAggregateRootId();
         QueueMessage queueMessage = new QueueMessage();
         queueMessage.setCode(QueueMessageTypeCode.DomainEventStreamMessage.getValue());
@@ -52,7 +60,6 @@ public abstract class AbstractDomainEventPublisher implements IMessagePublisher<
         message.setAggregateRootId(eventStream.aggregateRootId());
         message.setTimestamp(eventStream.timestamp());
         message.setVersion(eventStream.version());
-        message.setEvents(eventSerializer.serialize(eventStream.getEvents()));
         message.setItems(eventStream.getItems());
         return message;
     }
@@ -4,6 +4,7 @@ import com.enodeframework.common.serializing.IJsonSerializer;
 import com.enodeframework.infrastructure.IMessagePublisher;
 import com.enodeframework.infrastructure.IPublishableException;
 import com.enodeframework.infrastructure.ISequenceMessage;
+import com.enodeframework.infrastructure.ITypeNameProvider;
 import com.enodeframework.queue.QueueMessage;
 import com.enodeframework.queue.QueueMessageTypeCode;
 import com.enodeframework.queue.TopicData;
@@ -17,6 +18,9 @@ public abstract class AbstractPublishableExceptionPublisher implements IMessageP
     @Autowired
     protected IJsonSerializer jsonSerializer;
 
+    @Autowired
+    protected ITypeNameProvider typeNameProvider;
+
     protected TopicData topicData;
 
     public TopicData getTopicData() {
@@ -38,7 +42,7 @@ public abstract class AbstractPublishableExceptionPublisher implements IMessageP
         exceptionMessage.setUniqueId(exception.id());
         exceptionMessage.setAggregateRootTypeName(sequenceMessage != null ? sequenceMessage.aggregateRootTypeName() : null);
         exceptionMessage.setAggregateRootId(sequenceMessage != null ? sequenceMessage.aggregateRootStringId() : null);
-        exceptionMessage.setExceptionType(exception.getClass().getName());
+        exceptionMessage.setExceptionType(typeNameProvider.getTypeName(exception.getClass()));
         exceptionMessage.setTimestamp(exception.timestamp());
         exceptionMessage.setSerializableInfo(serializableInfo);
         String data = jsonSerializer.serialize(exceptionMessage);
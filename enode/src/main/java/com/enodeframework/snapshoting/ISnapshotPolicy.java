@@ -0,0 +1,18 @@
+package com.enodeframework.snapshoting;
+
+import com.enodeframework.domain.IAggregateRoot;
+
+/**
+ * 决定何时为聚合根生成快照
+ */
+public interface ISnapshotPolicy {
+    /**
+     * 聚合根的事件流持久化成功后调用，判断该版本是否需要生成快照
+     */
+    boolean shouldTakeSnapshot(String aggregateRootTypeName, String aggregateRootId, int version);
+
+    /**
+     * 聚合根从事件重建后调用，根据重放的事件流个数和耗时判断是否需要生成快照
+     */
+    boolean shouldTakeSnapshot(IAggregateRoot aggregateRoot, int replayedEventStreamCount, long replayMillis);
+}
@@ -0,0 +1,20 @@
+package com.enodeframework.snapshoting;
+
+import com.enodeframework.common.io.AsyncTaskResult;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 聚合根快照的存储，每个聚合根只保留版本最高的一份快照
+ */
+public interface ISnapshotStore {
+    /**
+     * 保存快照，如果已有更高版本的快照则忽略
+     */
+    CompletableFuture<AsyncTaskResult> saveAsync(Snapshot snapshot);
+
+    /**
+     * 获取聚合根最新的快照，没有则返回null
+     */
+    CompletableFuture<AsyncTaskResult<Snapshot>> getLatestAsync(String aggregateRootId, String aggregateRootTypeName);
+}
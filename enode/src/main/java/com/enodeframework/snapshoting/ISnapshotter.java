@@ -0,0 +1,31 @@
+package com.enodeframework.snapshoting;
+
+import com.enodeframework.domain.IAggregateRoot;
+import com.enodeframework.eventing.DomainEventStream;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 负责聚合根快照的生成和恢复，快照的生成都是异步的，不阻塞命令处理
+ */
+public interface ISnapshotter {
+    /**
+     * 从快照恢复聚合根，没有快照则返回null
+     */
+    <T extends IAggregateRoot> CompletableFuture<T> restoreFromSnapshotAsync(Class<T> aggregateRootType, String aggregateRootId);
+
+    /**
+     * 为已持久化状态的聚合根生成快照，聚合根在调用时立即序列化，保存是异步的
+     */
+    void takeSnapshotAsync(IAggregateRoot aggregateRoot);
+
+    /**
+     * 事件流持久化成功后调用，满足快照策略时在后台加载已持久化的聚合根并生成快照
+     */
+    void onEventStreamPersisted(DomainEventStream eventStream);
+
+    /**
+     * 聚合根从事件重建后调用，重放代价超过快照策略的阈值时生成快照
+     */
+    void onAggregateRebuilt(IAggregateRoot aggregateRoot, int replayedEventStreamCount, long replayMillis);
+}
@@ -0,0 +1,70 @@
+package com.enodeframework.snapshoting;
+
+import java.util.Date;
+
+/**
+ * 聚合根在某个版本时的状态快照
+ */
+public class Snapshot {
+    private String aggregateRootId;
+    private String aggregateRootTypeName;
+    private int version;
+    private String payload;
+    private Date createdOn;
+
+    public Snapshot() {
+    }
+
+    public Snapshot(String aggregateRootId, String aggregateRootTypeName, int version, String payload, Date createdOn) {
+        this.aggregateRootId = aggregateRootId;
+        this.aggregateRootTypeName = aggregateRootTypeName;
+        this.version = version;
+        this.payload = payload;
+        this.createdOn = createdOn;
+    }
+
+    public String getAggregateRootId() {
+        return aggregateRootId;
+    }
+
+    public void setAggregateRootId(String aggregateRootId) {
+        this.aggregateRootId = aggregateRootId;
+    }
+
+    public String getAggregateRootTypeName() {
+        return aggregateRootTypeName;
+    }
+
+    public void setAggregateRootTypeName(String aggregateRootTypeName) {
+        this.aggregateRootTypeName = aggregateRootTypeName;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Date getCreatedOn() {
+        return createdOn;
+    }
+
+    public void setCreatedOn(Date createdOn) {
+        this.createdOn = createdOn;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[AggregateRootId=%s,AggregateRootTypeName=%s,Version=%d,CreatedOn=%s]", aggregateRootId, aggregateRootTypeName, version, createdOn);
+    }
+}
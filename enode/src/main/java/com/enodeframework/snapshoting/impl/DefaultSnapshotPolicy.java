@@ -0,0 +1,39 @@
+package com.enodeframework.snapshoting.impl;
+
+import com.enodeframework.domain.IAggregateRoot;
+import com.enodeframework.snapshoting.ISnapshotPolicy;
+
+/**
+ * 每隔versionInterval个版本生成一次快照；
+ * 或者聚合根重建时重放的事件流个数、耗时超过阈值时生成快照。
+ */
+public class DefaultSnapshotPolicy implements ISnapshotPolicy {
+
+    private int versionInterval = 100;
+
+    private int replayEventStreamCountThreshold = 100;
+
+    private long replayMillisThreshold = 200;
+
+    @Override
+    public boolean shouldTakeSnapshot(String aggregateRootTypeName, String aggregateRootId, int version) {
+        return versionInterval > 0 && version % versionInterval == 0;
+    }
+
+    @Override
+    public boolean shouldTakeSnapshot(IAggregateRoot aggregateRoot, int replayedEventStreamCount, long replayMillis) {
+        return replayedEventStreamCount >= replayEventStreamCountThreshold || replayMillis >= replayMillisThreshold;
+    }
+
+    public void setVersionInterval(int versionInterval) {
+        this.versionInterval = versionInterval;
+    }
+
+    public void setReplayEventStreamCountThreshold(int replayEventStreamCountThreshold) {
+        this.replayEventStreamCountThreshold = replayEventStreamCountThreshold;
+    }
+
+    public void setReplayMillisThreshold(long replayMillisThreshold) {
+        this.replayMillisThreshold = replayMillisThreshold;
+    }
+}
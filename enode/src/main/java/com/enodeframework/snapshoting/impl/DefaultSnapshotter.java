@@ -0,0 +1,174 @@
+package com.enodeframework.snapshoting.impl;
+
+import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.common.io.AsyncTaskStatus;
+import com.enodeframework.common.io.Task;
+import com.enodeframework.common.serializing.IJsonSerializer;
+import com.enodeframework.domain.IAggregateRoot;
+import com.enodeframework.domain.IAggregateRootFactory;
+import com.enodeframework.eventing.DomainEventStream;
+import com.enodeframework.eventing.IEventStore;
+import com.enodeframework.infrastructure.ITypeNameProvider;
+import com.enodeframework.snapshoting.ISnapshotPolicy;
+import com.enodeframework.snapshoting.ISnapshotStore;
+import com.enodeframework.snapshoting.ISnapshotter;
+import com.enodeframework.snapshoting.Snapshot;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 没有配置ISnapshotStore时，快照功能关闭
+ */
+public class DefaultSnapshotter implements ISnapshotter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DefaultSnapshotter.class);
+
+    private final Set<String> snapshottingAggregates = ConcurrentHashMap.newKeySet();
+
+    private final Executor executor;
+
+    @Autowired(required = false)
+    private ISnapshotStore snapshotStore;
+
+    @Autowired
+    private ISnapshotPolicy snapshotPolicy;
+
+    @Autowired
+    private IEventStore eventStore;
+
+    @Autowired
+    private IAggregateRootFactory aggregateRootFactory;
+
+    @Autowired
+    private ITypeNameProvider typeNameProvider;
+
+    @Autowired
+    private IJsonSerializer jsonSerializer;
+
+    public DefaultSnapshotter() {
+        executor = new ThreadPoolExecutor(2, 2,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("SnapshotterExecutor-%d").build());
+    }
+
+    @Override
+    public <T extends IAggregateRoot> CompletableFuture<T> restoreFromSnapshotAsync(Class<T> aggregateRootType, String aggregateRootId) {
+        if (snapshotStore == null) {
+            return Task.CompletedTask;
+        }
+        String aggregateRootTypeName = typeNameProvider.getTypeName(aggregateRootType);
+        return snapshotStore.getLatestAsync(aggregateRootId, aggregateRootTypeName).thenApply(result -> {
+            if (result.getStatus() != AsyncTaskStatus.Success) {
+                logger.warn("Get snapshot failed, aggregate will be rebuilt from events, aggregateRootId: {}, errorMessage: {}", aggregateRootId, result.getErrorMessage());
+                return null;
+            }
+            Snapshot snapshot = result.getData();
+            if (snapshot == null) {
+                return null;
+            }
+            try {
+                return jsonSerializer.deserialize(snapshot.getPayload(), aggregateRootType);
+            } catch (Exception ex) {
+                logger.error(String.format("Deserialize snapshot has unknown exception, aggregate will be rebuilt from events, snapshot: %s", snapshot), ex);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void takeSnapshotAsync(IAggregateRoot aggregateRoot) {
+        if (snapshotStore == null) {
+            return;
+        }
+        Snapshot snapshot;
+        try {
+            snapshot = new Snapshot(aggregateRoot.uniqueId(), typeNameProvider.getTypeName(aggregateRoot.getClass()),
+                    aggregateRoot.version(), jsonSerializer.serialize(aggregateRoot), new Date());
+        } catch (Exception ex) {
+            logger.error(String.format("Serialize snapshot has unknown exception, aggregateRootId: %s, version: %d", aggregateRoot.uniqueId(), aggregateRoot.version()), ex);
+            return;
+        }
+        saveSnapshotAsync(snapshot);
+    }
+
+    @Override
+    public void onEventStreamPersisted(DomainEventStream eventStream) {
+        if (snapshotStore == null || !snapshotPolicy.shouldTakeSnapshot(eventStream.aggregateRootTypeName(), eventStream.aggregateRootId(), eventStream.version())) {
+            return;
+        }
+        String aggregateRootId = eventStream.aggregateRootId();
+        if (!snapshottingAggregates.add(aggregateRootId)) {
+            return;
+        }
+        loadPersistedAggregateAsync(eventStream.aggregateRootTypeName(), aggregateRootId).thenAccept(aggregateRoot -> {
+            if (aggregateRoot != null) {
+                takeSnapshotAsync(aggregateRoot);
+            }
+        }).whenComplete((r, ex) -> {
+            snapshottingAggregates.remove(aggregateRootId);
+            if (ex != null) {
+                logger.error(String.format("Take snapshot has unknown exception, aggregateRootId: %s", aggregateRootId), ex);
+            }
+        });
+    }
+
+    @Override
+    public void onAggregateRebuilt(IAggregateRoot aggregateRoot, int replayedEventStreamCount, long replayMillis) {
+        if (snapshotStore == null || !snapshotPolicy.shouldTakeSnapshot(aggregateRoot, replayedEventStreamCount, replayMillis)) {
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Aggregate replay cost exceeds threshold, take snapshot, aggregateRootId: {}, replayedEventStreamCount: {}, replayMillis: {}", aggregateRoot.uniqueId(), replayedEventStreamCount, replayMillis);
+        }
+        takeSnapshotAsync(aggregateRoot);
+    }
+
+    /**
+     * 从最近的快照和之后的事件加载聚合根已持久化的状态，与内存中正在处理命令的聚合根互不影响
+     */
+    private CompletableFuture<IAggregateRoot> loadPersistedAggregateAsync(String aggregateRootTypeName, String aggregateRootId) {
+        Class<IAggregateRoot> aggregateRootType = typeNameProvider.getType(aggregateRootTypeName);
+        return restoreFromSnapshotAsync(aggregateRootType, aggregateRootId).thenCompose(snapshotAggregateRoot -> {
+            int minVersion = snapshotAggregateRoot == null ? 1 : snapshotAggregateRoot.version() + 1;
+            return eventStore.queryAggregateEventsAsync(aggregateRootId, aggregateRootTypeName, minVersion, Integer.MAX_VALUE).thenApplyAsync(result -> {
+                if (result.getStatus() != AsyncTaskStatus.Success) {
+                    logger.warn("Query aggregate events for snapshot failed, aggregateRootId: {}, errorMessage: {}", aggregateRootId, result.getErrorMessage());
+                    return null;
+                }
+                List<DomainEventStream> eventStreams = result.getData();
+                if (eventStreams == null || eventStreams.isEmpty()) {
+                    return null;
+                }
+                IAggregateRoot aggregateRoot = snapshotAggregateRoot != null ? snapshotAggregateRoot : aggregateRootFactory.createAggregateRoot(aggregateRootType);
+                aggregateRoot.replayEvents(eventStreams);
+                return aggregateRoot;
+            }, executor);
+        });
+    }
+
+    private void saveSnapshotAsync(Snapshot snapshot) {
+        CompletableFuture<AsyncTaskResult> future = snapshotStore.saveAsync(snapshot);
+        future.whenComplete((result, ex) -> {
+            if (ex != null) {
+                logger.error(String.format("Save snapshot has unknown exception, snapshot: %s", snapshot), ex);
+            } else if (result.getStatus() != AsyncTaskStatus.Success) {
+                logger.warn("Save snapshot failed, snapshot: {}, errorMessage: {}", snapshot, result.getErrorMessage());
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("Save snapshot success, snapshot: {}", snapshot);
+            }
+        });
+    }
+}
@@ -0,0 +1,27 @@
+package com.enodeframework.snapshoting.impl;
+
+import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.common.io.AsyncTaskStatus;
+import com.enodeframework.snapshoting.ISnapshotStore;
+import com.enodeframework.snapshoting.Snapshot;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class InMemorySnapshotStore implements ISnapshotStore {
+    private final CompletableFuture<AsyncTaskResult> successTask = CompletableFuture.completedFuture(AsyncTaskResult.Success);
+
+    private final ConcurrentMap<String, Snapshot> snapshotDict = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<AsyncTaskResult> saveAsync(Snapshot snapshot) {
+        snapshotDict.merge(snapshot.getAggregateRootId(), snapshot, (oldValue, value) -> value.getVersion() > oldValue.getVersion() ? value : oldValue);
+        return successTask;
+    }
+
+    @Override
+    public CompletableFuture<AsyncTaskResult<Snapshot>> getLatestAsync(String aggregateRootId, String aggregateRootTypeName) {
+        return CompletableFuture.completedFuture(new AsyncTaskResult<>(AsyncTaskStatus.Success, snapshotDict.get(aggregateRootId)));
+    }
+}
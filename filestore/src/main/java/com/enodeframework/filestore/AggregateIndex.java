@@ -0,0 +1,67 @@
+package com.enodeframework.filestore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个聚合根的内存索引：每个版本所在记录的位置，以及命令id对应的版本；
+ * 只有写入线程（和启动时的恢复）修改，查询线程读取
+ */
+class AggregateIndex {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private long[] positions = new long[INITIAL_CAPACITY];
+    private int currentVersion;
+    private final Map<String, Integer> commandVersions = new HashMap<>();
+
+    synchronized int getCurrentVersion() {
+        return currentVersion;
+    }
+
+    /**
+     * @return 版本所在记录的位置，版本不存在时返回-1
+     */
+    synchronized long getPosition(int version) {
+        if (version < 1 || version > currentVersion) {
+            return -1;
+        }
+        return positions[version - 1];
+    }
+
+    /**
+     * @return 命令产生的事件流版本，命令不存在时返回0
+     */
+    synchronized int getVersion(String commandId) {
+        Integer version = commandVersions.get(commandId);
+        return version == null ? 0 : version;
+    }
+
+    synchronized boolean containsCommand(String commandId) {
+        return commandVersions.containsKey(commandId);
+    }
+
+    synchronized List<String> getCommandIds() {
+        return new ArrayList<>(commandVersions.keySet());
+    }
+
+    /**
+     * 版本必须连续，恢复时遇到不连续的版本说明数据有误
+     */
+    synchronized void add(int version, String commandId, long position) {
+        if (version != currentVersion + 1) {
+            throw new IllegalStateException(String.format("Invalid event stream version, expected: %d, but was: %d", currentVersion + 1, version));
+        }
+        if (version > positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+        positions[version - 1] = position;
+        currentVersion = version;
+        if (commandId != null) {
+            commandVersions.put(commandId, version);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.enodeframework.filestore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 由多个段文件组成的只追加日志，记录位置为(段序号 << 32) | 段内偏移；
+ * append、flush只在写入线程上调用，read可以在任意线程上调用
+ */
+class EventLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventLog.class);
+
+    private static final String LOCK_FILE_NAME = "LOCK";
+
+    private final File directory;
+    private final int segmentSize;
+    private final List<EventSegment> segments = new CopyOnWriteArrayList<>();
+    private EventSegment currentSegment;
+    private RandomAccessFile lockFile;
+    private FileLock lock;
+
+    EventLog(File directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * 打开所有段文件并依次校验记录，每条有效记录回调一次；
+     * 最后一个段文件末尾的残缺记录（崩溃时未写完）被清除，之前的段文件出现损坏时拒绝打开
+     */
+    void open(RecordConsumer recordConsumer) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException(String.format("Create event store directory failed, path: %s", directory.getAbsolutePath()));
+        }
+        lock();
+        String[] fileNames = directory.list((dir, name) -> EventSegment.isSegmentFile(name));
+        int[] indexes = fileNames == null ? new int[0] : Arrays.stream(fileNames).mapToInt(EventSegment::parseIndex).sorted().toArray();
+        List<EventSegment> openedSegments = new ArrayList<>();
+        try {
+            for (int i = 0; i < indexes.length; i++) {
+                if (indexes[i] != indexes[0] + i) {
+                    throw new IllegalStateException(String.format("Event segment %d is missing, directory: %s", indexes[0] + i, directory.getAbsolutePath()));
+                }
+                EventSegment segment = EventSegment.open(directory, indexes[i], segmentSize);
+                openedSegments.add(segment);
+                recover(segment, i == indexes.length - 1, recordConsumer);
+            }
+            if (openedSegments.isEmpty()) {
+                openedSegments.add(EventSegment.open(directory, 0, segmentSize));
+            }
+        } catch (IOException | RuntimeException ex) {
+            for (EventSegment segment : openedSegments) {
+                closeQuietly(segment);
+            }
+            unlock();
+            throw ex;
+        }
+        segments.addAll(openedSegments);
+        currentSegment = openedSegments.get(openedSegments.size() - 1);
+    }
+
+    private void recover(EventSegment segment, boolean lastSegment, RecordConsumer recordConsumer) {
+        int offset = 0;
+        int capacity = segment.getCapacity();
+        while (offset + EventRecord.HEADER_SIZE <= capacity) {
+            int length = segment.readInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || offset + EventRecord.HEADER_SIZE + length > capacity) {
+                handleCorruptedRecord(segment, offset, lastSegment, "invalid record length " + length);
+                return;
+            }
+            ByteBuffer payload = segment.slice(offset + EventRecord.HEADER_SIZE, length);
+            if (EventRecord.crc(payload) != segment.readInt(offset + 4)) {
+                handleCorruptedRecord(segment, offset, lastSegment, "crc mismatch");
+                return;
+            }
+            recordConsumer.accept(toPosition(segment.getIndex(), offset), payload);
+            offset += EventRecord.HEADER_SIZE + length;
+        }
+        segment.setWritePosition(offset);
+    }
+
+    private void handleCorruptedRecord(EventSegment segment, int offset, boolean lastSegment, String reason) {
+        if (!lastSegment) {
+            throw new IllegalStateException(String.format("Event segment is corrupted, file: %s, offset: %d, reason: %s", segment.getFile().getAbsolutePath(), offset, reason));
+        }
+        logger.warn("Truncate incomplete event record when recovering, file: {}, offset: {}, reason: {}", segment.getFile().getAbsolutePath(), offset, reason);
+        segment.truncate(offset);
+    }
+
+    /**
+     * @return 记录的位置
+     */
+    long append(ByteBuffer record) throws IOException {
+        if (record.remaining() > segmentSize) {
+            throw new IllegalArgumentException(String.format("Event record is larger than segment size, recordSize: %d, segmentSize: %d", record.remaining(), segmentSize));
+        }
+        int offset = currentSegment.append(record);
+        if (offset < 0) {
+            currentSegment.force();
+            EventSegment segment = EventSegment.open(directory, currentSegment.getIndex() + 1, segmentSize);
+            segments.add(segment);
+            currentSegment = segment;
+            offset = currentSegment.append(record);
+        }
+        return toPosition(currentSegment.getIndex(), offset);
+    }
+
+    void flush() {
+        currentSegment.force();
+    }
+
+    /**
+     * @return 记录内容，不含头部
+     */
+    ByteBuffer read(long position) {
+        EventSegment segment = getSegment((int) (position >>> 32));
+        int offset = (int) position;
+        int length = segment.readInt(offset);
+        return segment.slice(offset + EventRecord.HEADER_SIZE, length);
+    }
+
+    void close() {
+        for (EventSegment segment : segments) {
+            closeQuietly(segment);
+        }
+        unlock();
+    }
+
+    /**
+     * 通过目录下的锁文件保证同一目录只被一个进程打开
+     */
+    private void lock() throws IOException {
+        lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException ex) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockFile.close();
+            throw new IOException(String.format("Event store directory is locked by another event store, path: %s", directory.getAbsolutePath()));
+        }
+    }
+
+    private void unlock() {
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+            if (lockFile != null) {
+                lockFile.close();
+            }
+        } catch (IOException ex) {
+            logger.warn("Release event store lock failed, path: {}, errorMessage: {}", directory.getAbsolutePath(), ex.getMessage());
+        }
+        lock = null;
+        lockFile = null;
+    }
+
+    private EventSegment getSegment(int index) {
+        int first = segments.get(0).getIndex();
+        EventSegment segment = segments.get(index - first);
+        if (segment.getIndex() != index) {
+            throw new IllegalStateException(String.format("Event segment %d not found.", index));
+        }
+        return segment;
+    }
+
+    private static long toPosition(int segmentIndex, int offset) {
+        return ((long) segmentIndex << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static void closeQuietly(EventSegment segment) {
+        try {
+            segment.close();
+        } catch (IOException ex) {
+            logger.warn("Close event segment failed, file: {}, errorMessage: {}", segment.getFile().getAbsolutePath(), ex.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(long position, ByteBuffer payload);
+    }
+}
@@ -0,0 +1,125 @@
+package com.enodeframework.filestore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 段文件中的一条记录，包含同一次追加的一个或多个事件流，整条记录写入成功或失败。
+ * 格式：[int 内容长度][int 内容CRC32][内容]，内容为[short 事件流数量]加上每个事件流的
+ * [long 时间戳][int 版本][string 聚合根id][string 聚合根类型][string 命令id][string 事件]，
+ * string为[int 字节长度][UTF-8字节]，长度为-1表示null
+ */
+class EventRecord {
+
+    static final int HEADER_SIZE = 8;
+
+    private EventRecord() {
+    }
+
+    static ByteBuffer encode(List<Stream> streams) {
+        if (streams.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Too many event streams in one record: %d.", streams.size()));
+        }
+        List<byte[][]> encodedStreams = new ArrayList<>(streams.size());
+        int payloadLength = 2;
+        for (Stream stream : streams) {
+            byte[][] fields = new byte[][]{
+                    getBytes(stream.aggregateRootId),
+                    getBytes(stream.aggregateRootTypeName),
+                    getBytes(stream.commandId),
+                    getBytes(stream.events)};
+            payloadLength += 12;
+            for (byte[] field : fields) {
+                payloadLength += 4 + (field == null ? 0 : field.length);
+            }
+            encodedStreams.add(fields);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payloadLength);
+        buffer.position(HEADER_SIZE);
+        buffer.putShort((short) streams.size());
+        for (int i = 0; i < streams.size(); i++) {
+            Stream stream = streams.get(i);
+            buffer.putLong(stream.timestamp);
+            buffer.putInt(stream.version);
+            for (byte[] field : encodedStreams.get(i)) {
+                putBytes(buffer, field);
+            }
+        }
+        buffer.putInt(0, payloadLength);
+        buffer.putInt(4, crc(buffer.array(), HEADER_SIZE, payloadLength));
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @param payload     记录内容，不含头部
+     * @param withEvents  为false时跳过事件内容，用于启动时重建索引
+     */
+    static List<Stream> decode(ByteBuffer payload, boolean withEvents) {
+        int count = payload.getShort();
+        List<Stream> streams = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Stream stream = new Stream();
+            stream.timestamp = payload.getLong();
+            stream.version = payload.getInt();
+            stream.aggregateRootId = getString(payload);
+            stream.aggregateRootTypeName = getString(payload);
+            stream.commandId = getString(payload);
+            if (withEvents) {
+                stream.events = getString(payload);
+            } else {
+                int length = payload.getInt();
+                payload.position(payload.position() + Math.max(length, 0));
+            }
+            streams.add(stream);
+        }
+        return streams;
+    }
+
+    static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    static int crc(ByteBuffer payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload.duplicate());
+        return (int) crc32.getValue();
+    }
+
+    private static byte[] getBytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static class Stream {
+        String aggregateRootId;
+        String aggregateRootTypeName;
+        String commandId;
+        int version;
+        long timestamp;
+        String events;
+    }
+}
@@ -0,0 +1,129 @@
+package com.enodeframework.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 一个预分配并映射到内存的段文件，只能在末尾追加；
+ * 只有写入线程修改writeBuffer，读取时在buffer的副本上按绝对位置读，互不影响
+ */
+class EventSegment {
+
+    private static final String FILE_NAME_FORMAT = "%020d.seg";
+
+    private static final int ZERO_CHUNK_SIZE = 64 * 1024;
+
+    private final int index;
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer writeBuffer;
+    private int writePosition;
+
+    private EventSegment(int index, File file, int size) throws IOException {
+        this.index = index;
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (randomAccessFile.length() < size) {
+                randomAccessFile.setLength(size);
+            }
+            this.channel = randomAccessFile.getChannel();
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+        } catch (IOException ex) {
+            randomAccessFile.close();
+            throw ex;
+        }
+        this.writeBuffer = buffer.duplicate();
+    }
+
+    /**
+     * 已存在的段文件按原大小映射，新建的段文件大小为size
+     */
+    static EventSegment open(File directory, int index, int size) throws IOException {
+        return new EventSegment(index, new File(directory, String.format(FILE_NAME_FORMAT, index)), size);
+    }
+
+    static boolean isSegmentFile(String fileName) {
+        return fileName.matches("\\d{20}\\.seg");
+    }
+
+    static int parseIndex(String fileName) {
+        return Integer.parseInt(fileName.substring(0, fileName.indexOf('.')));
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    void setWritePosition(int writePosition) {
+        this.writePosition = writePosition;
+    }
+
+    /**
+     * @return 记录在段文件中的偏移，剩余空间不足时返回-1
+     */
+    int append(ByteBuffer record) {
+        int length = record.remaining();
+        if (writePosition + length > buffer.capacity()) {
+            return -1;
+        }
+        int offset = writePosition;
+        writeBuffer.position(offset);
+        writeBuffer.put(record);
+        writePosition += length;
+        return offset;
+    }
+
+    int readInt(int offset) {
+        return buffer.getInt(offset);
+    }
+
+    ByteBuffer slice(int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length);
+        slice.position(offset);
+        return slice.slice();
+    }
+
+    /**
+     * 恢复时清除从offset开始的残缺记录，避免之后被当成有效数据读取
+     */
+    void truncate(int offset) {
+        byte[] zeros = new byte[ZERO_CHUNK_SIZE];
+        ByteBuffer zeroBuffer = buffer.duplicate();
+        zeroBuffer.position(offset);
+        while (zeroBuffer.hasRemaining()) {
+            zeroBuffer.put(zeros, 0, Math.min(zeros.length, zeroBuffer.remaining()));
+        }
+        buffer.force();
+        writePosition = offset;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+        randomAccessFile.close();
+    }
+}
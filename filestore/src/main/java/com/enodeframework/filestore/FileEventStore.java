@@ -0,0 +1,481 @@
+package com.enodeframework.filestore;
+
+import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.common.io.AsyncTaskStatus;
+import com.enodeframework.common.utilities.Ensure;
+import com.enodeframework.configurations.OptionSetting;
+import com.enodeframework.eventing.DomainEventStream;
+import com.enodeframework.eventing.EventAppendResult;
+import com.enodeframework.eventing.IDomainEvent;
+import com.enodeframework.eventing.IEventSerializer;
+import com.enodeframework.eventing.IEventStore;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * 嵌入式单机事件存储，事件流追加到内存映射的段文件中，启动时校验记录并重建每个聚合根的版本和命令索引。
+ * 所有追加请求由一个写入线程处理：一次取出队列中的多个请求依次写入，再统一刷盘后返回结果（group fsync）；
+ * 版本已存在返回DuplicateEvent，同一聚合根的命令id重复返回DuplicateCommand，与MysqlEventStore的唯一索引语义一致。
+ * 同一目录只能由一个进程打开。
+ */
+public class FileEventStore implements IEventStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileEventStore.class);
+
+    private static final int DEFAULT_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    private static final int DEFAULT_WRITER_QUEUE_CAPACITY = 10000;
+
+    private static final int DEFAULT_FLUSH_INTERVAL_MILLISECONDS = 1000;
+
+    private static final int MAX_WRITE_BATCH_SIZE = 1000;
+
+    private static final long POLL_TIMEOUT_MILLISECONDS = 100;
+
+    private final String storePath;
+    private final int segmentSize;
+    private final boolean syncFlush;
+    private final int flushIntervalMilliseconds;
+    private final BlockingQueue<AppendRequest> appendQueue;
+    private final ConcurrentMap<String, AggregateIndex> aggregateIndexDict = new ConcurrentHashMap<>();
+    @Autowired
+    private IEventSerializer eventSerializer;
+    private boolean supportBatchAppendEvent = true;
+    private ExecutorService readExecutor;
+    private EventLog eventLog;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    /**
+     * 可选配置：SegmentSize 段文件大小（字节），SyncFlush 是否刷盘后才返回追加结果（默认true），
+     * FlushIntervalMilliseconds 不同步刷盘时的定时刷盘间隔，WriterQueueCapacity 等待写入的请求数上限
+     */
+    public FileEventStore(String storePath, OptionSetting optionSetting) {
+        Ensure.notNullOrEmpty(storePath, "storePath");
+        this.storePath = storePath;
+        int writerQueueCapacity = DEFAULT_WRITER_QUEUE_CAPACITY;
+        int segmentSizeOption = DEFAULT_SEGMENT_SIZE;
+        boolean syncFlushOption = true;
+        int flushIntervalOption = DEFAULT_FLUSH_INTERVAL_MILLISECONDS;
+        if (optionSetting != null) {
+            if (optionSetting.getOptionValue("SegmentSize") != null) {
+                segmentSizeOption = Integer.valueOf(optionSetting.getOptionValue("SegmentSize"));
+            }
+            if (optionSetting.getOptionValue("SyncFlush") != null) {
+                syncFlushOption = Boolean.valueOf(optionSetting.getOptionValue("SyncFlush"));
+            }
+            if (optionSetting.getOptionValue("FlushIntervalMilliseconds") != null) {
+                flushIntervalOption = Integer.valueOf(optionSetting.getOptionValue("FlushIntervalMilliseconds"));
+            }
+            if (optionSetting.getOptionValue("WriterQueueCapacity") != null) {
+                writerQueueCapacity = Integer.valueOf(optionSetting.getOptionValue("WriterQueueCapacity"));
+            }
+        }
+        Ensure.positive(segmentSizeOption, "segmentSize");
+        Ensure.positive(flushIntervalOption, "flushIntervalMilliseconds");
+        Ensure.positive(writerQueueCapacity, "writerQueueCapacity");
+        this.segmentSize = segmentSizeOption;
+        this.syncFlush = syncFlushOption;
+        this.flushIntervalMilliseconds = flushIntervalOption;
+        this.appendQueue = new ArrayBlockingQueue<>(writerQueueCapacity);
+    }
+
+    public void start() {
+        EventLog log = new EventLog(new File(storePath), segmentSize);
+        try {
+            log.open(this::recoverRecord);
+        } catch (IOException ex) {
+            throw new IllegalStateException(String.format("Open file event store failed, path: %s", storePath), ex);
+        }
+        eventLog = log;
+        int readThreadCount = Runtime.getRuntime().availableProcessors();
+        readExecutor = new ThreadPoolExecutor(readThreadCount, readThreadCount,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("FileEventStoreReader-%d").build());
+        running = true;
+        writerThread = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("FileEventStoreWriter-%d").build().newThread(this::writeLoop);
+        writerThread.start();
+        logger.info("File event store started, path: {}, aggregateCount: {}", storePath, aggregateIndexDict.size());
+    }
+
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        AppendRequest request;
+        while ((request = appendQueue.poll()) != null) {
+            complete(request, AsyncTaskStatus.IOException, "File event store is stopped.", EventAppendResult.Failed);
+        }
+        readExecutor.shutdown();
+        eventLog.close();
+        logger.info("File event store stopped, path: {}", storePath);
+    }
+
+    @Override
+    public boolean isSupportBatchAppendEvent() {
+        return supportBatchAppendEvent;
+    }
+
+    public void setSupportBatchAppendEvent(boolean supportBatchAppendEvent) {
+        this.supportBatchAppendEvent = supportBatchAppendEvent;
+    }
+
+    public void setEventSerializer(IEventSerializer eventSerializer) {
+        this.eventSerializer = eventSerializer;
+    }
+
+    /**
+     * 同一个聚合根的多个事件流写成一条记录，全部成功或全部失败
+     */
+    @Override
+    public CompletableFuture<AsyncTaskResult<EventAppendResult>> batchAppendAsync(List<DomainEventStream> eventStreams) {
+        if (eventStreams.size() == 0) {
+            throw new IllegalArgumentException("Event streams cannot be empty.");
+        }
+        List<String> aggregateRootIds = eventStreams.stream().map(x -> x.aggregateRootId()).distinct().collect(Collectors.toList());
+        if (aggregateRootIds.size() > 1) {
+            throw new IllegalArgumentException("Batch append event only support for one aggregate.");
+        }
+        return append(eventStreams, "Batch append event");
+    }
+
+    @Override
+    public CompletableFuture<AsyncTaskResult<EventAppendResult>> appendAsync(DomainEventStream eventStream) {
+        return append(Collections.singletonList(eventStream), String.format("Append event, eventStream: %s", eventStream));
+    }
+
+    @Override
+    public CompletableFuture<AsyncTaskResult<DomainEventStream>> findAsync(String aggregateRootId, int version) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return new AsyncTaskResult<>(AsyncTaskStatus.Success, findStream(aggregateRootId, version));
+            } catch (Exception ex) {
+                logger.error(String.format("Find event by version has unknown exception, aggregateRootId: %s, version: %d", aggregateRootId, version), ex);
+                return new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage());
+            }
+        }, readExecutor);
+    }
+
+    /**
+     * 直接遍历内存索引，不读取段文件
+     */
+    @Override
+    public CompletableFuture<AsyncTaskResult<Long>> scanCommandIdsAsync(BiConsumer<String, String> commandIdConsumer) {
+        return CompletableFuture.supplyAsync(() -> {
+            long count = 0;
+            try {
+                for (Map.Entry<String, AggregateIndex> entry : aggregateIndexDict.entrySet()) {
+                    for (String commandId : entry.getValue().getCommandIds()) {
+                        commandIdConsumer.accept(entry.getKey(), commandId);
+                        count++;
+                    }
+                }
+                return new AsyncTaskResult<>(AsyncTaskStatus.Success, count);
+            } catch (Exception ex) {
+                logger.error(String.format("Scan command ids has unknown exception, scannedCount: %d", count), ex);
+                return new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage());
+            }
+        }, readExecutor);
+    }
+
+    @Override
+    public CompletableFuture<AsyncTaskResult<DomainEventStream>> findAsync(String aggregateRootId, String commandId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                AggregateIndex aggregateIndex = aggregateIndexDict.get(aggregateRootId);
+                int version = aggregateIndex == null ? 0 : aggregateIndex.getVersion(commandId);
+                DomainEventStream stream = version > 0 ? findStream(aggregateRootId, version) : null;
+                return new AsyncTaskResult<>(AsyncTaskStatus.Success, stream);
+            } catch (Exception ex) {
+                logger.error(String.format("Find event by commandId has unknown exception, aggregateRootId: %s, commandId: %s", aggregateRootId, commandId), ex);
+                return new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage());
+            }
+        }, readExecutor);
+    }
+
+    @Override
+    public CompletableFuture<AsyncTaskResult<List<DomainEventStream>>> queryAggregateEventsAsync(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return new AsyncTaskResult<>(AsyncTaskStatus.Success, queryStreams(aggregateRootId, minVersion, maxVersion));
+            } catch (Exception ex) {
+                logger.error(String.format("Failed to query aggregate events async, aggregateRootId: %s, aggregateRootType: %s", aggregateRootId, aggregateRootTypeName), ex);
+                return new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage());
+            }
+        }, readExecutor);
+    }
+
+    private CompletableFuture<AsyncTaskResult<EventAppendResult>> append(List<DomainEventStream> eventStreams, String context) {
+        if (!running) {
+            return CompletableFuture.completedFuture(new AsyncTaskResult<>(AsyncTaskStatus.IOException, "File event store is not running.", EventAppendResult.Failed));
+        }
+        AppendRequest request;
+        try {
+            request = new AppendRequest(eventStreams.get(0).aggregateRootId(), eventStreams.stream().map(this::convertToRecordStream).collect(Collectors.toList()));
+        } catch (Exception ex) {
+            logger.error(String.format("%s has unknown exception.", context), ex);
+            return CompletableFuture.completedFuture(new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage(), EventAppendResult.Failed));
+        }
+        if (!appendQueue.offer(request)) {
+            logger.warn("{} is rejected as the event writer queue is full.", context);
+            return CompletableFuture.completedFuture(new AsyncTaskResult<>(AsyncTaskStatus.IOException, "Event writer queue is full.", EventAppendResult.Failed));
+        }
+        //stop()可能在检查running之后、入队之前已经清空了队列，此时请求不会再被处理；
+        //能从队列中移除说明没有被写入线程或stop()取走，由当前线程返回失败
+        if (!running && appendQueue.remove(request)) {
+            complete(request, AsyncTaskStatus.IOException, "File event store is stopped.", EventAppendResult.Failed);
+        }
+        return request.future;
+    }
+
+    private void writeLoop() {
+        List<AppendRequest> batch = new ArrayList<>();
+        long lastFlushTime = System.currentTimeMillis();
+        while (running || !appendQueue.isEmpty()) {
+            try {
+                AppendRequest request = appendQueue.poll(POLL_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS);
+                if (request != null) {
+                    batch.add(request);
+                    appendQueue.drainTo(batch, MAX_WRITE_BATCH_SIZE - 1);
+                    writeBatch(batch);
+                }
+                if (!syncFlush && System.currentTimeMillis() - lastFlushTime >= flushIntervalMilliseconds) {
+                    eventLog.flush();
+                    lastFlushTime = System.currentTimeMillis();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable ex) {
+                logger.error("File event store write loop has unknown exception.", ex);
+                batch.stream().filter(x -> !x.future.isDone())
+                        .forEach(x -> complete(x, AsyncTaskStatus.Failed, ex.getMessage(), EventAppendResult.Failed));
+            } finally {
+                batch.clear();
+            }
+        }
+        eventLog.flush();
+    }
+
+    /**
+     * 依次检查并写入每个请求，全部写入后刷盘一次再更新索引、返回结果；
+     * 某个聚合根的请求写入失败后，本批次中该聚合根后面的请求返回同样的错误，而不是版本不连续；
+     * 刷盘失败时记录已在映射内存中，仍然更新索引，调用方重试时会得到DuplicateEvent或DuplicateCommand
+     */
+    private void writeBatch(List<AppendRequest> batch) {
+        Map<String, Integer> pendingVersions = new HashMap<>();
+        Map<String, Set<String>> pendingCommands = new HashMap<>();
+        Map<String, AsyncTaskResult<EventAppendResult>> failedResults = new HashMap<>();
+        List<AppendRequest> writtenRequests = new ArrayList<>(batch.size());
+        for (AppendRequest request : batch) {
+            AsyncTaskResult<EventAppendResult> failedResult = failedResults.get(request.aggregateRootId);
+            if (failedResult != null) {
+                complete(request, failedResult.getStatus(), failedResult.getErrorMessage(), EventAppendResult.Failed);
+                continue;
+            }
+            EventAppendResult appendResult = checkAppend(request, pendingVersions, pendingCommands);
+            if (appendResult == EventAppendResult.Failed) {
+                complete(request, AsyncTaskStatus.Failed, String.format("Event stream version is not continuous, aggregateRootId: %s", request.aggregateRootId), appendResult);
+                continue;
+            }
+            if (appendResult != EventAppendResult.Success) {
+                complete(request, AsyncTaskStatus.Success, null, appendResult);
+                continue;
+            }
+            try {
+                request.position = eventLog.append(request.record);
+            } catch (IOException ex) {
+                logger.error(String.format("Write event record has io exception, aggregateRootId: %s", request.aggregateRootId), ex);
+                failedResults.put(request.aggregateRootId, new AsyncTaskResult<>(AsyncTaskStatus.IOException, ex.getMessage()));
+                complete(request, AsyncTaskStatus.IOException, ex.getMessage(), EventAppendResult.Failed);
+                continue;
+            } catch (RuntimeException ex) {
+                logger.error(String.format("Write event record has unknown exception, aggregateRootId: %s", request.aggregateRootId), ex);
+                failedResults.put(request.aggregateRootId, new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage()));
+                complete(request, AsyncTaskStatus.Failed, ex.getMessage(), EventAppendResult.Failed);
+                continue;
+            }
+            Set<String> commands = pendingCommands.computeIfAbsent(request.aggregateRootId, x -> new HashSet<>());
+            request.streams.forEach(stream -> {
+                pendingVersions.put(request.aggregateRootId, stream.version);
+                if (stream.commandId != null) {
+                    commands.add(stream.commandId);
+                }
+            });
+            writtenRequests.add(request);
+        }
+        if (writtenRequests.isEmpty()) {
+            return;
+        }
+        String flushErrorMessage = null;
+        if (syncFlush) {
+            try {
+                eventLog.flush();
+            } catch (RuntimeException ex) {
+                logger.error("Flush event segment has exception.", ex);
+                flushErrorMessage = ex.getMessage();
+            }
+        }
+        for (AppendRequest request : writtenRequests) {
+            AggregateIndex aggregateIndex = aggregateIndexDict.computeIfAbsent(request.aggregateRootId, x -> new AggregateIndex());
+            request.streams.forEach(stream -> aggregateIndex.add(stream.version, stream.commandId, request.position));
+            if (flushErrorMessage == null) {
+                complete(request, AsyncTaskStatus.Success, null, EventAppendResult.Success);
+            } else {
+                complete(request, AsyncTaskStatus.IOException, flushErrorMessage, EventAppendResult.Failed);
+            }
+        }
+    }
+
+    /**
+     * 检查时同时考虑已写入的索引和本批次中排在前面、尚未更新索引的请求；
+     * 版本不大于当前版本时返回DuplicateEvent，版本跳跃时返回Failed
+     */
+    private EventAppendResult checkAppend(AppendRequest request, Map<String, Integer> pendingVersions, Map<String, Set<String>> pendingCommands) {
+        AggregateIndex aggregateIndex = aggregateIndexDict.get(request.aggregateRootId);
+        Integer pendingVersion = pendingVersions.get(request.aggregateRootId);
+        int currentVersion = pendingVersion != null ? pendingVersion : aggregateIndex == null ? 0 : aggregateIndex.getCurrentVersion();
+        Set<String> commands = pendingCommands.getOrDefault(request.aggregateRootId, Collections.emptySet());
+        Set<String> requestCommands = new HashSet<>();
+        for (EventRecord.Stream stream : request.streams) {
+            if (stream.version <= currentVersion) {
+                return EventAppendResult.DuplicateEvent;
+            }
+            if (stream.version != currentVersion + 1) {
+                return EventAppendResult.Failed;
+            }
+            if (stream.commandId != null) {
+                boolean duplicateCommand = commands.contains(stream.commandId)
+                        || (aggregateIndex != null && aggregateIndex.containsCommand(stream.commandId))
+                        || !requestCommands.add(stream.commandId);
+                if (duplicateCommand) {
+                    return EventAppendResult.DuplicateCommand;
+                }
+            }
+            currentVersion++;
+        }
+        return EventAppendResult.Success;
+    }
+
+    private void recoverRecord(long position, ByteBuffer payload) {
+        for (EventRecord.Stream stream : EventRecord.decode(payload, false)) {
+            aggregateIndexDict.computeIfAbsent(stream.aggregateRootId, x -> new AggregateIndex()).add(stream.version, stream.commandId, position);
+        }
+    }
+
+    private DomainEventStream findStream(String aggregateRootId, int version) {
+        AggregateIndex aggregateIndex = aggregateIndexDict.get(aggregateRootId);
+        if (aggregateIndex == null) {
+            return null;
+        }
+        long position = aggregateIndex.getPosition(version);
+        if (position < 0) {
+            return null;
+        }
+        for (EventRecord.Stream stream : EventRecord.decode(eventLog.read(position), true)) {
+            if (stream.version == version && aggregateRootId.equals(stream.aggregateRootId)) {
+                return convertFrom(stream);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 同一条记录中的连续版本只解码一次
+     */
+    private List<DomainEventStream> queryStreams(String aggregateRootId, int minVersion, int maxVersion) {
+        List<DomainEventStream> eventStreams = new ArrayList<>();
+        AggregateIndex aggregateIndex = aggregateIndexDict.get(aggregateRootId);
+        if (aggregateIndex == null) {
+            return eventStreams;
+        }
+        int min = Math.max(minVersion, 1);
+        int max = Math.min(maxVersion, aggregateIndex.getCurrentVersion());
+        long lastPosition = -1;
+        for (int version = min; version <= max; version++) {
+            long position = aggregateIndex.getPosition(version);
+            if (position == lastPosition) {
+                continue;
+            }
+            lastPosition = position;
+            for (EventRecord.Stream stream : EventRecord.decode(eventLog.read(position), true)) {
+                if (stream.version >= min && stream.version <= max && aggregateRootId.equals(stream.aggregateRootId)) {
+                    eventStreams.add(convertFrom(stream));
+                }
+            }
+        }
+        return eventStreams;
+    }
+
+    private void complete(AppendRequest request, AsyncTaskStatus status, String errorMessage, EventAppendResult appendResult) {
+        request.future.complete(new AsyncTaskResult<>(status, errorMessage, appendResult));
+    }
+
+    private EventRecord.Stream convertToRecordStream(DomainEventStream eventStream) {
+        EventRecord.Stream stream = new EventRecord.Stream();
+        stream.aggregateRootId = eventStream.aggregateRootId();
+        stream.aggregateRootTypeName = eventStream.aggregateRootTypeName();
+        stream.commandId = eventStream.commandId();
+        stream.version = eventStream.version();
+        stream.timestamp = eventStream.timestamp() == null ? System.currentTimeMillis() : eventStream.timestamp().getTime();
+        stream.events = eventSerializer.serializeToString(eventStream.events());
+        return stream;
+    }
+
+    private DomainEventStream convertFrom(EventRecord.Stream stream) {
+        return new DomainEventStream(
+                stream.commandId,
+                stream.aggregateRootId,
+                stream.aggregateRootTypeName,
+                stream.version,
+                new Date(stream.timestamp),
+                eventSerializer.deserializeFromString(stream.events, IDomainEvent.class),
+                null);
+    }
+
+    static class AppendRequest {
+        private final String aggregateRootId;
+        private final List<EventRecord.Stream> streams;
+        private final ByteBuffer record;
+        private final CompletableFuture<AsyncTaskResult<EventAppendResult>> future = new CompletableFuture<>();
+        private long position;
+
+        AppendRequest(String aggregateRootId, List<EventRecord.Stream> streams) {
+            this.aggregateRootId = aggregateRootId;
+            this.streams = streams;
+            this.record = EventRecord.encode(streams);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.enodeframework.filestore;
+
+import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.common.io.AsyncTaskStatus;
+import com.enodeframework.configurations.OptionSetting;
+import com.enodeframework.eventing.DomainEventStream;
+import com.enodeframework.eventing.EventAppendResult;
+import com.enodeframework.eventing.IDomainEvent;
+import com.enodeframework.eventing.IEventSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileEventStoreTest {
+
+    private static final String AGGREGATE_ROOT_ID = "note-1";
+
+    private static final String AGGREGATE_ROOT_TYPE_NAME = "com.enodeframework.samples.Note";
+
+    private File storeDirectory;
+
+    private FileEventStore eventStore;
+
+    @Before
+    public void setUp() throws IOException {
+        storeDirectory = Files.createTempDirectory("enode-filestore").toFile();
+        eventStore = startStore();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        eventStore.stop();
+        try (Stream<java.nio.file.Path> paths = Files.walk(storeDirectory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void recoverDropsTornTailRecord() throws Exception {
+        assertAppendResult(EventAppendResult.Success, append(1, "command-1"));
+        assertAppendResult(EventAppendResult.Success, append(2, "command-2"));
+        eventStore.stop();
+
+        //模拟崩溃时只写了一半的记录：头部声明的长度超过实际写入的内容
+        File segmentFile = getSegmentFile();
+        int endOffset = getEndOffset(segmentFile);
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+            file.seek(endOffset);
+            file.writeInt(128);
+            file.writeInt(0x12345678);
+            file.write(new byte[]{1, 2, 3, 4, 5});
+        }
+
+        eventStore = startStore();
+        assertEquals(Arrays.asList(1, 2), queryVersions());
+        assertAppendResult(EventAppendResult.Success, append(3, "command-3"));
+        eventStore.stop();
+
+        eventStore = startStore();
+        assertEquals(Arrays.asList(1, 2, 3), queryVersions());
+    }
+
+    @Test
+    public void recoverDropsLastRecordWithCrcMismatch() throws Exception {
+        assertAppendResult(EventAppendResult.Success, append(1, "command-1"));
+        assertAppendResult(EventAppendResult.Success, append(2, "command-2"));
+        eventStore.stop();
+
+        //破坏最后一条记录内容的最后一个字节
+        File segmentFile = getSegmentFile();
+        int endOffset = getEndOffset(segmentFile);
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+            file.seek(endOffset - 1);
+            int lastByte = file.read();
+            file.seek(endOffset - 1);
+            file.write(lastByte ^ 0xFF);
+        }
+
+        eventStore = startStore();
+        assertEquals(Collections.singletonList(1), queryVersions());
+        assertAppendResult(EventAppendResult.Success, append(2, "command-2"));
+        assertEquals(Arrays.asList(1, 2), queryVersions());
+    }
+
+    @Test
+    public void detectDuplicateVersionAndCommand() throws Exception {
+        assertAppendResult(EventAppendResult.Success, append(1, "command-1"));
+        assertAppendResult(EventAppendResult.Success, append(2, "command-2"));
+
+        assertAppendResult(EventAppendResult.DuplicateEvent, append(2, "command-3"));
+        assertAppendResult(EventAppendResult.DuplicateEvent, append(1, "command-3"));
+        assertAppendResult(EventAppendResult.DuplicateCommand, append(3, "command-1"));
+
+        AsyncTaskResult<EventAppendResult> gapResult = append(5, "command-5");
+        assertEquals(AsyncTaskStatus.Failed, gapResult.getStatus());
+        assertEquals(EventAppendResult.Failed, gapResult.getData());
+
+        assertEquals(Arrays.asList(1, 2), queryVersions());
+    }
+
+    @Test
+    public void detectDuplicatesAfterRecovery() throws Exception {
+        assertAppendResult(EventAppendResult.Success, append(1, "command-1"));
+        assertAppendResult(EventAppendResult.Success, append(2, "command-2"));
+        eventStore.stop();
+
+        eventStore = startStore();
+        assertAppendResult(EventAppendResult.DuplicateEvent, append(2, "command-3"));
+        assertAppendResult(EventAppendResult.DuplicateCommand, append(3, "command-2"));
+        assertAppendResult(EventAppendResult.Success, append(3, "command-3"));
+    }
+
+    @Test
+    public void detectDuplicatesInOneBatch() throws Exception {
+        List<DomainEventStream> duplicateVersions = Arrays.asList(createStream(1, "command-1"), createStream(1, "command-2"));
+        assertAppendResult(EventAppendResult.DuplicateEvent, eventStore.batchAppendAsync(duplicateVersions).get());
+
+        List<DomainEventStream> duplicateCommands = Arrays.asList(createStream(1, "command-1"), createStream(2, "command-1"));
+        assertAppendResult(EventAppendResult.DuplicateCommand, eventStore.batchAppendAsync(duplicateCommands).get());
+
+        assertEquals(Collections.emptyList(), queryVersions());
+    }
+
+    private FileEventStore startStore() {
+        OptionSetting optionSetting = new OptionSetting();
+        optionSetting.setOptionValue("SegmentSize", String.valueOf(1024 * 1024));
+        FileEventStore store = new FileEventStore(storeDirectory.getAbsolutePath(), optionSetting);
+        store.setEventSerializer(new EmptyEventSerializer());
+        store.start();
+        return store;
+    }
+
+    private AsyncTaskResult<EventAppendResult> append(int version, String commandId) throws Exception {
+        return eventStore.appendAsync(createStream(version, commandId)).get();
+    }
+
+    private DomainEventStream createStream(int version, String commandId) {
+        return new DomainEventStream(commandId, AGGREGATE_ROOT_ID, AGGREGATE_ROOT_TYPE_NAME, version, new Date(), new ArrayList<>(), null);
+    }
+
+    private List<Integer> queryVersions() throws Exception {
+        AsyncTaskResult<List<DomainEventStream>> result = eventStore.queryAggregateEventsAsync(AGGREGATE_ROOT_ID, AGGREGATE_ROOT_TYPE_NAME, 1, Integer.MAX_VALUE).get();
+        assertEquals(AsyncTaskStatus.Success, result.getStatus());
+        return result.getData().stream().map(DomainEventStream::version).collect(Collectors.toList());
+    }
+
+    private void assertAppendResult(EventAppendResult expected, AsyncTaskResult<EventAppendResult> result) {
+        assertEquals(AsyncTaskStatus.Success, result.getStatus());
+        assertEquals(expected, result.getData());
+    }
+
+    private File getSegmentFile() {
+        File[] segmentFiles = storeDirectory.listFiles((dir, name) -> EventSegment.isSegmentFile(name));
+        assertTrue(segmentFiles != null && segmentFiles.length == 1);
+        return segmentFiles[0];
+    }
+
+    /**
+     * 按记录头部的长度跳过所有记录，返回最后一条记录之后的偏移
+     */
+    private int getEndOffset(File segmentFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile, "r")) {
+            int offset = 0;
+            while (offset + EventRecord.HEADER_SIZE <= file.length()) {
+                file.seek(offset);
+                int length = file.readInt();
+                if (length == 0) {
+                    break;
+                }
+                offset += EventRecord.HEADER_SIZE + length;
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * 测试中的事件流不带事件，只验证存储的版本和命令语义
+     */
+    static class EmptyEventSerializer implements IEventSerializer {
+
+        @Override
+        public Map<String, String> serialize(List<IDomainEvent> evnts) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public <TEvent extends IDomainEvent> List<TEvent> deserialize(Map<String, String> data, Class<TEvent> domainEventType) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public String serializeToString(List<IDomainEvent> evnts) {
+            return "[]";
+        }
+
+        @Override
+        public <TEvent extends IDomainEvent> List<TEvent> deserializeFromString(String data, Class<TEvent> domainEventType) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isEnvelopeFormat() {
+            return false;
+        }
+    }
+}
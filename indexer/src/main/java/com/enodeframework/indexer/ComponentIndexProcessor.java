@@ -0,0 +1,126 @@
+package com.enodeframework.indexer;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 编译时生成组件索引META-INF/enode.components，每行一个ENodeBootstrap需要的类型：
+ * 标注了Command、Event的处理器，聚合根、聚合仓储，以及消息和可发布异常类型。
+ * 与运行时扫描一致，只收录顶层类；增量编译时与已有索引合并
+ */
+public class ComponentIndexProcessor extends AbstractProcessor {
+
+    private static final String COMPONENTS_RESOURCE_LOCATION = "META-INF/enode.components";
+
+    private static final List<String> COMPONENT_ANNOTATIONS = Arrays.asList(
+            "com.enodeframework.annotation.Command",
+            "com.enodeframework.annotation.Event");
+
+    private static final List<String> COMPONENT_INTERFACES = Arrays.asList(
+            "com.enodeframework.domain.IAggregateRoot",
+            "com.enodeframework.domain.IAggregateRepository",
+            "com.enodeframework.infrastructure.IMessage");
+
+    private final Set<String> components = new TreeSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        roundEnv.getRootElements().stream()
+                .filter(element -> element.getKind() == ElementKind.CLASS)
+                .map(element -> (TypeElement) element)
+                .filter(this::isComponent)
+                .forEach(element -> components.add(processingEnv.getElementUtils().getBinaryName(element).toString()));
+        if (roundEnv.processingOver() && !components.isEmpty()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    private boolean isComponent(TypeElement element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (COMPONENT_ANNOTATIONS.contains(annotationType.getQualifiedName().toString())) {
+                return true;
+            }
+        }
+        if (element.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        TypeMirror type = processingEnv.getTypeUtils().erasure(element.asType());
+        for (String interfaceName : COMPONENT_INTERFACES) {
+            TypeElement interfaceElement = processingEnv.getElementUtils().getTypeElement(interfaceName);
+            if (interfaceElement == null) {
+                continue;
+            }
+            TypeMirror interfaceType = processingEnv.getTypeUtils().erasure(interfaceElement.asType());
+            if (processingEnv.getTypeUtils().isAssignable(type, interfaceType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeIndex() {
+        readExistingIndex();
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", COMPONENTS_RESOURCE_LOCATION);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String component : components) {
+                    writer.write(component);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Write enode component index failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 增量编译时本轮只能看到修改过的类，合并之前生成的索引；已删除的类由ENodeBootstrap加载时跳过
+     */
+    private void readExistingIndex() {
+        try {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", COMPONENTS_RESOURCE_LOCATION);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        components.add(line.trim());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // 第一次编译时没有索引文件
+        }
+    }
+}
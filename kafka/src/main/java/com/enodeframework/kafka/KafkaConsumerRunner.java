@@ -1,39 +1,116 @@
 package com.enodeframework.kafka;
 
+import com.enodeframework.commanding.CommandFlowController;
+import com.enodeframework.common.utilities.Ensure;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * KafkaConsumer不是线程安全的，拉取、暂停恢复、位点提交都在poll线程中执行；
+ * 消息按分区（或按消息key）分发到多个顺序执行的通道并行处理，消息处理完成（onMessageHandled）后才记为完成，
+ * 每个分区只提交连续完成的位点，需要关闭enable.auto.commit。分区被回收前等待已分发的消息处理完成并同步提交位点
+ */
 public class KafkaConsumerRunner<K, V> implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(KafkaConsumerRunner.class);
     private final AtomicBoolean closed = new AtomicBoolean(false);
-    private KafkaConsumer<K, V> kafkaConsumer;
+    private final ConcurrentMap<TopicPartition, PartitionOffsetTracker> trackers = new ConcurrentHashMap<>();
+    private Consumer<K, V> kafkaConsumer;
+
+    private List<String> topics;
 
     private IMessageListener messageListener;
 
-    KafkaConsumerRunner(KafkaConsumer<K, V> kafkaConsumer, IMessageListener messageListener) {
+    private CommandFlowController flowController;
+
+    private boolean paused;
+
+    private ExecutorService[] lanes;
+
+    private int laneCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 为true时按消息key选择通道，只保证同一个key的消息顺序处理，没有key的消息按分区选择通道
+     */
+    private boolean orderByKey;
+
+    private int commitIntervalMilliseconds = 1000;
+
+    /**
+     * 一个分区未完成的消息数达到上限时暂停拉取该分区，回落到一半时恢复
+     */
+    private int maxPendingCountPerPartition = 10000;
+
+    private int drainTimeoutMilliseconds = 30000;
+
+    private int retryIntervalMilliseconds = 1000;
+
+    private long lastCommitTime;
+
+    private Thread pollThread;
+
+    public KafkaConsumerRunner(Consumer<K, V> kafkaConsumer, List<String> topics, IMessageListener messageListener) {
+        this(kafkaConsumer, topics, messageListener, null);
+    }
+
+    /**
+     * 由runner订阅topics，以便在分区回收时处理位点；
+     * 消费命令时传入CommandFlowController，命令处理积压时暂停拉取所有分区
+     */
+    public KafkaConsumerRunner(Consumer<K, V> kafkaConsumer, List<String> topics, IMessageListener messageListener, CommandFlowController flowController) {
+        Ensure.notNull(topics, "topics");
         this.kafkaConsumer = kafkaConsumer;
+        this.topics = topics;
         this.messageListener = messageListener;
+        this.flowController = flowController;
     }
 
     @Override
     public void run() {
+        lanes = new ExecutorService[laneCount];
+        ThreadFactoryBuilder threadFactoryBuilder = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("KafkaConsumerLane-%d");
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    threadFactoryBuilder.build());
+        }
         try {
+            kafkaConsumer.subscribe(topics, new RebalanceListener());
             while (!closed.get()) {
                 try {
-                    ConsumerRecords<K, V> records = kafkaConsumer.poll(Duration.ofMillis(1000));
-                    for (ConsumerRecord record : records) {
-                        messageListener.receiveMessage(record, message -> {
-                            logger.info("run something:{}", message.getBody());
-                            return;
-                        });
+                    applyFlowControl();
+                    ConsumerRecords<K, V> records = kafkaConsumer.poll(Duration.ofMillis(paused ? 100 : Math.min(1000, commitIntervalMilliseconds)));
+                    for (ConsumerRecord<K, V> record : records) {
+                        dispatch(record);
                     }
+                    commitIfNecessary();
+                } catch (WakeupException e) {
+                    throw e;
                 } catch (Exception e) {
                     logger.error("consumer message failed", e);
                 }
@@ -44,13 +121,264 @@ public class KafkaConsumerRunner<K, V> implements Runnable {
                 throw e;
             }
         } finally {
-            kafkaConsumer.close();
+            try {
+                drainAndCommit(trackers.keySet());
+            } finally {
+                for (ExecutorService lane : lanes) {
+                    lane.shutdown();
+                }
+                kafkaConsumer.close();
+            }
+        }
+    }
+
+    private void dispatch(ConsumerRecord<K, V> record) {
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        PartitionOffsetTracker tracker = trackers.computeIfAbsent(partition, x -> new PartitionOffsetTracker());
+        tracker.dispatched(record.offset());
+        lanes[getLaneIndex(partition, record.key())].execute(() -> consume(record, tracker));
+    }
+
+    private int getLaneIndex(TopicPartition partition, K key) {
+        int hash;
+        if (orderByKey && key != null) {
+            hash = key instanceof byte[] ? Arrays.hashCode((byte[]) key) : Objects.hashCode(key);
+        } else {
+            hash = partition.hashCode();
+        }
+        return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    /**
+     * 返回RECONSUMELATER时在当前通道上间隔重试，不影响同一通道上后续消息的顺序；
+     * 抛出异常的消息记录日志后视为处理完成，避免阻塞分区的位点提交
+     */
+    private void consume(ConsumerRecord<K, V> record, PartitionOffsetTracker tracker) {
+        long offset = record.offset();
+        while (true) {
+            try {
+                ConsumeStatus status = messageListener.receiveMessage(record, message -> tracker.handled(offset));
+                if (status != ConsumeStatus.RECONSUMELATER || closed.get()) {
+                    return;
+                }
+                logger.warn("Consume message later, topic: {}, partition: {}, offset: {}", record.topic(), record.partition(), offset);
+                Thread.sleep(retryIntervalMilliseconds);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error(String.format("Consume message failed, topic: %s, partition: %d, offset: %d", record.topic(), record.partition(), offset), e);
+                tracker.handled(offset);
+                return;
+            }
+        }
+    }
+
+    private void commitIfNecessary() {
+        long now = System.currentTimeMillis();
+        if (now - lastCommitTime < commitIntervalMilliseconds) {
+            return;
+        }
+        lastCommitTime = now;
+        Map<TopicPartition, OffsetAndMetadata> offsets = getCommittableOffsets(trackers.keySet());
+        if (offsets.isEmpty()) {
+            return;
+        }
+        kafkaConsumer.commitAsync(offsets, (committedOffsets, exception) -> {
+            if (exception != null) {
+                logger.warn("Commit offsets failed, offsets: {}, errorMessage: {}", committedOffsets, exception.getMessage());
+                return;
+            }
+            markCommitted(committedOffsets);
+        });
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> getCommittableOffsets(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            PartitionOffsetTracker tracker = trackers.get(partition);
+            if (tracker == null) {
+                continue;
+            }
+            long offset = tracker.getCommittableOffset();
+            if (offset > tracker.getCommittedOffset()) {
+                offsets.put(partition, new OffsetAndMetadata(offset));
+            }
+        }
+        return offsets;
+    }
+
+    private void markCommitted(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        offsets.forEach((partition, offset) -> {
+            PartitionOffsetTracker tracker = trackers.get(partition);
+            if (tracker != null) {
+                tracker.committed(offset.offset());
+            }
+        });
+    }
+
+    /**
+     * 等待分区已分发的消息处理完成，超时后只提交已经连续完成的位点，未完成的消息会被重新消费
+     */
+    private void drainAndCommit(Collection<TopicPartition> partitions) {
+        long deadline = System.currentTimeMillis() + drainTimeoutMilliseconds;
+        int pendingCount = getPendingCount(partitions);
+        while (pendingCount > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            pendingCount = getPendingCount(partitions);
+        }
+        if (pendingCount > 0) {
+            logger.warn("Drain kafka partitions timeout, partitions: {}, pendingCount: {}", partitions, pendingCount);
+        }
+        Map<TopicPartition, OffsetAndMetadata> offsets = getCommittableOffsets(partitions);
+        if (offsets.isEmpty()) {
+            return;
+        }
+        try {
+            kafkaConsumer.commitSync(offsets);
+            markCommitted(offsets);
+        } catch (Exception e) {
+            logger.error(String.format("Commit offsets failed, offsets: %s", offsets), e);
+        }
+    }
+
+    private int getPendingCount(Collection<TopicPartition> partitions) {
+        int pendingCount = 0;
+        for (TopicPartition partition : partitions) {
+            PartitionOffsetTracker tracker = trackers.get(partition);
+            if (tracker != null) {
+                pendingCount += tracker.getPendingCount();
+            }
+        }
+        return pendingCount;
+    }
+
+    /**
+     * 流控暂停时暂停所有分区；否则只暂停未完成消息过多的分区
+     */
+    private void applyFlowControl() {
+        boolean flowPaused = flowController != null && flowController.isPaused();
+        if (flowPaused && !paused) {
+            paused = true;
+            logger.warn("Kafka consumer paused by flow control, partitions: {}", kafkaConsumer.assignment());
+        } else if (!flowPaused && paused) {
+            paused = false;
+            logger.info("Kafka consumer resumed by flow control.");
+        }
+        Set<TopicPartition> pausedPartitions = kafkaConsumer.paused();
+        Set<TopicPartition> toPause = new HashSet<>();
+        Set<TopicPartition> toResume = new HashSet<>();
+        for (TopicPartition partition : kafkaConsumer.assignment()) {
+            PartitionOffsetTracker tracker = trackers.get(partition);
+            int pendingCount = tracker == null ? 0 : tracker.getPendingCount();
+            boolean partitionPaused = pausedPartitions.contains(partition);
+            boolean overloaded = pendingCount >= maxPendingCountPerPartition
+                    || (partitionPaused && pendingCount > maxPendingCountPerPartition / 2);
+            if (flowPaused || overloaded) {
+                if (!partitionPaused) {
+                    toPause.add(partition);
+                }
+            } else if (partitionPaused) {
+                toResume.add(partition);
+            }
+        }
+        if (!toPause.isEmpty()) {
+            kafkaConsumer.pause(toPause);
+        }
+        if (!toResume.isEmpty()) {
+            kafkaConsumer.resume(toResume);
         }
     }
 
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void setLaneCount(int laneCount) {
+        Ensure.positive(laneCount, "laneCount");
+        this.laneCount = laneCount;
+    }
+
+    public void setOrderByKey(boolean orderByKey) {
+        this.orderByKey = orderByKey;
+    }
+
+    public void setCommitIntervalMilliseconds(int commitIntervalMilliseconds) {
+        Ensure.positive(commitIntervalMilliseconds, "commitIntervalMilliseconds");
+        this.commitIntervalMilliseconds = commitIntervalMilliseconds;
+    }
+
+    public void setMaxPendingCountPerPartition(int maxPendingCountPerPartition) {
+        Ensure.positive(maxPendingCountPerPartition, "maxPendingCountPerPartition");
+        this.maxPendingCountPerPartition = maxPendingCountPerPartition;
+    }
+
+    public void setDrainTimeoutMilliseconds(int drainTimeoutMilliseconds) {
+        Ensure.nonNegative(drainTimeoutMilliseconds, "drainTimeoutMilliseconds");
+        this.drainTimeoutMilliseconds = drainTimeoutMilliseconds;
+    }
+
+    public void setRetryIntervalMilliseconds(int retryIntervalMilliseconds) {
+        Ensure.positive(retryIntervalMilliseconds, "retryIntervalMilliseconds");
+        this.retryIntervalMilliseconds = retryIntervalMilliseconds;
+    }
+
+    /**
+     * 在独立的poll线程中运行，作为Spring bean时配置initMethod = "start", destroyMethod = "shutdown"
+     */
+    public synchronized void start() {
+        if (pollThread != null) {
+            return;
+        }
+        pollThread = new Thread(this, "KafkaConsumerRunner-" + String.join(",", topics));
+        pollThread.start();
+        logger.info("Kafka consumer runner started, topics: {}", topics);
+    }
+
+    /**
+     * 等待poll线程处理完已分发的消息并提交位点后返回
+     */
     public void shutdown() {
         closed.set(true);
         kafkaConsumer.wakeup();
+        Thread thread;
+        synchronized (this) {
+            thread = pollThread;
+        }
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            thread.join(drainTimeoutMilliseconds + 5000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
+    /**
+     * 回调在poll线程中执行
+     */
+    class RebalanceListener implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            drainAndCommit(partitions);
+            partitions.forEach(trackers::remove);
+            logger.info("Kafka partitions revoked, partitions: {}", partitions);
+        }
+
+        /**
+         * 重新分到的分区从已提交的位点开始消费，丢弃之前的记录
+         */
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            partitions.forEach(trackers::remove);
+            logger.info("Kafka partitions assigned, partitions: {}", partitions);
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package com.enodeframework.kafka;
+
+import java.util.TreeSet;
+
+/**
+ * 记录一个分区已分发但还没有处理完成的消息位点，消息可以乱序完成；
+ * 可提交的位点是最小的未完成位点，没有未完成的消息时是最后分发的位点加一
+ */
+class PartitionOffsetTracker {
+
+    private final TreeSet<Long> pendingOffsets = new TreeSet<>();
+    private long lastDispatchedOffset = -1;
+    private long committedOffset = -1;
+
+    synchronized void dispatched(long offset) {
+        pendingOffsets.add(offset);
+        lastDispatchedOffset = offset;
+    }
+
+    /**
+     * 同一条消息重复通知处理完成时没有影响
+     */
+    synchronized void handled(long offset) {
+        pendingOffsets.remove(offset);
+    }
+
+    synchronized int getPendingCount() {
+        return pendingOffsets.size();
+    }
+
+    /**
+     * @return 可提交的位点，还没有分发过消息时返回-1
+     */
+    synchronized long getCommittableOffset() {
+        if (lastDispatchedOffset < 0) {
+            return -1;
+        }
+        return pendingOffsets.isEmpty() ? lastDispatchedOffset + 1 : pendingOffsets.first();
+    }
+
+    synchronized long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    synchronized void committed(long offset) {
+        if (offset > committedOffset) {
+            committedOffset = offset;
+        }
+    }
+}
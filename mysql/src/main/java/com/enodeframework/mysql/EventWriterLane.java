@@ -0,0 +1,123 @@
+package com.enodeframework.mysql;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单张事件表的写入通道：一个线程依次执行有界队列中的写入请求，保证同一张表的写入顺序；
+ * 每个请求从连接池借出连接，所有行在同一个事务中以JDBC batch写入后归还连接，连接的maxLifetime和服务端超时由连接池处理。
+ * 数据源开启rewriteBatchedStatements时驱动会把batch改写为一条多行INSERT，开启cachePrepStmts时复用预编译语句。
+ */
+class EventWriterLane {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventWriterLane.class);
+
+    private final DataSource dataSource;
+    private final String table;
+    private final String insertSql;
+    private final ThreadPoolExecutor executor;
+
+    EventWriterLane(DataSource dataSource, String table, String insertSql, int queueCapacity) {
+        this.dataSource = dataSource;
+        this.table = table;
+        this.insertSql = insertSql;
+        this.executor = new ThreadPoolExecutor(1, 1,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MysqlEventWriter-" + table + "-%d").build());
+    }
+
+    /**
+     * 队列已满或通道已关闭时返回的future以RejectedExecutionException失败，由调用方按IO异常处理
+     */
+    CompletableFuture<Void> insertAsync(List<Object[]> rows) {
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    insert(rows);
+                } catch (SQLException ex) {
+                    throw new SqlExceptionWrapper(ex);
+                }
+            }, executor);
+        } catch (RejectedExecutionException ex) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+            return future;
+        }
+    }
+
+    /**
+     * 不再接收新的请求，已经排队的请求继续写入
+     */
+    void shutdown() {
+        int queueSize = getQueueSize();
+        if (queueSize > 0) {
+            logger.info("Event writer is shutting down, pending requests: {}, table: {}", queueSize, table);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * @return 超时前排队的请求都已写入时返回true
+     */
+    boolean awaitTermination(long timeoutMilliseconds) throws InterruptedException {
+        return executor.awaitTermination(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    private void insert(List<Object[]> rows) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+                for (Object[] row : rows) {
+                    for (int i = 0; i < row.length; i++) {
+                        statement.setObject(i + 1, row[i]);
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException ex) {
+                rollback(connection);
+                throw ex;
+            }
+        }
+    }
+
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            logger.error(String.format("Rollback event insert has sql exception, table: %s", table), ex);
+        }
+    }
+
+    /**
+     * 在CompletableFuture中传递SQLException，调用方通过getCause取出原始异常
+     */
+    static class SqlExceptionWrapper extends RuntimeException {
+        SqlExceptionWrapper(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+}
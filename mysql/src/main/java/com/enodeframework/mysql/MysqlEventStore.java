@@ -3,7 +3,8 @@ package com.enodeframework.mysql;
 import com.enodeframework.common.io.AsyncTaskResult;
 import com.enodeframework.common.io.AsyncTaskStatus;
 import com.enodeframework.common.io.IOHelper;
-import com.enodeframework.common.serializing.IJsonSerializer;
+import com.enodeframework.common.sharding.IShardingStrategy;
+import com.enodeframework.common.sharding.ModuloShardingStrategy;
 import com.enodeframework.common.utilities.Ensure;
 import com.enodeframework.configurations.DefaultDBConfigurationSetting;
 import com.enodeframework.configurations.OptionSetting;
@@ -22,14 +23,28 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class MysqlEventStore implements IEventStore {
@@ -38,25 +53,56 @@ public class MysqlEventStore implements IEventStore {
 
     private static final String EVENT_TABLE_NAME_FORMAT = "%s_%s";
 
+    private static final String INSERT_EVENT_SQL_FORMAT = "INSERT INTO %s(AggregateRootId,AggregateRootTypeName,CommandId,Version,CreatedOn,Events) VALUES(?,?,?,?,?,?)";
+
+    private static final int DEFAULT_WRITER_QUEUE_CAPACITY = 10000;
+
+    private static final int DUPLICATE_KEY_ERROR_CODE = 1062;
+
     private final String tableName;
     private final int tableCount;
     private final String versionIndexName;
     private final String commandIndexName;
     private final int bulkCopyBatchSize;
     private final int bulkCopyTimeout;
-    private final QueryRunner queryRunner;
-    @Autowired
-    private IJsonSerializer jsonSerializer;
+    private final int shardCount;
+    private final String[] tableNames;
+    private final QueryRunner[] queryRunners;
+    private final EventWriterLane[] writerLanes;
     @Autowired
     private IEventSerializer eventSerializer;
     @Autowired
     private IOHelper ioHelper;
+    @Autowired(required = false)
+    private IShardingStrategy shardingStrategy = new ModuloShardingStrategy();
     private boolean supportBatchAppendEvent;
 
-    private Executor executor;
+    private ExecutorService executor;
+
+    private ExecutorService decodeExecutor;
+
+    /**
+     * stop时等待写入通道写完排队请求的最长时间
+     */
+    private int stopTimeoutMilliseconds = 30000;
+
+    /**
+     * 重放事件时最多同时解码的事件流数量
+     */
+    private int replayWindowSize = 64;
 
     public MysqlEventStore(DataSource ds, OptionSetting optionSetting) {
-        Ensure.notNull(ds, "ds");
+        this(Collections.singletonList(ds), optionSetting);
+    }
+
+    /**
+     * 多个数据源时每个数据源上都有tableCount张事件表，分片序号i对应第i / tableCount个数据源上的第i % tableCount张表
+     */
+    public MysqlEventStore(List<DataSource> dataSources, OptionSetting optionSetting) {
+        Ensure.notNull(dataSources, "dataSources");
+        Ensure.positive(dataSources.size(), "dataSourceCount");
+        dataSources.forEach(ds -> Ensure.notNull(ds, "ds"));
+        int writerQueueCapacity = DEFAULT_WRITER_QUEUE_CAPACITY;
         if (optionSetting != null) {
             tableName = optionSetting.getOptionValue("TableName");
             tableCount = optionSetting.getOptionValue("TableCount") == null ? 1 : Integer.valueOf(optionSetting.getOptionValue("TableCount"));
@@ -64,7 +110,9 @@ public class MysqlEventStore implements IEventStore {
             commandIndexName = optionSetting.getOptionValue("CommandIndexName");
             bulkCopyBatchSize = optionSetting.getOptionValue("BulkCopyBatchSize") == null ? 0 : Integer.valueOf(optionSetting.getOptionValue("BulkCopyBatchSize"));
             bulkCopyTimeout = optionSetting.getOptionValue("BulkCopyTimeout") == null ? 0 : Integer.valueOf(optionSetting.getOptionValue("BulkCopyTimeout"));
-
+            if (optionSetting.getOptionValue("WriterQueueCapacity") != null) {
+                writerQueueCapacity = Integer.valueOf(optionSetting.getOptionValue("WriterQueueCapacity"));
+            }
         } else {
             DefaultDBConfigurationSetting setting = new DefaultDBConfigurationSetting();
             tableName = setting.getEventTableName();
@@ -80,12 +128,60 @@ public class MysqlEventStore implements IEventStore {
         Ensure.notNull(commandIndexName, "commandIndexName");
         Ensure.positive(bulkCopyBatchSize, "bulkCopyBatchSize");
         Ensure.positive(bulkCopyTimeout, "bulkCopyTimeout");
-
-        queryRunner = new QueryRunner(ds);
+        Ensure.positive(writerQueueCapacity, "writerQueueCapacity");
+
+        int tableCountPerDataSource = Math.max(tableCount, 1);
+        shardCount = dataSources.size() * tableCountPerDataSource;
+        tableNames = new String[shardCount];
+        queryRunners = new QueryRunner[shardCount];
+        writerLanes = new EventWriterLane[shardCount];
+        for (int dsIndex = 0; dsIndex < dataSources.size(); dsIndex++) {
+            QueryRunner queryRunner = new QueryRunner(dataSources.get(dsIndex));
+            for (int tableIndex = 0; tableIndex < tableCountPerDataSource; tableIndex++) {
+                int shardIndex = dsIndex * tableCountPerDataSource + tableIndex;
+                String table = tableCount <= 1 ? tableName : String.format(EVENT_TABLE_NAME_FORMAT, tableName, tableIndex);
+                String laneName = dataSources.size() > 1 ? table + "@" + dsIndex : table;
+                tableNames[shardIndex] = table;
+                queryRunners[shardIndex] = queryRunner;
+                writerLanes[shardIndex] = new EventWriterLane(dataSources.get(dsIndex), laneName, String.format(INSERT_EVENT_SQL_FORMAT, table), writerQueueCapacity);
+            }
+        }
         executor = new ThreadPoolExecutor(4, 4,
                 0L, TimeUnit.MILLISECONDS,
                 new LinkedBlockingQueue<Runnable>(),
                 new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MysqlEventStoreExecutor-%d").build());
+        int decodeThreadCount = Runtime.getRuntime().availableProcessors();
+        decodeExecutor = new ThreadPoolExecutor(decodeThreadCount, decodeThreadCount,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MysqlEventStoreDecoder-%d").build());
+    }
+
+    /**
+     * 写入通道不再接收新的请求，等待排队的请求写入后关闭线程
+     */
+    public void stop() {
+        for (EventWriterLane writerLane : writerLanes) {
+            writerLane.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + stopTimeoutMilliseconds;
+        try {
+            for (int i = 0; i < writerLanes.length; i++) {
+                if (!writerLanes[i].awaitTermination(Math.max(deadline - System.currentTimeMillis(), 0))) {
+                    logger.warn("Event writer is not terminated before timeout, table: {}, pending requests: {}", tableNames[i], writerLanes[i].getQueueSize());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdown();
+        decodeExecutor.shutdown();
+        logger.info("Mysql event store stopped.");
+    }
+
+    public void setStopTimeoutMilliseconds(int stopTimeoutMilliseconds) {
+        Ensure.nonNegative(stopTimeoutMilliseconds, "stopTimeoutMilliseconds");
+        this.stopTimeoutMilliseconds = stopTimeoutMilliseconds;
     }
 
     @Override
@@ -97,14 +193,75 @@ public class MysqlEventStore implements IEventStore {
         this.supportBatchAppendEvent = supportBatchAppendEvent;
     }
 
+    public void setShardingStrategy(IShardingStrategy shardingStrategy) {
+        Ensure.notNull(shardingStrategy, "shardingStrategy");
+        this.shardingStrategy = shardingStrategy;
+    }
+
+    public void setReplayWindowSize(int replayWindowSize) {
+        Ensure.positive(replayWindowSize, "replayWindowSize");
+        this.replayWindowSize = replayWindowSize;
+    }
+
+    /**
+     * 同一个聚合根的多个事件流在对应事件表的写入通道上以一个事务写入
+     */
     @Override
     public CompletableFuture<AsyncTaskResult<EventAppendResult>> batchAppendAsync(List<DomainEventStream> eventStreams) {
-        return CompletableFuture.supplyAsync(() -> batchAppend(eventStreams));
+        if (eventStreams.size() == 0) {
+            throw new IllegalArgumentException("Event streams cannot be empty.");
+        }
+        List<String> aggregateRootIds = eventStreams.stream().map(x -> x.aggregateRootId()).distinct().collect(Collectors.toList());
+        if (aggregateRootIds.size() > 1) {
+            throw new IllegalArgumentException("Batch append event only support for one aggregate.");
+        }
+        List<Object[]> rows;
+        try {
+            rows = eventStreams.stream().map(this::convertToRow).collect(Collectors.toList());
+        } catch (Exception ex) {
+            logger.error("Batch append event has unknown exception.", ex);
+            return CompletableFuture.completedFuture(new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage(), EventAppendResult.Failed));
+        }
+        DomainEventStream firstEventStream = eventStreams.get(0);
+        return writerLanes[getShardIndex(firstEventStream.aggregateRootTypeName(), firstEventStream.aggregateRootId())].insertAsync(rows).handle((r, ex) -> toAppendResult(ex, "Batch append event"));
+    }
+
+    /**
+     * 按分片分组，每个分片的写入通道在一个事务中写入多个聚合根的事件；
+     * 遇到唯一索引冲突时整个事务回滚，再按聚合根逐个追加以确定各自的结果。
+     */
+    @Override
+    public CompletableFuture<AsyncTaskResult<Map<String, EventAppendResult>>> groupAppendAsync(List<DomainEventStream> eventStreams) {
+        Map<Integer, Map<String, List<DomainEventStream>>> streamsByShard = new LinkedHashMap<>();
+        eventStreams.forEach(eventStream -> streamsByShard
+                .computeIfAbsent(getShardIndex(eventStream.aggregateRootTypeName(), eventStream.aggregateRootId()), x -> new LinkedHashMap<>())
+                .computeIfAbsent(eventStream.aggregateRootId(), x -> new ArrayList<>())
+                .add(eventStream));
+
+        List<CompletableFuture<Map<String, EventAppendResult>>> futures = new ArrayList<>();
+        streamsByShard.forEach((shardIndex, streamsByAggregate) -> {
+            for (Map<String, List<DomainEventStream>> chunk : splitByBulkCopyBatchSize(streamsByAggregate)) {
+                futures.add(groupAppend(shardIndex, chunk));
+            }
+        });
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(r -> {
+            Map<String, EventAppendResult> appendResults = new HashMap<>();
+            futures.forEach(future -> appendResults.putAll(future.join()));
+            return new AsyncTaskResult<>(AsyncTaskStatus.Success, appendResults);
+        });
     }
 
     @Override
     public CompletableFuture<AsyncTaskResult<EventAppendResult>> appendAsync(DomainEventStream eventStream) {
-        return CompletableFuture.supplyAsync(() -> append(eventStream));
+        Object[] row;
+        try {
+            row = convertToRow(eventStream);
+        } catch (Exception ex) {
+            logger.error(String.format("Append event has unknown exception, eventStream: %s", eventStream), ex);
+            return CompletableFuture.completedFuture(new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage(), EventAppendResult.Failed));
+        }
+        return writerLanes[getShardIndex(eventStream.aggregateRootTypeName(), eventStream.aggregateRootId())].insertAsync(Collections.singletonList(row))
+                .handle((r, ex) -> toAppendResult(ex, String.format("Append event, eventStream: %s", eventStream)));
     }
 
     @Override
@@ -112,8 +269,9 @@ public class MysqlEventStore implements IEventStore {
         return ioHelper.tryIOFuncAsync(() ->
                 CompletableFuture.supplyAsync(() -> {
                     try {
-                        String sql = String.format("SELECT * FROM `%s` WHERE AggregateRootId = ? AND Version >= ? AND Version <= ? ORDER BY Version", getTableName(aggregateRootId));
-                        List<StreamRecord> result = queryRunner.query(sql,
+                        int shardIndex = getShardIndex(aggregateRootTypeName, aggregateRootId);
+                        String sql = String.format("SELECT * FROM `%s` WHERE AggregateRootId = ? AND Version >= ? AND Version <= ? ORDER BY Version", tableNames[shardIndex]);
+                        List<StreamRecord> result = queryRunners[shardIndex].query(sql,
                                 new BeanListHandler<>(StreamRecord.class),
                                 aggregateRootId,
                                 minVersion,
@@ -133,71 +291,175 @@ public class MysqlEventStore implements IEventStore {
                 }, executor), "QueryAggregateEventsAsync");
     }
 
-    public AsyncTaskResult<EventAppendResult> batchAppend(List<DomainEventStream> eventStreams) {
-        if (eventStreams.size() == 0) {
-            throw new IllegalArgumentException("Event streams cannot be empty.");
-        }
+    /**
+     * 以流式结果集逐行读取事件，反序列化在解码线程池上并行执行，读取线程按版本顺序回调；
+     * 同时解码的事件流数量不超过replayWindowSize。已经回调过事件流后再出现异常时返回Failed，避免重试时重复重放。
+     */
+    @Override
+    public CompletableFuture<AsyncTaskResult<Integer>> replayAggregateEventsAsync(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion, Consumer<DomainEventStream> eventStreamConsumer) {
+        return ioHelper.tryIOFuncAsync(() ->
+                CompletableFuture.supplyAsync(() -> replayAggregateEvents(aggregateRootId, aggregateRootTypeName, minVersion, maxVersion, eventStreamConsumer), executor), "ReplayAggregateEventsAsync");
+    }
 
-        List<String> aggregateRootIds = eventStreams.stream().map(x -> x.aggregateRootId()).distinct().collect(Collectors.toList());
-        if (aggregateRootIds.size() > 1) {
-            throw new IllegalArgumentException("Batch append event only support for one aggregate.");
+    private AsyncTaskResult<Integer> replayAggregateEvents(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion, Consumer<DomainEventStream> eventStreamConsumer) {
+        Deque<CompletableFuture<DomainEventStream>> window = new ArrayDeque<>();
+        int replayedCount = 0;
+        int shardIndex = getShardIndex(aggregateRootTypeName, aggregateRootId);
+        String sql = String.format("SELECT * FROM `%s` WHERE AggregateRootId = ? AND Version >= ? AND Version <= ? ORDER BY Version", tableNames[shardIndex]);
+        try (Connection connection = queryRunners[shardIndex].getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            //MySQL驱动只有fetchSize为Integer.MIN_VALUE时才逐行返回结果，否则会一次性加载全部结果
+            statement.setFetchSize(Integer.MIN_VALUE);
+            statement.setString(1, aggregateRootId);
+            statement.setInt(2, minVersion);
+            statement.setInt(3, maxVersion);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    StreamRecord record = new StreamRecord(
+                            resultSet.getString("CommandId"),
+                            resultSet.getString("AggregateRootId"),
+                            resultSet.getString("AggregateRootTypeName"),
+                            resultSet.getInt("Version"),
+                            resultSet.getTimestamp("CreatedOn"),
+                            resultSet.getString("Events"));
+                    window.addLast(CompletableFuture.supplyAsync(() -> convertFrom(record), decodeExecutor));
+                    if (window.size() >= replayWindowSize) {
+                        eventStreamConsumer.accept(window.pollFirst().join());
+                        replayedCount++;
+                    }
+                }
+            }
+            while (!window.isEmpty()) {
+                eventStreamConsumer.accept(window.pollFirst().join());
+                replayedCount++;
+            }
+            return new AsyncTaskResult<>(AsyncTaskStatus.Success, replayedCount);
+        } catch (SQLException ex) {
+            String errorMessage = String.format("Failed to replay aggregate events, aggregateRootId: %s, aggregateRootType: %s, replayedCount: %d", aggregateRootId, aggregateRootTypeName, replayedCount);
+            logger.error(errorMessage, ex);
+            return new AsyncTaskResult<>(replayedCount == 0 ? AsyncTaskStatus.IOException : AsyncTaskStatus.Failed, ex.getMessage());
+        } catch (Exception ex) {
+            String errorMessage = String.format("Failed to replay aggregate events, aggregateRootId: %s, aggregateRootType: %s, replayedCount: %d", aggregateRootId, aggregateRootTypeName, replayedCount);
+            logger.error(errorMessage, ex);
+            return new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage());
         }
+    }
 
-        String aggregateRootId = aggregateRootIds.get(0);
-
-        Object[][] params = new Object[eventStreams.size()][];
+    /**
+     * 依次以流式结果集读取每个分片的聚合根id和命令id，只读取这两列
+     */
+    @Override
+    public CompletableFuture<AsyncTaskResult<Long>> scanCommandIdsAsync(BiConsumer<String, String> commandIdConsumer) {
+        return CompletableFuture.supplyAsync(() -> scanCommandIds(commandIdConsumer), executor);
+    }
 
-        for (int i = 0, len = eventStreams.size(); i < len; i++) {
-            DomainEventStream eventStream = eventStreams.get(i);
-            params[i] = new Object[]{eventStream.aggregateRootId(), eventStream.aggregateRootTypeName(), eventStream.commandId(), eventStream.version(), eventStream.timestamp(),
-                    jsonSerializer.serialize(eventSerializer.serialize(eventStream.events()))};
+    private AsyncTaskResult<Long> scanCommandIds(BiConsumer<String, String> commandIdConsumer) {
+        long scannedCount = 0;
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            String sql = String.format("SELECT AggregateRootId, CommandId FROM `%s`", tableNames[shardIndex]);
+            try (Connection connection = queryRunners[shardIndex].getDataSource().getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(Integer.MIN_VALUE);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        commandIdConsumer.accept(resultSet.getString(1), resultSet.getString(2));
+                        scannedCount++;
+                    }
+                }
+            } catch (SQLException ex) {
+                logger.error(String.format("Failed to scan command ids, table: %s, scannedCount: %d", tableNames[shardIndex], scannedCount), ex);
+                return new AsyncTaskResult<>(AsyncTaskStatus.IOException, ex.getMessage());
+            } catch (Exception ex) {
+                logger.error(String.format("Failed to scan command ids, table: %s, scannedCount: %d", tableNames[shardIndex], scannedCount), ex);
+                return new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage());
+            }
         }
+        return new AsyncTaskResult<>(AsyncTaskStatus.Success, scannedCount);
+    }
 
+    public AsyncTaskResult<EventAppendResult> batchAppend(List<DomainEventStream> eventStreams) {
+        return batchAppendAsync(eventStreams).join();
+    }
+
+    private CompletableFuture<Map<String, EventAppendResult>> groupAppend(int shardIndex, Map<String, List<DomainEventStream>> streamsByAggregate) {
+        List<Object[]> rows = new ArrayList<>();
         try {
-            queryRunner.batch(String.format("INSERT INTO %s(AggregateRootId,AggregateRootTypeName,CommandId,Version,CreatedOn,Events) VALUES(?,?,?,?,?,?)", getTableName(aggregateRootId)), params);
-            return new AsyncTaskResult<>(AsyncTaskStatus.Success, EventAppendResult.Success);
-        } catch (SQLException ex) {
-            if (ex.getErrorCode() == 1062 && ex.getMessage().contains(versionIndexName)) {
-                return new AsyncTaskResult<>(AsyncTaskStatus.Success, EventAppendResult.DuplicateEvent);
-            } else if (ex.getErrorCode() == 1062 && ex.getMessage().contains(commandIndexName)) {
-                return new AsyncTaskResult<>(AsyncTaskStatus.Success, EventAppendResult.DuplicateCommand);
-            }
-            logger.error("Batch append event has sql exception.", ex);
-            return new AsyncTaskResult<>(AsyncTaskStatus.IOException, ex.getMessage(), EventAppendResult.Failed);
+            streamsByAggregate.values().forEach(streams -> streams.forEach(eventStream -> rows.add(convertToRow(eventStream))));
         } catch (Exception ex) {
-            logger.error("Batch append event has unknown exception.", ex);
-            return new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage(), EventAppendResult.Failed);
+            logger.error(String.format("Group append event has unknown exception, table: %s, aggregateCount: %d", tableNames[shardIndex], streamsByAggregate.size()), ex);
+            return CompletableFuture.completedFuture(new HashMap<>());
         }
+        return writerLanes[shardIndex].insertAsync(rows).handle((r, ex) -> ex).thenCompose(ex -> {
+            Map<String, EventAppendResult> appendResults = new ConcurrentHashMap<>();
+            if (ex == null) {
+                streamsByAggregate.keySet().forEach(aggregateRootId -> appendResults.put(aggregateRootId, EventAppendResult.Success));
+                return CompletableFuture.completedFuture(appendResults);
+            }
+            SQLException sqlException = getSqlException(ex);
+            if (sqlException == null || sqlException.getErrorCode() != DUPLICATE_KEY_ERROR_CODE) {
+                logger.error(String.format("Group append event has exception, table: %s, aggregateCount: %d", tableNames[shardIndex], streamsByAggregate.size()), ex);
+                return CompletableFuture.completedFuture(appendResults);
+            }
+            //有聚合根冲突，整个事务已回滚，逐个聚合根追加以确定各自的结果
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            streamsByAggregate.forEach((aggregateRootId, streams) -> futures.add(batchAppendAsync(streams).thenAccept(result -> {
+                if (result.getStatus() == AsyncTaskStatus.Success) {
+                    appendResults.put(aggregateRootId, result.getData());
+                }
+            })));
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(x -> appendResults);
+        });
+    }
+
+    private List<Map<String, List<DomainEventStream>>> splitByBulkCopyBatchSize(Map<String, List<DomainEventStream>> streamsByAggregate) {
+        List<Map<String, List<DomainEventStream>>> chunks = new ArrayList<>();
+        Map<String, List<DomainEventStream>> chunk = new LinkedHashMap<>();
+        int count = 0;
+        for (Map.Entry<String, List<DomainEventStream>> entry : streamsByAggregate.entrySet()) {
+            if (count > 0 && count + entry.getValue().size() > bulkCopyBatchSize) {
+                chunks.add(chunk);
+                chunk = new LinkedHashMap<>();
+                count = 0;
+            }
+            chunk.put(entry.getKey(), entry.getValue());
+            count += entry.getValue().size();
+        }
+        if (count > 0) {
+            chunks.add(chunk);
+        }
+        return chunks;
     }
 
     public AsyncTaskResult<EventAppendResult> append(DomainEventStream eventStream) {
-        return ioHelper.tryIOFunc(() -> doAppend(eventStream), "AppendEvents");
+        return ioHelper.tryIOFunc(() -> appendAsync(eventStream).join(), "AppendEvents");
     }
 
-    private AsyncTaskResult<EventAppendResult> doAppend(final DomainEventStream eventStream) {
-        StreamRecord record = convertTo(eventStream);
-        try {
-            queryRunner.update(String.format("INSERT INTO %s(AggregateRootId,AggregateRootTypeName,CommandId,Version,CreatedOn,Events) VALUES(?,?,?,?,?,?)", getTableName(record.getAggregateRootId())),
-                    record.getAggregateRootId(),
-                    record.getAggregateRootTypeName(),
-                    record.getCommandId(),
-                    record.getVersion(),
-                    record.getCreatedOn(),
-                    record.getEvents());
+    private AsyncTaskResult<EventAppendResult> toAppendResult(Throwable ex, String context) {
+        if (ex == null) {
             return new AsyncTaskResult<>(AsyncTaskStatus.Success, EventAppendResult.Success);
-        } catch (SQLException ex) {
-            if (ex.getErrorCode() == 1062 && ex.getMessage().contains(versionIndexName)) {
+        }
+        SQLException sqlException = getSqlException(ex);
+        if (sqlException != null) {
+            if (sqlException.getErrorCode() == DUPLICATE_KEY_ERROR_CODE && sqlException.getMessage().contains(versionIndexName)) {
                 return new AsyncTaskResult<>(AsyncTaskStatus.Success, EventAppendResult.DuplicateEvent);
-            } else if (ex.getErrorCode() == 1062 && ex.getMessage().contains(commandIndexName)) {
+            } else if (sqlException.getErrorCode() == DUPLICATE_KEY_ERROR_CODE && sqlException.getMessage().contains(commandIndexName)) {
                 return new AsyncTaskResult<>(AsyncTaskStatus.Success, EventAppendResult.DuplicateCommand);
             }
-
-            logger.error(String.format("Append event has sql exception, eventStream: %s", eventStream), ex);
-            return new AsyncTaskResult<>(AsyncTaskStatus.IOException, ex.getMessage(), EventAppendResult.Failed);
-        } catch (Exception ex) {
-            logger.error(String.format("Append event has unknown exception, eventStream: %s", eventStream), ex);
-            return new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage(), EventAppendResult.Failed);
+            logger.error(String.format("%s has sql exception.", context), sqlException);
+            return new AsyncTaskResult<>(AsyncTaskStatus.IOException, sqlException.getMessage(), EventAppendResult.Failed);
+        }
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof RejectedExecutionException) {
+            logger.warn("{} is rejected as the event writer queue is full.", context);
+            return new AsyncTaskResult<>(AsyncTaskStatus.IOException, "Event writer queue is full.", EventAppendResult.Failed);
         }
+        logger.error(String.format("%s has unknown exception.", context), cause);
+        return new AsyncTaskResult<>(AsyncTaskStatus.Failed, cause.getMessage(), EventAppendResult.Failed);
+    }
+
+    private SQLException getSqlException(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return cause instanceof EventWriterLane.SqlExceptionWrapper ? ((EventWriterLane.SqlExceptionWrapper) cause).getCause() : null;
     }
 
     @Override
@@ -205,10 +467,7 @@ public class MysqlEventStore implements IEventStore {
         return ioHelper.tryIOFuncAsync(() ->
                 CompletableFuture.supplyAsync(() -> {
                     try {
-                        StreamRecord record = queryRunner.query(String.format("select * from `%s` where AggregateRootId=? and Version=?", getTableName(aggregateRootId)),
-                                new BeanHandler<>(StreamRecord.class),
-                                aggregateRootId,
-                                version);
+                        StreamRecord record = findRecord("select * from `%s` where AggregateRootId=? and Version=?", aggregateRootId, version);
 
                         DomainEventStream stream = record != null ? convertFrom(record) : null;
 
@@ -228,11 +487,7 @@ public class MysqlEventStore implements IEventStore {
         return ioHelper.tryIOFuncAsync(() ->
                 CompletableFuture.supplyAsync(() -> {
                     try {
-
-                        StreamRecord record = queryRunner.query(String.format("select * from `%s` where AggregateRootId=? and CommandId=?", getTableName(aggregateRootId)),
-                                new BeanHandler<>(StreamRecord.class),
-                                aggregateRootId,
-                                commandId);
+                        StreamRecord record = findRecord("select * from `%s` where AggregateRootId=? and CommandId=?", aggregateRootId, commandId);
 
                         DomainEventStream stream = record != null ? convertFrom(record) : null;
                         return new AsyncTaskResult<>(AsyncTaskStatus.Success, stream);
@@ -246,22 +501,32 @@ public class MysqlEventStore implements IEventStore {
                 }, executor), "FindEventByCommandIdAsync");
     }
 
-    private int getTableIndex(String aggregateRootId) {
-        int hash = aggregateRootId.hashCode();
-        if (hash < 0) {
-            hash = Math.abs(hash);
+    /**
+     * 没有聚合根类型时分片策略可能无法确定分片，此时依次查询所有分片
+     */
+    private StreamRecord findRecord(String sqlFormat, String aggregateRootId, Object param) throws SQLException {
+        int shardIndex = getShardIndex(null, aggregateRootId);
+        if (shardIndex >= 0) {
+            return queryRunners[shardIndex].query(String.format(sqlFormat, tableNames[shardIndex]), new BeanHandler<>(StreamRecord.class), aggregateRootId, param);
+        }
+        for (int i = 0; i < shardCount; i++) {
+            StreamRecord record = queryRunners[i].query(String.format(sqlFormat, tableNames[i]), new BeanHandler<>(StreamRecord.class), aggregateRootId, param);
+            if (record != null) {
+                return record;
+            }
         }
-        return hash % tableCount;
+        return null;
     }
 
-    private String getTableName(String aggregateRootId) {
-        if (tableCount <= 1) {
-            return tableName;
+    private int getShardIndex(String aggregateRootTypeName, String aggregateRootId) {
+        if (shardCount <= 1) {
+            return 0;
         }
-
-        int tableIndex = getTableIndex(aggregateRootId);
-
-        return String.format(EVENT_TABLE_NAME_FORMAT, tableName, tableIndex);
+        int shardIndex = shardingStrategy.getShardIndex(aggregateRootTypeName, aggregateRootId, shardCount);
+        if (shardIndex >= shardCount || (shardIndex < 0 && aggregateRootTypeName != null)) {
+            throw new IllegalStateException(String.format("Invalid shard index %d, shardCount: %d, aggregateRootTypeName: %s, aggregateRootId: %s", shardIndex, shardCount, aggregateRootTypeName, aggregateRootId));
+        }
+        return shardIndex;
     }
 
     private DomainEventStream convertFrom(StreamRecord record) {
@@ -271,13 +536,12 @@ public class MysqlEventStore implements IEventStore {
                 record.getAggregateRootTypeName(),
                 record.getVersion(),
                 record.getCreatedOn(),
-                eventSerializer.deserialize(jsonSerializer.deserialize(record.getEvents(), Map.class), IDomainEvent.class),
+                eventSerializer.deserializeFromString(record.getEvents(), IDomainEvent.class),
                 null);
     }
 
-    private StreamRecord convertTo(DomainEventStream eventStream) {
-        return new StreamRecord(eventStream.commandId(), eventStream.aggregateRootId(), eventStream.aggregateRootTypeName(),
-                eventStream.version(), eventStream.timestamp(),
-                jsonSerializer.serialize(eventSerializer.serialize(eventStream.events())));
+    private Object[] convertToRow(DomainEventStream eventStream) {
+        return new Object[]{eventStream.aggregateRootId(), eventStream.aggregateRootTypeName(), eventStream.commandId(),
+                eventStream.version(), eventStream.timestamp(), eventSerializer.serializeToString(eventStream.events())};
     }
 }
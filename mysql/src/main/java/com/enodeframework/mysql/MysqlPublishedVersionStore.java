@@ -2,61 +2,141 @@ package com.enodeframework.mysql;
 
 import com.enodeframework.common.io.AsyncTaskResult;
 import com.enodeframework.common.io.AsyncTaskStatus;
+import com.enodeframework.common.sharding.IShardingStrategy;
+import com.enodeframework.common.sharding.ModuloShardingStrategy;
 import com.enodeframework.common.utilities.Ensure;
 import com.enodeframework.configurations.DefaultDBConfigurationSetting;
 import com.enodeframework.configurations.OptionSetting;
 import com.enodeframework.infrastructure.IPublishedVersionStore;
+import com.enodeframework.infrastructure.PublishedVersionRecord;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.handlers.ArrayListHandler;
 import org.apache.commons.dbutils.handlers.ScalarHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.sql.DataSource;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+/**
+ * batchUpdatePublishedVersionAsync使用INSERT ... ON DUPLICATE KEY UPDATE，
+ * 要求唯一索引为(ProcessorName, AggregateRootId)，见MysqlTableGenerateSql.sql；
+ * 旧的(ProcessorName, AggregateRootId, Version)唯一索引需要先执行MysqlPublishedVersionMigration.sql迁移
+ */
 public class MysqlPublishedVersionStore implements IPublishedVersionStore {
     private static final Logger logger = LoggerFactory.getLogger(MysqlPublishedVersionStore.class);
 
-    private final QueryRunner queryRunner;
+    private static final String BATCH_UPDATE_SQL_FORMAT = "INSERT INTO %s(ProcessorName,AggregateRootTypeName,AggregateRootId,Version,CreatedOn) VALUES %s " +
+            "ON DUPLICATE KEY UPDATE CreatedOn=IF(VALUES(Version)>Version,VALUES(CreatedOn),CreatedOn)," +
+            "Version=GREATEST(VALUES(Version),Version)";
+    private static final String BATCH_UPDATE_VALUES = "(?,?,?,?,?)";
+    private static final String TABLE_NAME_FORMAT = "%s_%s";
+    private static final List<String> UNIQUE_INDEX_COLUMNS = Arrays.asList("processorname", "aggregaterootid");
+
     private final String tableName;
+    private final int tableCount;
     private final String uniqueIndexName;
+    private final int shardCount;
+    private final String[] tableNames;
+    private final QueryRunner[] queryRunners;
     private final Executor executor;
+    @Autowired(required = false)
+    private IShardingStrategy shardingStrategy = new ModuloShardingStrategy();
 
     public MysqlPublishedVersionStore(DataSource ds, OptionSetting optionSetting) {
-        Ensure.notNull(ds, "ds");
+        this(Collections.singletonList(ds), optionSetting);
+    }
+
+    /**
+     * 分片规则与MysqlEventStore相同：分片序号i对应第i / tableCount个数据源上的第i % tableCount张表
+     */
+    public MysqlPublishedVersionStore(List<DataSource> dataSources, OptionSetting optionSetting) {
+        Ensure.notNull(dataSources, "dataSources");
+        Ensure.positive(dataSources.size(), "dataSourceCount");
+        dataSources.forEach(ds -> Ensure.notNull(ds, "ds"));
 
         if (optionSetting != null) {
             tableName = optionSetting.getOptionValue("TableName");
+            tableCount = optionSetting.getOptionValue("TableCount") == null ? 1 : Integer.valueOf(optionSetting.getOptionValue("TableCount"));
             uniqueIndexName = optionSetting.getOptionValue("UniqueIndexName");
         } else {
             DefaultDBConfigurationSetting setting = new DefaultDBConfigurationSetting();
             tableName = setting.getPublishedVersionTableName();
+            tableCount = setting.getPublishedVersionTableCount();
             uniqueIndexName = setting.getPublishedVersionUniqueIndexName();
         }
 
         Ensure.notNull(tableName, "tableName");
         Ensure.notNull(uniqueIndexName, "uniqueIndexName");
 
-        queryRunner = new QueryRunner(ds);
+        int tableCountPerDataSource = Math.max(tableCount, 1);
+        shardCount = dataSources.size() * tableCountPerDataSource;
+        tableNames = new String[shardCount];
+        queryRunners = new QueryRunner[shardCount];
+        for (int dsIndex = 0; dsIndex < dataSources.size(); dsIndex++) {
+            QueryRunner queryRunner = new QueryRunner(dataSources.get(dsIndex));
+            for (int tableIndex = 0; tableIndex < tableCountPerDataSource; tableIndex++) {
+                int shardIndex = dsIndex * tableCountPerDataSource + tableIndex;
+                tableNames[shardIndex] = tableCount <= 1 ? tableName : String.format(TABLE_NAME_FORMAT, tableName, tableIndex);
+                queryRunners[shardIndex] = queryRunner;
+            }
+        }
         executor = new ThreadPoolExecutor(4, 4,
                 0L, TimeUnit.MILLISECONDS,
                 new LinkedBlockingQueue<Runnable>(),
                 new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MysqlPublishedVersionStoreExecutor-%d").build());
     }
 
+    /**
+     * 检查每张表上的uniqueIndexName是(ProcessorName, AggregateRootId)唯一索引，否则拒绝启动
+     */
+    public void start() {
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            List<String> columns = new ArrayList<>();
+            boolean unique = true;
+            try {
+                List<Object[]> rows = queryRunners[shardIndex].query("SELECT COLUMN_NAME, NON_UNIQUE FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ? ORDER BY SEQ_IN_INDEX",
+                        new ArrayListHandler(), tableNames[shardIndex], uniqueIndexName);
+                for (Object[] row : rows) {
+                    columns.add(String.valueOf(row[0]));
+                    unique = unique && ((Number) row[1]).intValue() == 0;
+                }
+            } catch (SQLException ex) {
+                throw new IllegalStateException(String.format("Check published version unique index failed, table: %s", tableNames[shardIndex]), ex);
+            }
+            if (!unique || !columns.stream().map(String::toLowerCase).collect(Collectors.toList()).equals(UNIQUE_INDEX_COLUMNS)) {
+                throw new IllegalStateException(String.format("Published version table %s requires unique index %s on (ProcessorName, AggregateRootId), but was %s%s, run MysqlPublishedVersionMigration.sql first.",
+                        tableNames[shardIndex], uniqueIndexName, unique ? "" : "non-unique ", columns));
+            }
+        }
+    }
+
+    public void setShardingStrategy(IShardingStrategy shardingStrategy) {
+        Ensure.notNull(shardingStrategy, "shardingStrategy");
+        this.shardingStrategy = shardingStrategy;
+    }
+
     @Override
     public CompletableFuture<AsyncTaskResult> updatePublishedVersionAsync(String processorName, String aggregateRootTypeName, String aggregateRootId, int publishedVersion) {
         if (publishedVersion == 1) {
             return CompletableFuture.supplyAsync(() -> {
                 try {
-                    queryRunner.update(String.format("INSERT INTO %s(ProcessorName,AggregateRootTypeName,AggregateRootId,Version,CreatedOn) VALUES(?,?,?,?,?)", tableName),
+                    int shardIndex = getShardIndex(aggregateRootTypeName, aggregateRootId);
+                    queryRunners[shardIndex].update(String.format("INSERT INTO %s(ProcessorName,AggregateRootTypeName,AggregateRootId,Version,CreatedOn) VALUES(?,?,?,?,?)", tableNames[shardIndex]),
                             processorName,
                             aggregateRootTypeName,
                             aggregateRootId,
@@ -78,7 +158,8 @@ public class MysqlPublishedVersionStore implements IPublishedVersionStore {
         } else {
             return CompletableFuture.supplyAsync(() -> {
                 try {
-                    queryRunner.update(String.format("UPDATE %s set Version=?,CreatedOn=? WHERE ProcessorName=? and AggregateRootId=? and Version=?", tableName),
+                    int shardIndex = getShardIndex(aggregateRootTypeName, aggregateRootId);
+                    queryRunners[shardIndex].update(String.format("UPDATE %s set Version=?,CreatedOn=? WHERE ProcessorName=? and AggregateRootId=? and Version=?", tableNames[shardIndex]),
                             publishedVersion,
                             new Timestamp(System.currentTimeMillis()),
                             processorName,
@@ -97,11 +178,56 @@ public class MysqlPublishedVersionStore implements IPublishedVersionStore {
         }
     }
 
+    /**
+     * 合并后的版本可能跳过中间版本，因此不能沿用Version=publishedVersion-1的条件，
+     * 改为只允许版本前进（Version必须最后赋值），同样保证版本不会因重复或乱序的写入而回退
+     */
+    @Override
+    public CompletableFuture<AsyncTaskResult> batchUpdatePublishedVersionAsync(List<PublishedVersionRecord> records) {
+        if (records.isEmpty()) {
+            return CompletableFuture.completedFuture(AsyncTaskResult.Success);
+        }
+        Map<Integer, List<PublishedVersionRecord>> recordsByShard = records.stream()
+                .collect(Collectors.groupingBy(x -> getShardIndex(x.getAggregateRootTypeName(), x.getAggregateRootId())));
+        List<CompletableFuture<AsyncTaskResult>> futures = new ArrayList<>(recordsByShard.size());
+        recordsByShard.forEach((shardIndex, shardRecords) -> futures.add(CompletableFuture.supplyAsync(() -> batchUpdatePublishedVersion(shardIndex, shardRecords), executor)));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(r -> futures.stream()
+                .map(CompletableFuture::join)
+                .filter(x -> x.getStatus() != AsyncTaskStatus.Success)
+                .findFirst()
+                .orElse(AsyncTaskResult.Success));
+    }
+
+    private AsyncTaskResult batchUpdatePublishedVersion(int shardIndex, List<PublishedVersionRecord> records) {
+        try {
+            Timestamp createdOn = new Timestamp(System.currentTimeMillis());
+            List<String> values = new ArrayList<>(records.size());
+            List<Object> params = new ArrayList<>(records.size() * 5);
+            for (PublishedVersionRecord record : records) {
+                values.add(BATCH_UPDATE_VALUES);
+                params.add(record.getProcessorName());
+                params.add(record.getAggregateRootTypeName());
+                params.add(record.getAggregateRootId());
+                params.add(record.getVersion());
+                params.add(createdOn);
+            }
+            queryRunners[shardIndex].update(String.format(BATCH_UPDATE_SQL_FORMAT, tableNames[shardIndex], String.join(",", values)), params.toArray());
+            return AsyncTaskResult.Success;
+        } catch (SQLException ex) {
+            logger.error(String.format("Batch update aggregate published version has sql exception, table: %s, count: %d", tableNames[shardIndex], records.size()), ex);
+            return new AsyncTaskResult(AsyncTaskStatus.IOException, ex.getMessage());
+        } catch (Exception ex) {
+            logger.error(String.format("Batch update aggregate published version has unknown exception, table: %s, count: %d", tableNames[shardIndex], records.size()), ex);
+            return new AsyncTaskResult(AsyncTaskStatus.Failed, ex.getMessage());
+        }
+    }
+
     @Override
     public CompletableFuture<AsyncTaskResult<Integer>> getPublishedVersionAsync(String processorName, String aggregateRootTypeName, String aggregateRootId) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                Object resultObj = queryRunner.query(String.format("SELECT Version FROM %s WHERE ProcessorName=? AND AggregateRootId=?", tableName),
+                int shardIndex = getShardIndex(aggregateRootTypeName, aggregateRootId);
+                Object resultObj = queryRunners[shardIndex].query(String.format("SELECT MAX(Version) FROM %s WHERE ProcessorName=? AND AggregateRootId=?", tableNames[shardIndex]),
                         new ScalarHandler<>(), processorName, aggregateRootId);
 
                 int result = (resultObj == null ? 0 : ((Number) resultObj).intValue());
@@ -116,4 +242,15 @@ public class MysqlPublishedVersionStore implements IPublishedVersionStore {
             }
         }, executor);
     }
+
+    private int getShardIndex(String aggregateRootTypeName, String aggregateRootId) {
+        if (shardCount <= 1) {
+            return 0;
+        }
+        int shardIndex = shardingStrategy.getShardIndex(aggregateRootTypeName, aggregateRootId, shardCount);
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalStateException(String.format("Invalid shard index %d, shardCount: %d, aggregateRootTypeName: %s, aggregateRootId: %s", shardIndex, shardCount, aggregateRootTypeName, aggregateRootId));
+        }
+        return shardIndex;
+    }
 }
@@ -0,0 +1,95 @@
+package com.enodeframework.mysql;
+
+import com.enodeframework.common.io.AsyncTaskResult;
+import com.enodeframework.common.io.AsyncTaskStatus;
+import com.enodeframework.common.utilities.Ensure;
+import com.enodeframework.configurations.DefaultDBConfigurationSetting;
+import com.enodeframework.configurations.OptionSetting;
+import com.enodeframework.snapshoting.ISnapshotStore;
+import com.enodeframework.snapshoting.Snapshot;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.handlers.BeanHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class MysqlSnapshotStore implements ISnapshotStore {
+    private static final Logger logger = LoggerFactory.getLogger(MysqlSnapshotStore.class);
+
+    private final QueryRunner queryRunner;
+    private final String tableName;
+    private final String insertSql;
+    private final String selectSql;
+    private final Executor executor;
+
+    public MysqlSnapshotStore(DataSource ds, OptionSetting optionSetting) {
+        Ensure.notNull(ds, "ds");
+
+        if (optionSetting != null) {
+            tableName = optionSetting.getOptionValue("TableName");
+        } else {
+            DefaultDBConfigurationSetting setting = new DefaultDBConfigurationSetting();
+            tableName = setting.getSnapshotTableName();
+        }
+
+        Ensure.notNull(tableName, "tableName");
+
+        //只有版本更高时才覆盖，Version必须最后赋值，否则前面的判断会读到已更新的版本
+        insertSql = String.format("INSERT INTO %s(AggregateRootId,AggregateRootTypeName,Version,Payload,CreatedOn) VALUES(?,?,?,?,?) " +
+                "ON DUPLICATE KEY UPDATE Payload=IF(VALUES(Version)>Version,VALUES(Payload),Payload)," +
+                "CreatedOn=IF(VALUES(Version)>Version,VALUES(CreatedOn),CreatedOn)," +
+                "Version=GREATEST(VALUES(Version),Version)", tableName);
+        selectSql = String.format("SELECT * FROM %s WHERE AggregateRootId=?", tableName);
+        queryRunner = new QueryRunner(ds);
+        executor = new ThreadPoolExecutor(2, 2,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MysqlSnapshotStoreExecutor-%d").build());
+    }
+
+    @Override
+    public CompletableFuture<AsyncTaskResult> saveAsync(Snapshot snapshot) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                queryRunner.update(insertSql,
+                        snapshot.getAggregateRootId(),
+                        snapshot.getAggregateRootTypeName(),
+                        snapshot.getVersion(),
+                        snapshot.getPayload(),
+                        new Timestamp(snapshot.getCreatedOn().getTime()));
+                return AsyncTaskResult.Success;
+            } catch (SQLException ex) {
+                logger.error(String.format("Save snapshot has sql exception, snapshot: %s", snapshot), ex);
+                return new AsyncTaskResult(AsyncTaskStatus.IOException, ex.getMessage());
+            } catch (Exception ex) {
+                logger.error(String.format("Save snapshot has unknown exception, snapshot: %s", snapshot), ex);
+                return new AsyncTaskResult(AsyncTaskStatus.Failed, ex.getMessage());
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<AsyncTaskResult<Snapshot>> getLatestAsync(String aggregateRootId, String aggregateRootTypeName) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Snapshot snapshot = queryRunner.query(selectSql, new BeanHandler<>(Snapshot.class), aggregateRootId);
+                return new AsyncTaskResult<>(AsyncTaskStatus.Success, snapshot);
+            } catch (SQLException ex) {
+                logger.error(String.format("Get snapshot has sql exception, aggregateRootId: %s", aggregateRootId), ex);
+                return new AsyncTaskResult<>(AsyncTaskStatus.IOException, ex.getMessage());
+            } catch (Exception ex) {
+                logger.error(String.format("Get snapshot has unknown exception, aggregateRootId: %s", aggregateRootId), ex);
+                return new AsyncTaskResult<>(AsyncTaskStatus.Failed, ex.getMessage());
+            }
+        }, executor);
+    }
+}
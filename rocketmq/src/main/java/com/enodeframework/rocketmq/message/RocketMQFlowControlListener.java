@@ -0,0 +1,27 @@
+package com.enodeframework.rocketmq.message;
+
+import com.alibaba.rocketmq.client.consumer.DefaultMQPushConsumer;
+import com.enodeframework.commanding.IFlowControlListener;
+
+/**
+ * 命令处理积压时挂起RocketMQ消费者的拉取，恢复水位时继续拉取；
+ * 使用时注册到CommandFlowController：flowController.addListener(new RocketMQFlowControlListener(consumer))
+ */
+public class RocketMQFlowControlListener implements IFlowControlListener {
+
+    private final DefaultMQPushConsumer consumer;
+
+    public RocketMQFlowControlListener(DefaultMQPushConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void onPause() {
+        consumer.suspend();
+    }
+
+    @Override
+    public void onResume() {
+        consumer.resume();
+    }
+}
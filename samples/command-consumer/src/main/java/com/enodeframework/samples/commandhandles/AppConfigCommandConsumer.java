@@ -17,6 +17,7 @@ import com.google.common.collect.Lists;
 import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -47,7 +48,11 @@ public class AppConfigCommandConsumer {
         return new DefaultEventService();
     }
 
+    /**
+     * 依赖事件服务，关闭时先停止消费者，再由事件服务持久化剩余的事件
+     */
     @Bean(initMethod = "start", destroyMethod = "shutdown")
+    @DependsOn("defaultEventService")
     public DefaultMQPushConsumer defaultMQPushConsumer(RocketMQCommandListener rocketMQCommandListener) {
         DefaultMQPushConsumer defaultMQPushConsumer = new DefaultMQPushConsumer();
         defaultMQPushConsumer.setConsumerGroup(COMMAND_CONSUMER_GROUP);
@@ -120,13 +125,13 @@ public class AppConfigCommandConsumer {
         return bootstrap;
     }
 
-    @Bean
+    @Bean(destroyMethod = "stop")
     public MysqlEventStore mysqlEventStore(HikariDataSource dataSource) {
         MysqlEventStore mysqlEventStore = new MysqlEventStore(dataSource, null);
         return mysqlEventStore;
     }
 
-    @Bean
+    @Bean(initMethod = "start")
     public MysqlPublishedVersionStore mysqlPublishedVersionStore(HikariDataSource dataSource) {
         return new MysqlPublishedVersionStore(dataSource, null);
     }
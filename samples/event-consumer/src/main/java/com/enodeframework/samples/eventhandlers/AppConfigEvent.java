@@ -100,13 +100,13 @@ public class AppConfigEvent {
         return domainEventPublisher;
     }
 
-    @Bean
+    @Bean(destroyMethod = "stop")
     public MysqlEventStore mysqlEventStore(HikariDataSource dataSource) {
         MysqlEventStore mysqlEventStore = new MysqlEventStore(dataSource, null);
         return mysqlEventStore;
     }
 
-    @Bean
+    @Bean(initMethod = "start")
     public MysqlPublishedVersionStore mysqlPublishedVersionStore(HikariDataSource dataSource) {
         return new MysqlPublishedVersionStore(dataSource, null);
     }